@@ -0,0 +1,224 @@
+/*
+ * BinomialSampler.java
+ */
+
+package lib;
+
+
+/*
+ * Draws binomial variates of one n and p, with the setup for them done
+ * once, for callers that draw many with the same parameters.
+ *
+ * The draw is made for the smaller of p and 1 - p, and flipped for the
+ * larger.  With n p below 30 it comes by inversion, a sequential search
+ * from (1 - p)^n.  From 30 on it comes by BTPE (V. Kachitvichyanukul and
+ * B. W. Schmeiser, "Binomial random variate generation", Commun. ACM 31,
+ * 1988): a triangle, two parallelograms and two exponential tails over
+ * the density, with the acceptance tested by a recursion near the mode
+ * and by squeezes and Stirling's series further out.  Both are exact,
+ * unlike Probability.RandomFromBinomial, which turns Poisson past n = 100.
+ *
+ */
+
+public class BinomialSampler {
+	
+	// the mean n min(p, 1 - p) at which BTPE takes over from inversion
+	static final double BTPE_MEAN = 30.0;
+	
+	private long _n;
+	private double _p;
+	
+	// the draw is for r = min(p, 1 - p), q = 1 - r, flipped if r is not p
+	private double _r;
+	private double _q;
+	private boolean _flip;
+	
+	// inversion: the probability of 0, and where the search gives up
+	private double _q0;
+	private double _bound;
+	
+	// BTPE: the mode, the regions of the hat and their tails
+	private long _m;
+	private double _xm;
+	private double _xl;
+	private double _xr;
+	private double _c;
+	private double _laml;
+	private double _lamr;
+	private double _p1;
+	private double _p2;
+	private double _p3;
+	private double _p4;
+	private double _nrq;
+	
+	public BinomialSampler (long n, double p) {
+		if (n < 0 || !(p >= 0.0 && p <= 1.0)){
+			throw new IllegalArgumentException("Binomial " + n + ", " + p);
+		}
+		_n = n;
+		_p = p;
+		_r = Math.min(p, 1.0 - p);
+		_q = 1.0 - _r;
+		_flip = (_r != p);
+		
+		double mean = n * _r;
+		if (mean < BTPE_MEAN){
+			_q0 = Math.exp(n * Math.log1p(-_r));
+			_bound = Math.min(n, mean + 10.0 * Math.sqrt(mean * _q + 1.0));
+		}
+		else {
+			double fm = n * _r + _r;
+			_m = (long)Math.floor(fm);
+			_nrq = n * _r * _q;
+			_p1 = Math.floor(2.195 * Math.sqrt(_nrq) - 4.6 * _q) + 0.5;
+			_xm = _m + 0.5;
+			_xl = _xm - _p1;
+			_xr = _xm + _p1;
+			_c = 0.134 + 20.5 / (15.3 + _m);
+			double a = (fm - _xl) / (fm - _xl * _r);
+			_laml = a * (1.0 + a / 2.0);
+			a = (_xr - fm) / (_xr * _q);
+			_lamr = a * (1.0 + a / 2.0);
+			_p2 = _p1 * (1.0 + 2.0 * _c);
+			_p3 = _p2 + _c / _laml;
+			_p4 = _p3 + _c / _lamr;
+		}
+	}
+	
+	public long getN() {
+		return _n;
+	}
+	
+	public double getP() {
+		return _p;
+	}
+	
+	public long sample (RandomSource rand) {
+		long y = (_n * _r < BTPE_MEAN) ? sampleInversion(rand) : sampleBTPE(rand);
+		return _flip ? _n - y : y;
+	}
+	
+	private long sampleInversion (RandomSource rand) {
+		if (_r == 0.0){
+			return 0;
+		}
+		long x = 0;
+		double px = _q0;
+		double u = rand.randomDouble();
+		while (u > px){
+			x++;
+			if (x > _bound){
+				// rounding left u past the sum; start over
+				x = 0;
+				px = _q0;
+				u = rand.randomDouble();
+			}
+			else {
+				u -= px;
+				px = ((_n - x + 1) * _r * px) / (x * _q);
+			}
+		}
+		return x;
+	}
+	
+	private long sampleBTPE (RandomSource rand) {
+		while (true) {
+			double u = rand.randomDouble() * _p4;
+			double v = rand.randomDouble();
+			long y;
+			
+			if (u <= _p1){
+				// the triangle, accepted outright
+				return (long)Math.floor(_xm - _p1 * v + u);
+			}
+			else if (u <= _p2){
+				// the parallelograms
+				double x = _xl + (u - _p1) / _c;
+				v = v * _c + 1.0 - Math.abs(_m - x + 0.5) / _p1;
+				if (v > 1.0){
+					continue;
+				}
+				y = (long)Math.floor(x);
+			}
+			else if (u <= _p3){
+				// the left tail
+				if (v == 0.0){
+					continue;
+				}
+				double x = Math.floor(_xl + Math.log(v) / _laml);
+				if (x < 0.0){
+					continue;
+				}
+				y = (long)x;
+				v = v * (u - _p2) * _laml;
+			}
+			else {
+				// the right tail
+				if (v == 0.0){
+					continue;
+				}
+				double x = Math.floor(_xr - Math.log(v) / _lamr);
+				if (x > _n){
+					continue;
+				}
+				y = (long)x;
+				v = v * (u - _p3) * _lamr;
+			}
+			
+			if (accept(y, v)){
+				return y;
+			}
+		}
+	}
+	
+	// accept y if v falls under the density at y relative to the mode
+	private boolean accept (long y, double v) {
+		long k = Math.abs(y - _m);
+		if (k <= 20 || k >= _nrq / 2.0 - 1.0){
+			// the ratio of the density to the mode's, by recursion
+			double s = _r / _q;
+			double a = s * (_n + 1);
+			double f = 1.0;
+			if (_m < y){
+				for (long i = _m + 1; i <= y; i++){
+					f *= (a / i - s);
+				}
+			}
+			else if (_m > y){
+				for (long i = y + 1; i <= _m; i++){
+					f /= (a / i - s);
+				}
+			}
+			return v <= f;
+		}
+		
+		// squeezes on the log of the ratio
+		double rho = (k / _nrq)
+			* ((k * (k / 3.0 + 0.625) + 0.16666666666666666) / _nrq + 0.5);
+		double t = -((double)k * k) / (2.0 * _nrq);
+		double logv = Math.log(v);
+		if (logv < t - rho){
+			return true;
+		}
+		if (logv > t + rho){
+			return false;
+		}
+		
+		// the log of the ratio, by Stirling's series
+		double x1 = y + 1;
+		double f1 = _m + 1;
+		double z = _n + 1 - _m;
+		double w = _n - y + 1;
+		return logv <= _xm * Math.log(f1 / x1)
+			+ (_n - _m + 0.5) * Math.log(z / w)
+			+ (y - _m) * Math.log(w * _r / (x1 * _q))
+			+ stirling(f1) + stirling(z) - stirling(x1) - stirling(w);
+	}
+	
+	// the correction term of Stirling's series for log (x - 1)!
+	private static double stirling (double x) {
+		double x2 = x * x;
+		return (13860.0 - (462.0 - (132.0 - (99.0 - 140.0 / x2) / x2) / x2) / x2)
+			/ x / 166320.0;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * BufferedSource.java
+ */
+
+package lib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/*
+ * A RandomSource that draws its uniforms and exponentials a block at a
+ * time into buffers of its own, and hands them out one by one.  Each block
+ * is one tight loop over the wrapped source, which the JIT can inline and
+ * unroll, in place of a call into the source at every draw across the
+ * simulation's event code.
+ *
+ * The two buffers are filled independently, so the variates are those of
+ * the wrapped source in another order: the same distribution, but not the
+ * same stream as the source unbuffered.  Seeding empties both buffers.
+ * The state is the wrapped source's followed by the buffer size and the
+ * variates left in each buffer.  It only restores into buffers of the same
+ * size, since the size decides how the two buffers' draws interleave.
+ *
+ */
+
+public class BufferedSource implements RandomSource {
+	
+	private RandomSource _source;
+	
+	private double[] _uniforms;
+	private int _nextUniform;
+	
+	private double[] _exponentials;
+	private int _nextExponential;
+	
+	public BufferedSource (RandomSource source, int size) {
+		if (size < 1){
+			throw new IllegalArgumentException("Buffer size " + size);
+		}
+		_source = source;
+		_uniforms = new double[size];
+		_exponentials = new double[size];
+		_nextUniform = size;
+		_nextExponential = size;
+	}
+	
+	public RandomSource getSource() {
+		return _source;
+	}
+	
+	public long seedRandom (long seed) {
+		_nextUniform = _uniforms.length;
+		_nextExponential = _exponentials.length;
+		return _source.seedRandom(seed);
+	}
+	
+	public long getSeed() {
+		return _source.getSeed();
+	}
+	
+	public double randomDouble () {
+		if (_nextUniform == _uniforms.length){
+			fillUniforms();
+		}
+		return _uniforms[_nextUniform++];
+	}
+	
+	public int randomInt (int i) {
+		return (int)(i * randomDouble());
+	}
+	
+	public long randomInt (long i) {
+		return (long)(i * randomDouble());
+	}
+	
+	public double randomExponential () {
+		if (_nextExponential == _exponentials.length){
+			fillExponentials();
+		}
+		return _exponentials[_nextExponential++];
+	}
+	
+	public void writeState (DataOutput out) throws IOException {
+		_source.writeState(out);
+		out.writeInt(_uniforms.length);
+		out.writeInt(_uniforms.length - _nextUniform);
+		for (int i = _nextUniform; i < _uniforms.length; i++){
+			out.writeDouble(_uniforms[i]);
+		}
+		out.writeInt(_exponentials.length - _nextExponential);
+		for (int i = _nextExponential; i < _exponentials.length; i++){
+			out.writeDouble(_exponentials[i]);
+		}
+	}
+	
+	public void readState (DataInput in) throws IOException {
+		_source.readState(in);
+		int size = in.readInt();
+		if (size != _uniforms.length){
+			throw new IOException("BufferedSource state of size " + size
+								  + " for buffers of " + _uniforms.length);
+		}
+		_nextUniform = readBuffer(in, _uniforms);
+		_nextExponential = readBuffer(in, _exponentials);
+	}
+	
+	// read the variates left in a buffer into its end, and return where
+	// they start
+	private static int readBuffer (DataInput in, double[] buffer)
+		throws IOException {
+		int left = in.readInt();
+		if (left < 0 || left > buffer.length){
+			throw new IOException("Corrupt BufferedSource state");
+		}
+		int start = buffer.length - left;
+		for (int i = start; i < buffer.length; i++){
+			buffer[i] = in.readDouble();
+		}
+		return start;
+	}
+	
+	private void fillUniforms () {
+		RandomSource source = _source;
+		double[] u = _uniforms;
+		for (int i = 0; i < u.length; i++){
+			u[i] = source.randomDouble();
+		}
+		_nextUniform = 0;
+	}
+	
+	private void fillExponentials () {
+		RandomSource source = _source;
+		double[] e = _exponentials;
+		for (int i = 0; i < e.length; i++){
+			e[i] = source.randomExponential();
+		}
+		_nextExponential = 0;
+	}
+}
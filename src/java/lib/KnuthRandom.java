@@ -4,6 +4,10 @@
 
 package lib;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 
 /*
  * This is modified from the algorithm given in Numerical Recipes in C.
@@ -75,6 +79,9 @@ package lib;
  * restore_random_state() will read in a state from a FILE * and set up
  * the generator's state so that a run may be resumed. This stuff will 
  * only be compiled if you #define DUMPS.
+ * (In Java these are writeState() and readState(), always compiled: the
+ * seed, inext, inextp and ma[1..55] -- each < MBIG, so an int -- in 231
+ * bytes.)
  *
  * I took the static variables outside any function so that they could
  * be accessed by all functions in this file.
@@ -105,7 +112,7 @@ package lib;
  *
  */
 
-public class KnuthRandom {
+public class KnuthRandom implements RandomSource {
 	
 	private long MBIG=1000000000;
 	private long MSEED=161803398;
@@ -117,6 +124,9 @@ public class KnuthRandom {
 	
 	private long _seed;
 	
+	// leads a state written by writeState()
+	private static final byte STATE_TAG = 'K';
+	
 	public long seedRandom (long seed) {
 		long mj;
 		long mk;
@@ -196,6 +206,44 @@ public class KnuthRandom {
 		return (long)(Math.floor(i*randomDouble()));
 	}   
 	
+	public double randomExponential () {
+		return Probability.ExponentialByInversion(this);
+	}
+	
+	public void writeState (DataOutput out) throws IOException {
+		out.writeByte(STATE_TAG);
+		out.writeLong(_seed);
+		out.writeByte(inext);
+		out.writeByte(inextp);
+		for (int i = 1; i <= 55; i++){
+			out.writeInt((int)ma[i]);
+		}
+	}
+	
+	public void readState (DataInput in) throws IOException {
+		if (in.readByte() != STATE_TAG){
+			throw new IOException("Not a KnuthRandom state");
+		}
+		long seed = in.readLong();
+		int next = in.readByte();
+		int nextp = in.readByte();
+		long[] table = new long[56];
+		for (int i = 1; i <= 55; i++){
+			table[i] = in.readInt();
+			if (table[i] < 0 || table[i] >= MBIG){
+				throw new IOException("Corrupt KnuthRandom state");
+			}
+		}
+		if (next < 0 || next > 55 || nextp < 1 || nextp > 55){
+			throw new IOException("Corrupt KnuthRandom state");
+		}
+		
+		_seed = seed;
+		inext = next;
+		inextp = nextp;
+		ma = table;
+	}
+	
 	// jte
 	// 'probability' is the average rate of counts per unit time for an assumed Poisson random var
 	public double getWaitingTimePoisson( double probability )  {
@@ -20,6 +20,27 @@ public class Probability {
   protected static final double MEAN_MAX = Integer.MAX_VALUE; // for all means larger than that, we don't try to compute a poisson deviation, but return the mean.
   protected static final double SWITCH_MEAN = 12.0; // switch from method A to method B
 
+  // Ziggurat of the exponential density (G. Marsaglia and W. W. Tsang, "The
+  // ziggurat method for generating random variables", J. Stat. Softw. 5,
+  // 2000): 256 layers of equal area V under exp(-x), the widest, layer 0,
+  // reaching out to R with the tail beyond.  Layer i spans [0, ZIG_X[i]]
+  // between heights ZIG_F[i] and ZIG_F[i+1]; ZIG_X[0] is the width of a
+  // rectangle of area V at the height of R, and ZIG_X[256] is 0.
+  static final int ZIG_LAYERS = 256;
+  static final double ZIG_R = 7.69711747013104972;
+  static final double ZIG_V = 3.949659822581572e-3;
+  static final double[] ZIG_X = new double[ZIG_LAYERS + 1];
+  static final double[] ZIG_F = new double[ZIG_LAYERS + 1];
+  static {
+    ZIG_X[0] = ZIG_V / Math.exp(-ZIG_R);
+    ZIG_X[1] = ZIG_R;
+    for (int i=1; i<ZIG_LAYERS - 1; i++)
+      ZIG_X[i+1] = -Math.log(Math.exp(-ZIG_X[i]) + ZIG_V / ZIG_X[i]);
+    ZIG_X[ZIG_LAYERS] = 0.0;
+    for (int i=0; i<=ZIG_LAYERS; i++)
+      ZIG_F[i] = Math.exp(-ZIG_X[i]);
+  }
+
   public static long factorial (int n) {
     if (n < 0)
       throw new Error ("factorial called with negative number " + n);
@@ -85,9 +106,28 @@ public class Probability {
     return -tmp + Math.log(2.5066282746310005*ser);
   }
 
+  // LOG_FACTORIALS - log k! for k below its length, for logFactorial()
+  static final double[] LOG_FACTORIALS = new double[256];
+  static {
+    for (int k=1; k<LOG_FACTORIALS.length; k++)
+      LOG_FACTORIALS[k] = LOG_FACTORIALS[k-1] + Math.log(k);
+  }
+
+  // logFactorial - log k!, from a table for small k and by Stirling's
+  // series beyond, good to a few ulps either way.
+  public static double logFactorial(long k) {
+    if (k < LOG_FACTORIALS.length)
+      return LOG_FACTORIALS[(int)k];
+    double x = k;
+    double x2 = x*x;
+    return (x + 0.5)*Math.log(x) - x + 0.91893853320467274178
+      + (1.0/12.0 - (1.0/360.0 - 1.0/(1260.0*x2))/x2)/x;
+  }
+
   // RandomFromPoisson - returns a random int drawn from a Poisson distribution
   // this routine was adapted from colt's SlowPoisson.java nextInt method
-  public static long RandomFromPoisson(double mean, KnuthRandom rand) {
+  // (PoissonSampler draws faster, and keeps its setup for repeated means)
+  public static long RandomFromPoisson(double mean, RandomSource rand) {
     /* 
      * Adapted from "Numerical Recipes in C".
      */
@@ -135,7 +175,7 @@ public class Probability {
   
   // RandomFromNormal - returns a random int drawn from a Normal dist
   // (1/(sigma*sqrt(2pi))) * e^-(((x-mu)^2)/(2sigma^2))
-  public static int RandomFromNormal(long n, double p, KnuthRandom rand) {
+  public static int RandomFromNormal(long n, double p, RandomSource rand) {
     double r = rand.randomDouble();
     int k=0;
     double term = Math.pow(1-p, n);
@@ -153,7 +193,9 @@ public class Probability {
   }
 
   // RandomFromBinomial - returns a random int drawn from a Binomial dist
-  public static long RandomFromBinomial(long n, double p, KnuthRandom rand) {
+  // (only approximately past n = 100 -- BinomialSampler is exact, and keeps
+  // its setup for repeated parameters)
+  public static long RandomFromBinomial(long n, double p, RandomSource rand) {
     if (n>100)
       return RandomFromPoisson(n*p, rand); // Poisson approximation
 
@@ -177,7 +219,7 @@ public class Probability {
 
   // stolen from cern's jet.random package
   // http://tilde-hoschek.home.cern.ch/~hoschek/colt/V1.0.1/docsrc/cern/jet/random/Gamma.java.html
-  public static double RandomFromGamma(double alpha, double lambda, KnuthRandom rand) {
+  public static double RandomFromGamma(double alpha, double lambda, RandomSource rand) {
     /******************************************************************
      *                                                                *
      *    Gamma Distribution - Acceptance Rejection combined with     *
@@ -324,21 +366,60 @@ public class Probability {
   }
 
   // RandomFromExponential - returns a random double drawn from the 
-  // exponential distribution.
-  public static double RandomFromExponential(double lambda, KnuthRandom rand) {
+  // exponential distribution, by the source's own exponential variates.
+  public static double RandomFromExponential(double lambda, RandomSource rand) {
     if (lambda==0.0)
       return Double.MAX_VALUE;
+    return rand.randomExponential() / lambda;
+  }
+
+  // ExponentialByInversion - returns an exponential variate of mean 1 as
+  // -log of a uniform in (0,1).
+  public static double ExponentialByInversion(RandomSource rand) {
     double d;
     do {
       d = rand.randomDouble();
     } while (d == 0.0);
-    return -Math.log(d) / lambda;
+    return -Math.log(d);
+  }
+
+  // ExponentialByZiggurat - returns an exponential variate of mean 1 by the
+  // ziggurat.  One uniform picks the layer and the point across it; the
+  // point is taken at once if it lies under the layer above, as some 98% of
+  // points do, and otherwise accepted under the density, or taken from the
+  // tail -- by inversion, the exponential being memoryless.
+  public static double ExponentialByZiggurat(RandomSource rand) {
+    while (true) {
+      double u = rand.randomDouble() * ZIG_LAYERS;
+      int i = (int)u;
+      double x = (u - i) * ZIG_X[i];
+      if (x < ZIG_X[i+1])
+        return x;
+      if (i == 0)
+        return ZIG_R + ExponentialByInversion(rand);
+      double y = ZIG_F[i] + rand.randomDouble() * (ZIG_F[i+1] - ZIG_F[i]);
+      if (y < Math.exp(-x))
+        return x;
+    }
+  }
+
+  // RandomFromGeometric - returns the number of Bernoulli trials of
+  // success probability p up to and including the first success, drawn by
+  // inversion.  Long.MAX_VALUE if p is 0.
+  public static long RandomFromGeometric(double p, RandomSource rand) {
+    if (p >= 1.0)
+      return 1;
+    if (p <= 0.0)
+      return Long.MAX_VALUE;
+    double u = 1.0 - rand.randomDouble(); // (0,1]
+    double k = Math.floor(Math.log(u) / Math.log1p(-p)) + 1.0;
+    return (k >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long)k;
   }
 
   // RandomFromNegativeBinomial - returns a random int drawn from a 
   // negative Binomial dist
   public static long RandomFromNegativeBinomial(long n0, double p, 
-						KnuthRandom rand) {
+						RandomSource rand) {
     double term = Math.pow(p, n0);
     if (true || term==0.0 || n0>50) {
       p = 1.0-p;
@@ -372,7 +453,7 @@ public class Probability {
 					  int t,
 					  double birth,
 					  double death,
-					  KnuthRandom rand) {
+					  RandomSource rand) {
     double alpha = (death*(Math.exp((birth-death)*t)-1))/
                    (birth*Math.exp((birth-death)*t)-death);
     double beta = (birth*(Math.exp((birth-death)*t)-1))/
@@ -396,7 +477,7 @@ public class Probability {
   }
 					 
   // RandomFromCDF - returns a random number conditioned on cdf
-  public static long RandomFromCDF(ArrayList cdf, KnuthRandom rand) {
+  public static long RandomFromCDF(ArrayList cdf, RandomSource rand) {
     double r = rand.randomDouble();
     long i=0;
     for (Iterator it=cdf.iterator(); it.hasNext();) {
@@ -543,7 +624,7 @@ public class Probability {
 
   // getPermutation - returns a permuted array containing ints from 0..nSize-1
   // uses Fisher-Yates shuffle (described in Knuth)
-  public static int[] getPermutation(int nSize, KnuthRandom r) {
+  public static int[] getPermutation(int nSize, RandomSource r) {
     int [] p = new int[nSize];
     for (int i=0; i<nSize; i++)
       p[i] = i;
@@ -560,7 +641,7 @@ public class Probability {
 
   // getPermutation - permutes elements in array p
   // uses Fisher-Yates shuffle (described in Knuth)
-  public static void getPermutation(int[] p, KnuthRandom r) {
+  public static void getPermutation(int[] p, RandomSource r) {
     for (int i=p.length-1; i>0; i--) {
       int j = r.randomInt(i+1);
       if (i!=j) {
@@ -0,0 +1,53 @@
+/*
+ * RandomSource.java
+ */
+
+package lib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/*
+ * A stream of uniform random numbers, as KnuthRandom, Xoshiro256 and
+ * SplitMix give them.  The samplers of Probability draw from any source,
+ * so a simulation can own its generator and seed it, rather than share one
+ * across the JVM.
+ *
+ * seedRandom() takes a seed >= 0, or < 0 to seed from the system clock, and
+ * returns the seed used; the same seed gives the same stream.
+ *
+ * randomExponential() is the one variate a source draws itself, since the
+ * simulation draws more of them than of anything else: the generators take
+ * it by inversion, ZigguratSource by the ziggurat and BufferedSource from
+ * a buffer of them.
+ *
+ * writeState() writes all a source needs to go on where it stands, in a
+ * compact binary form led by a tag of its kind; readState() takes such a
+ * state back, so a suspended run resumes bit for bit.  A state of another
+ * kind of source is refused.
+ *
+ */
+
+public interface RandomSource {
+	
+	public long seedRandom (long seed);
+	
+	public long getSeed();
+	
+	// real in [0, 1)
+	public double randomDouble ();
+	
+	// whole number in [0, i)
+	public int randomInt (int i);
+	
+	public long randomInt (long i);
+	
+	// real > 0, exponential with mean 1
+	public double randomExponential ();
+	
+	public void writeState (DataOutput out) throws IOException;
+	
+	public void readState (DataInput in) throws IOException;
+}
@@ -0,0 +1,123 @@
+/*
+ * SplitMix.java
+ */
+
+package lib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/*
+ * SplitMix64 (G. L. Steele, D. Lea and C. H. Flood, "Fast splittable
+ * pseudorandom number generators", OOPSLA 2014), the generator behind
+ * java.util.SplittableRandom, which came too late for this code.
+ *
+ * The state is one long that moves on by an odd gamma at each draw; the
+ * draw is the state scrambled by a 64-bit finalizer.  split() takes the
+ * new stream's state and gamma from two draws of this one, so the streams
+ * of a tree of splits are as good as independent.
+ *
+ * A seed < 0 seeds from the system clock, as with KnuthRandom.
+ *
+ */
+
+public class SplitMix implements SplittableSource {
+	
+	// the gamma of a seeded stream, 2^64 / golden ratio
+	public static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	private long _state;
+	private long _gamma = GOLDEN_GAMMA;
+	
+	private long _seed;
+	
+	// leads a state written by writeState()
+	private static final byte STATE_TAG = 'S';
+	
+	// scramble a long, the finalizer of a draw (Stafford's variant 13)
+	public static long mix64 (long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	// scramble a long into an odd gamma with enough bit changes in it
+	static long mixGamma (long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+	
+	public long seedRandom (long seed) {
+		if (seed < 0){
+			seed = System.currentTimeMillis();
+		}
+		_seed = seed;
+		_state = seed;
+		_gamma = GOLDEN_GAMMA;
+		return seed;
+	}
+	
+	// the seed of a stream made by split() is its first state
+	public long getSeed() {
+		return _seed;
+	}
+	
+	public long nextLong () {
+		_state += _gamma;
+		return mix64(_state);
+	}
+	
+	public double randomDouble ()
+	//real in [0, 1), 53 bits
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	public int randomInt (int i) {
+		return (int)(i * randomDouble());
+	}
+	
+	public long randomInt (long i) {
+		return (long)(i * randomDouble());
+	}
+	
+	public double randomExponential () {
+		return Probability.ExponentialByInversion(this);
+	}
+	
+	public void writeState (DataOutput out) throws IOException {
+		out.writeByte(STATE_TAG);
+		out.writeLong(_seed);
+		out.writeLong(_state);
+		out.writeLong(_gamma);
+	}
+	
+	public void readState (DataInput in) throws IOException {
+		if (in.readByte() != STATE_TAG){
+			throw new IOException("Not a SplitMix state");
+		}
+		long seed = in.readLong();
+		long state = in.readLong();
+		long gamma = in.readLong();
+		if ((gamma & 1L) == 0){
+			throw new IOException("Corrupt SplitMix state");
+		}
+		_seed = seed;
+		_state = state;
+		_gamma = gamma;
+	}
+	
+	public SplittableSource split () {
+		SplitMix s = new SplitMix();
+		s._state = nextLong();
+		s._seed = s._state;
+		_state += _gamma;
+		s._gamma = mixGamma(_state);
+		return s;
+	}
+}
@@ -0,0 +1,23 @@
+/*
+ * SplittableSource.java
+ */
+
+package lib;
+
+
+/*
+ * A RandomSource that can hand out a new, independent stream cheaply --
+ * one per crypt or per replicate, say -- without a seed of its own.
+ *
+ * split() returns the new stream and moves this one on, so that neither
+ * sees the numbers of the other.
+ *
+ * The simulation does not split: each run of a set is seeded by
+ * SimulationRunner.deriveSeed(), so that it records a seed that repeats it.
+ *
+ */
+
+public interface SplittableSource extends RandomSource {
+	
+	public SplittableSource split();
+}
@@ -0,0 +1,157 @@
+/*
+ * Xoshiro256.java
+ */
+
+package lib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/*
+ * xoshiro256** (D. Blackman and S. Vigna, "Scrambled linear pseudorandom
+ * number generators", ACM TOMS 47, 2021): four longs of state, a period of
+ * 2^256 - 1, and a draw of a few shifts, rotations and xors.
+ *
+ * The state is filled from the seed by SplitMix64, as the authors advise,
+ * so that nearby seeds give unrelated streams.  jump() moves the stream on
+ * by 2^128 draws at the cost of 256 draws; split() hands out the stream as
+ * it stands and jumps this one past it, so up to 2^128 streams never
+ * overlap.
+ *
+ * A seed < 0 seeds from the system clock, as with KnuthRandom.
+ *
+ */
+
+public class Xoshiro256 implements SplittableSource {
+	
+	// the jump polynomial for 2^128 draws
+	private static final long[] JUMP = {
+		0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL,
+		0xa9582618e03fc9aaL, 0x39abdc4529b1661cL };
+	
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+	
+	private long _seed;
+	
+	// leads a state written by writeState()
+	private static final byte STATE_TAG = 'X';
+	
+	public long seedRandom (long seed) {
+		if (seed < 0){
+			seed = System.currentTimeMillis();
+		}
+		_seed = seed;
+		
+		long z = seed;
+		s0 = SplitMix.mix64(z += SplitMix.GOLDEN_GAMMA);
+		s1 = SplitMix.mix64(z += SplitMix.GOLDEN_GAMMA);
+		s2 = SplitMix.mix64(z += SplitMix.GOLDEN_GAMMA);
+		s3 = SplitMix.mix64(z += SplitMix.GOLDEN_GAMMA);
+		
+		return seed;
+	}
+	
+	// a stream made by split() keeps the seed of the one it came from
+	public long getSeed() {
+		return _seed;
+	}
+	
+	public long nextLong () {
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		
+		return result;
+	}
+	
+	public double randomDouble ()
+	//real in [0, 1), 53 bits
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	public int randomInt (int i) {
+		return (int)(i * randomDouble());
+	}
+	
+	public long randomInt (long i) {
+		return (long)(i * randomDouble());
+	}
+	
+	public double randomExponential () {
+		return Probability.ExponentialByInversion(this);
+	}
+	
+	public void writeState (DataOutput out) throws IOException {
+		out.writeByte(STATE_TAG);
+		out.writeLong(_seed);
+		out.writeLong(s0);
+		out.writeLong(s1);
+		out.writeLong(s2);
+		out.writeLong(s3);
+	}
+	
+	public void readState (DataInput in) throws IOException {
+		if (in.readByte() != STATE_TAG){
+			throw new IOException("Not a Xoshiro256 state");
+		}
+		long seed = in.readLong();
+		long t0 = in.readLong();
+		long t1 = in.readLong();
+		long t2 = in.readLong();
+		long t3 = in.readLong();
+		if ((t0 | t1 | t2 | t3) == 0){
+			throw new IOException("Corrupt Xoshiro256 state");
+		}
+		_seed = seed;
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+	}
+	
+	// move on by 2^128 draws
+	public void jump () {
+		long t0 = 0;
+		long t1 = 0;
+		long t2 = 0;
+		long t3 = 0;
+		for (int i = 0; i < JUMP.length; i++){
+			for (int b = 0; b < 64; b++){
+				if ((JUMP[i] & (1L << b)) != 0){
+					t0 ^= s0;
+					t1 ^= s1;
+					t2 ^= s2;
+					t3 ^= s3;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+	}
+	
+	public SplittableSource split () {
+		Xoshiro256 x = new Xoshiro256();
+		x.s0 = s0;
+		x.s1 = s1;
+		x.s2 = s2;
+		x.s3 = s3;
+		x._seed = _seed;
+		jump();
+		return x;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * ZigguratSource.java
+ */
+
+package lib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/*
+ * A RandomSource whose exponential variates come by the ziggurat of
+ * Probability.ExponentialByZiggurat rather than by inversion: a lookup, a
+ * multiply and a compare for most, and a log for about one in fifty.  The
+ * uniforms are those of the source it wraps, and so is its state.
+ *
+ */
+
+public class ZigguratSource implements RandomSource {
+	
+	private RandomSource _source;
+	
+	public ZigguratSource (RandomSource source) {
+		_source = source;
+	}
+	
+	public RandomSource getSource() {
+		return _source;
+	}
+	
+	public long seedRandom (long seed) {
+		return _source.seedRandom(seed);
+	}
+	
+	public long getSeed() {
+		return _source.getSeed();
+	}
+	
+	public double randomDouble () {
+		return _source.randomDouble();
+	}
+	
+	public int randomInt (int i) {
+		return _source.randomInt(i);
+	}
+	
+	public long randomInt (long i) {
+		return _source.randomInt(i);
+	}
+	
+	public double randomExponential () {
+		return Probability.ExponentialByZiggurat(_source);
+	}
+	
+	public void writeState (DataOutput out) throws IOException {
+		_source.writeState(out);
+	}
+	
+	public void readState (DataInput in) throws IOException {
+		_source.readState(in);
+	}
+}
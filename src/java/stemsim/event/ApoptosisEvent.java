@@ -3,7 +3,6 @@ package stemsim.event;
 
 import java.util.PriorityQueue;
 
-import lib.KnuthRandom;
 import lib.Probability;
 
 import stemsim.object.*;
@@ -24,16 +23,18 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
                                           StemCell $cell)
     {
         Simulation sim = $cell.getSimulation();
-        SimulationParams params = sim.getParams();
-        double floor = params.getDouble("event.apoptosis.floor");
+        double floor = sim.getConfig().getApoptosisFloor();
 
         double rate = $cell.getApoptosisRate();
 
         ApoptosisEvent old = $cell.getApoptosisEvent();
         ApoptosisEvent e = createEvent($currentTime, rate, floor, $cell, old);
         
-        replace(sim, e, old);
-        $cell.setApoptosisEvent(e);
+        if (e != old)
+        {
+            replace(sim, e, old);
+            $cell.setApoptosisEvent(e);
+        }
         
         return e;
     }
@@ -41,10 +42,23 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
     
     public static ApoptosisEvent generateFeedback(double $currentTime,
                                                   StemCell $cell)
+    {
+        return generateFeedback($currentTime, $cell, false);
+    }
+
+    
+    /**
+     * Generate the feedback apoptosis event of the given cell.  If $rescale
+     * is set a pending event is moved to the cell's new rate rather than
+     * drawn again.
+     *
+     */
+    public static ApoptosisEvent generateFeedback(double $currentTime,
+                                                  StemCell $cell,
+                                                  boolean $rescale)
     {
         Simulation sim = $cell.getSimulation();
-        SimulationParams params = sim.getParams();
-        double floor = params.getDouble("event.apoptosis.floor");
+        double floor = sim.getConfig().getApoptosisFloor();
         
         // if have a dead neighbor, we don't generate an event (allow stem 
         // population to expand)
@@ -68,10 +82,19 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
         double rate = $cell.getFeedbackApoptosisRate();
 
         ApoptosisEvent old = $cell.getFeedbackApoptosisEvent();
+        if ($rescale && canRescale(sim, old))
+        {
+            rescale(sim, old, $currentTime, floor, rate);
+            return old;
+        }
+        
         ApoptosisEvent e = createEvent($currentTime, rate, floor, $cell, old);
 
-        replace(sim, e, old);
-        $cell.setFeedbackApoptosisEvent(e);
+        if (e != old)
+        {
+            replace(sim, e, old);
+            $cell.setFeedbackApoptosisEvent(e);
+        }
         
         return e;
     }
@@ -79,15 +102,12 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
     
     static void removeFeedbackEvent(StemCell $cell)
     {
-        EventQueue queue = $cell.getSimulation().getEventQueue();
         ApoptosisEvent old = $cell.getFeedbackApoptosisEvent();
         
         if (old != null)
         {
-            old.invalidate();
-            queue.remove(old);
-            
             $cell.setFeedbackApoptosisEvent(null);
+            discard($cell.getSimulation(), old);
         }
     }
     
@@ -96,20 +116,20 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
                         ApoptosisEvent $new, 
                         ApoptosisEvent $old)
     {
-        EventQueue queue = $sim.getEventQueue();
-
         // remove the old apoptosis event from the queue
-        if ($old != null)
-        {
-            $old.invalidate();
-            queue.remove($old);
-        }
+        discard($sim, $old);
 
         // add new apoptosis event to the queue
-        queue.offer($new);
+        $sim.getEventQueue().offer($new);
     }
 
     
+    /**
+     * Return an apoptosis event for the given cell at a newly drawn time.
+     * The existing event is moved to that time if it is still pending,
+     * otherwise a new event is created for the caller to queue.
+     *
+     */
     static ApoptosisEvent createEvent(double $currentTime,
                                       double $apoptosisRate,
                                       double $floor,
@@ -117,15 +137,23 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
                                       ApoptosisEvent $existing)
     {
         Simulation sim = $cell.getSimulation();
-        SimulationParams params = sim.getParams();
         
         // calculate event time -- unscaled
         double rate = $apoptosisRate;
-        double rnd = Probability.RandomFromExponential(rate, Simulation.RANDOM);
+        double rnd = Probability.RandomFromExponential(rate, sim.getRandom());
         double etime = $currentTime + rnd + $floor;
         
+        // move the pending event to its new time
+        if (isPending(sim, $existing))
+        {
+            $existing.setClocked($currentTime);
+            $existing.setRate(rate);
+            sim.getEventQueue().reschedule($existing, etime);
+            return $existing;
+        }
+        
         // create event
-        ApoptosisEvent e = new ApoptosisEvent($cell);
+        ApoptosisEvent e = sim.getEventPool().apoptosis($cell);
         e.setTime(etime);
 
         // Noting when it was created so that we could figure out how much time 
@@ -134,6 +162,7 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
         // when we were rescaling time to the end of the event.
         // Don't think we use this anymore.
         e.setClocked($currentTime);
+        e.setRate(rate);
 
         return e;
     }
@@ -182,6 +211,12 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
          */
         // DEBUG
         
+        // settle any no-op asymmetric divisions the subject had left
+        if (_subject instanceof StemCell)
+        {
+            AsymmetricDivisionEvent.interrupt((StemCell)_subject, getTime());
+        }
+        
         // kill the subject and remove from crypt
         // subject = stem cell, killing it before removing is probably redundant
         _subject.kill();
@@ -201,6 +236,16 @@ public class ApoptosisEvent extends SimulationEvent implements Cloneable
         return _subject;
     }
     
+    
+    /**
+     * Return the crypt of the subject cell.
+     *
+     */
+    public Crypt getLocalCrypt()
+    {
+        return _subject.getCrypt();
+    }
+    
     public Crypt getCrypt()
     {
         return _crypt;
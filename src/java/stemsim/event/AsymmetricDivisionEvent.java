@@ -4,7 +4,7 @@ package stemsim.event;
 import java.text.DecimalFormat;
 import java.util.*;
 
-import lib.KnuthRandom;
+import lib.RandomSource;
 import lib.Probability;
 
 import stemsim.object.*;
@@ -14,6 +14,11 @@ import stemsim.simulation.*;
 /**
  * Represents a stem cell division.
  *
+ * Most asymmetric divisions change nothing but the division counts.  With
+ * event.asymmetricdivision.thinning set, a cell's next event is instead its
+ * next division that mutates or hits a TSG, as its division countdowns tell,
+ * and stands for the no-op divisions before it as well.
+ *
  */
 public class AsymmetricDivisionEvent extends SimulationEvent 
 implements Cloneable
@@ -31,14 +36,26 @@ implements Cloneable
                                                    StemCell $stemCell)
     {
         Simulation sim = $stemCell.getSimulation();
-        SimulationParams params = sim.getParams();
-        double floor = params.getDouble("event.celldivision.floor");
+        double floor = sim.getConfig().getDivisionFloor();
         
         // calculate new event time -- unscaled
         double rate = $stemCell.getAsymmetricDivisionRate();
 
-        double rnd = Probability.RandomFromExponential(rate, Simulation.RANDOM);
-        double etime = $currentTime + rnd + floor;
+        long skipped = 0;
+        double etime;
+        if (sim.getConfig().isThinningAsymmetricDivisions())
+        {
+            long divisions = $stemCell.getDivisionsToTrialHit();
+            skipped = divisions - 1;
+            etime = $currentTime 
+                + waitFor(divisions, rate, floor, sim.getRandom());
+        }
+        else
+        {
+            double rnd = 
+                Probability.RandomFromExponential(rate, sim.getRandom());
+            etime = $currentTime + rnd + floor;
+        }
         
         // DEBUG
         /*
@@ -53,22 +70,33 @@ implements Cloneable
          */
         // DEBUG
         
-        // create new event
-        AsymmetricDivisionEvent e = new AsymmetricDivisionEvent($stemCell);
-        e.setTime(etime);
-        e.setClocked($currentTime);
-
-        // remove old event from queue
-        EventQueue queue = $stemCell.getSimulation().getEventQueue();
-        if ($stemCell.getAsymmetricDivisionEvent() != null)
+        EventQueue queue = sim.getEventQueue();
+        AsymmetricDivisionEvent e = $stemCell.getAsymmetricDivisionEvent();
+        if (isPending(sim, e))
         {
-            $stemCell.getAsymmetricDivisionEvent().invalidate();
-            queue.remove($stemCell.getAsymmetricDivisionEvent());
+            // move the pending event to its new time
+            e.setClocked($currentTime);
+            e.setRate(rate);
+            e._skipped = skipped;
+            queue.reschedule(e, etime);
+        }
+        else
+        {
+            // create new event
+            AsymmetricDivisionEvent old = e;
+            e = sim.getEventPool().asymmetricDivision($stemCell);
+            e.setTime(etime);
+            e.setClocked($currentTime);
+            e.setRate(rate);
+            e._skipped = skipped;
+
+            // remove old event from queue
+            discard(sim, old);
+
+            // add new event to the queue
+            $stemCell.setAsymmetricDivisionEvent(e);
+            queue.offer(e);
         }
-        
-        // add new event to the queue
-        $stemCell.setAsymmetricDivisionEvent(e);
-        queue.offer(e);
         
         // if the symmetric division event is within the min div time (12 hrs)
         // of the new asymm event, then push symm back min time
@@ -78,40 +106,177 @@ implements Cloneable
     }
     
     
+    /**
+     * Return the time the given number of divisions take, each a floor and
+     * an exponential wait at the given rate, drawn from the given generator.
+     *
+     */
+    static double waitFor(long $divisions, 
+                          double $rate, 
+                          double $floor,
+                          RandomSource $random)
+    {
+        if ($divisions == Long.MAX_VALUE || $rate == 0.0)
+        {
+            return Double.MAX_VALUE;
+        }
+        
+        if ($divisions == 1)
+        {
+            return Probability.RandomFromExponential($rate, $random) + $floor;
+        }
+        
+        return Probability.RandomFromGamma($divisions, $rate, $random)
+            + ($divisions * $floor);
+    }
+    
+    
+    /**
+     * Account for the no-op divisions a cell's pending thinned event has
+     * passed by the given time, before the cell divides symmetrically or
+     * dies.  They are not known one by one, so the simulation is credited
+     * with their expected number, and the cell's countdowns, which never
+     * saw them, are drawn again.
+     *
+     */
+    static public void interrupt(StemCell $cell, double $time)
+    {
+        double passed = getPassedDivisions($cell, $time);
+        if (passed == 0.0)
+        {
+            return;
+        }
+        
+        $cell.getSimulation().recordAsymmetricDivisions($cell, passed);
+        
+        $cell.getAsymmetricDivisionEvent()._skipped = 0;
+        $cell.resetTrials();
+    }
+    
+    
+    /**
+     * Draw a cell's pending thinned event again at the given time, when
+     * the countdowns it waits for have changed.  Given the time of its last
+     * division, the exponential waits of the divisions it stands for are
+     * spread evenly over their sum, so the no-op divisions it has passed
+     * are drawn one by one up to the given time and skipped on the
+     * countdowns, which keep their draws.  The next division comes no
+     * sooner than a floor after the last one passed, as CryptLeapEvent
+     * has it on exit.
+     *
+     */
+    static public void redraw(StemCell $cell, double $time)
+    {
+        Simulation sim = $cell.getSimulation();
+        AsymmetricDivisionEvent e = $cell.getAsymmetricDivisionEvent();
+        if (!isPending(sim, e))
+        {
+            return;
+        }
+        
+        if (e.getTime() == Double.MAX_VALUE)
+        {
+            // nothing to wait for -- its divisions, if any, only count
+            if (e.getRate() > 0.0)
+            {
+                interrupt($cell, $time);
+            }
+            generate($time, $cell);
+            return;
+        }
+        
+        double floor = sim.getConfig().getDivisionFloor();
+        RandomSource random = sim.getRandom();
+        long left = e._skipped + 1;
+        double last = e.getClocked();
+        double wait = Math.max(0.0, e.getTime() - last - (left * floor));
+        long passed = 0;
+        while (left > 1)
+        {
+            // the first of the left waits, given their sum, is the least
+            // of left - 1 uniform points on it
+            double next = wait 
+                * (1.0 - Math.pow(random.randomDouble(), 1.0 / (left - 1)));
+            if (last + floor + next > $time)
+            {
+                break;
+            }
+            last += floor + next;
+            wait -= next;
+            left--;
+            passed++;
+        }
+        
+        if (passed > 0)
+        {
+            sim.recordAsymmetricDivisions($cell, passed);
+            $cell.skipTrials(passed);
+        }
+        generate(Math.max($time - floor, last), $cell);
+    }
+    
+    
+    /**
+     * Return the expected number of no-op divisions a cell's pending thinned
+     * event has passed by the given time, 0 if it has none.
+     *
+     */
+    static public double getPassedDivisions(StemCell $cell, double $time)
+    {
+        Simulation sim = $cell.getSimulation();
+        AsymmetricDivisionEvent e = $cell.getAsymmetricDivisionEvent();
+        if (!isPending(sim, e) || e._skipped == 0)
+        {
+            return 0.0;
+        }
+        
+        // divisions come a floor and an exponential wait apart; the
+        // renewal function of such intervals, of mean m and variance s^2,
+        // grows as t/m + (s^2 - m^2)/(2 m^2)
+        double floor = sim.getConfig().getDivisionFloor();
+        double wait = 1.0 / e.getRate();
+        double period = floor + wait;
+        double passed = ($time - e.getClocked()) / period
+            + ((wait * wait) - (period * period)) / (2 * period * period);
+        passed = Math.max(0.0, passed);
+        return Math.min(passed, (double)e._skipped);
+    }
+    
+    
     /** static formatter for String output */
     static DecimalFormat dform = new DecimalFormat("#.###");
     
     
     static public void checkForTSGHit(StemCell $cell)
+    {
+        checkForTSGHit($cell, $cell.getSimulation().getCurrentEvent().getTime());
+    }
+    
+    
+    /**
+     * Check a division of the given cell at the given time for a TSG hit.
+     * An event checks its own divisions at its own time; a leaping crypt
+     * checks divisions that came within its step at their times.
+     *
+     */
+    static public void checkForTSGHit(StemCell $cell, double $time)
     {
         // check for a TSG hit
-        // can either be in stem cell or transient chamber
-        Simulation sim = $cell.getSimulation();
-        SimulationParams params = sim.getParams();
-        double pmut = $cell.getTSGMutationRate();
-        
-        // base probabilities of a TSG hit in the given location
-        double pmutStem = pmut;
-        double pmutTrans = 1 - 
-            (Math.pow((1 - pmut), $cell.getTransientCells()));
-        
-        // flip the coin and check for mutation in stem cell
-        double coin = Simulation.RANDOM.randomDouble();
-        if (coin <= pmutStem)
+        // can either be in stem cell or transient chamber -- the cell
+        // counts down the divisions to its next hit in each
+        if ($cell.tsgTrial())
         {
-            stemCellHit($cell);
+            stemCellHit($cell, $time);
         }
 
-        // flip the coin and check for mutation in TAC compartment
-        coin = Simulation.RANDOM.randomDouble();
-        if (coin <= pmutTrans)
+        if ($cell.tacTrial())
         {
-            transHit($cell);
+            transHit($cell, $time);
         }
     }
     
     
-    static void stemCellHit(StemCell $cell)
+    static void stemCellHit(StemCell $cell, double $time)
     {
         // DEBUG
         System.err.println("TSG StemCell");
@@ -119,24 +284,24 @@ implements Cloneable
         
         $cell.tsgHit();
 
-        $cell.getCrypt().getTissue().recordTSGCell($cell);
+        $cell.getCrypt().getTissue().recordTSGCell($cell, $time);
 
         if ($cell.isCancerous())
         {
-            cancer($cell);
+            cancer($cell, $time);
         }
     }
     
     
-    static void transHit(StemCell $cell)
+    static void transHit(StemCell $cell, double $time)
     {
         $cell.tsgHitTAC();
         
-        $cell.getCrypt().getTissue().recordTSGTAC($cell);
+        $cell.getCrypt().getTissue().recordTSGTAC($cell, $time);
     }
     
     
-    static void cancer(StemCell $cell)
+    static void cancer(StemCell $cell, double $time)
     {
         // DEBUG
         System.err.println("CANCER IN " + $cell);
@@ -144,7 +309,7 @@ implements Cloneable
         
         Simulation sim = $cell.getSimulation();
         SimulationEndEvent se = SimulationEndEvent.create(sim);
-        se.setTime(sim.getCurrentEvent().getTime());
+        se.setTime($time);
         sim.getEventQueue().offer(se);
         return;
     }
@@ -157,6 +322,9 @@ implements Cloneable
     /** The stem cell that will divide. */
     StemCell _subject;
     
+    /** No-op divisions folded into this one by thinning */
+    long _skipped = 0;
+    
     
     /**
      * Constructor.
@@ -174,6 +342,33 @@ implements Cloneable
     }
     
     
+    /**
+     * Return the number of divisions this event stands for.
+     *
+     */
+    public long getDivisions()
+    {
+        return _skipped + 1;
+    }
+    
+    
+    void reset()
+    {
+        super.reset();
+        _skipped = 0;
+    }
+    
+    
+    /**
+     * Return the crypt of the subject cell.
+     *
+     */
+    public Crypt getLocalCrypt()
+    {
+        return _subject.getCrypt();
+    }
+    
+    
     /**
      * Perform this event -- create a daughter cell, generate a new mutation,
      * generate new stem cell events, register a change to the crypt.
@@ -187,6 +382,9 @@ implements Cloneable
             return;
         }
         
+        // the divisions folded into this one hit nothing
+        _subject.skipTrials(_skipped);
+        
         // check for a TSG hit
         checkForTSGHit(_subject);
         
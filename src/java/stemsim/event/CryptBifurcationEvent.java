@@ -4,7 +4,7 @@ package stemsim.event;
 import java.text.DecimalFormat;
 import java.util.*;
 
-import lib.KnuthRandom;
+import lib.RandomSource;
 import lib.Probability;
 
 import stemsim.object.*;
@@ -58,6 +58,16 @@ public class CryptBifurcationEvent extends SimulationEvent
     }
     
     
+    /**
+     * Return the crypt that is going to bifurcate.
+     *
+     */
+    public Crypt getLocalCrypt()
+    {
+        return _subject;
+    }
+    
+    
     /**
      * Return the crypt that received stem cells.
      *
@@ -89,7 +99,7 @@ public class CryptBifurcationEvent extends SimulationEvent
         }
 
         // pick new digs
-        KnuthRandom rnd = Simulation.RANDOM;
+        RandomSource rnd = _subject.getSimulation().getRandom();
         int numdead = deadneighbors.size();
         int n = rnd.randomInt(numdead);
         if (n > numdead - 1)
@@ -110,9 +120,16 @@ public class CryptBifurcationEvent extends SimulationEvent
             _daughter.add(cell);
         }
         
-        // register the change to the crypt population
+        // the cells that moved were scheduled at the old crypt's effects
+        _daughter.setScheduledEffectKey(Crypt.NO_EFFECT_KEY);
+        
+        // register the change to the crypt population -- both crypts' events
+        // in one batch
+        EventQueue queue = _subject.getSimulation().getEventQueue();
+        queue.beginBatch();
         CryptChangeEvent.run(_subject, getTime());
         CryptChangeEvent.run(_daughter, getTime());
+        queue.commitBatch();
         
         // DEBUG
         System.err.println("bifurcation: " 
@@ -32,7 +32,27 @@ public class CryptChangeEvent
     static public void run(Crypt $subject, double $time)
     {
         Simulation sim = $subject.getSimulation();
-        SimulationParams params = sim.getParams();
+        SimulationConfig config = sim.getConfig();
+        boolean rescale = config.isRescaling();
+        boolean thinning = config.isThinningAsymmetricDivisions();
+        
+        // in NRM mode the events of a cell whose rates did not change are
+        // left alone -- rescaling them by 1 would move nothing.  Crossing the
+        // homeostatic level only turns feedback apoptosis on or off.
+        boolean unchanged = false;
+        boolean feedback = false;
+        if (rescale)
+        {
+            int key = $subject.getEffectKey();
+            int last = $subject.getScheduledEffectKey();
+            unchanged = last != Crypt.NO_EFFECT_KEY
+                && (key | Crypt.EFFECT_ABOVE_HOMEOSTATIC)
+                    == (last | Crypt.EFFECT_ABOVE_HOMEOSTATIC);
+            feedback = (key & (Crypt.EFFECT_DEAD_NEIGHBOR 
+                               | Crypt.EFFECT_ABOVE_HOMEOSTATIC))
+                == Crypt.EFFECT_ABOVE_HOMEOSTATIC;
+            $subject.setScheduledEffectKey(key);
+        }
         
         // if we have cancer, stop the simulation
         if ($subject.isCancerous())
@@ -47,26 +67,42 @@ public class CryptChangeEvent
             return;
         }
         
-        // re-generate the apoptosis/division events of each stem cell
-        for (StemCell cell : $subject.getStemCells())
+        // re-generate the apoptosis/division events of each stem cell, as
+        // one batch of queue updates
+        EventQueue queue = sim.getEventQueue();
+        queue.beginBatch();
+        int numcells = $subject.getStemCells().size();
+        for (int i=0; i<numcells; i++)
         {
-            ApoptosisEvent.generateFeedback($time, cell);
+            StemCell cell = $subject.getStemCell(i);
+            
+            // a thinned event waits for a TAC hit at the transient cells
+            // the crypt had when it was drawn
+            if (thinning && !cell.isTACCountdownCurrent())
+            {
+                AsymmetricDivisionEvent.redraw(cell, $time);
+            }
+            
+            if (!(unchanged && isFeedbackCurrent(sim, cell, feedback)))
+            {
+                ApoptosisEvent.generateFeedback($time, cell, rescale);
+            }
             
             // Checks to see if we are in the middle of dividing. If so, don't 
             // reschedule
-            if (!impending(sim, cell.getDivisionEvent(), $time)) 
+            if (!impending(sim, cell.getDivisionEvent(), $time)
+                && !(unchanged && isDivisionCurrent(sim, cell))) 
             {
-                SymmetricDivisionEvent.generate($time, cell);
+                SymmetricDivisionEvent.generate($time, cell, rescale);
             }
         }
+        queue.commitBatch();
         
         // if we're above bifurcation threshold and there is a dead neighbor...
-        double mean = params.getDouble("crypt.numcells.mean");
-        double ratio = params.getDouble("crypt.bifurcation.threshold.ratio");
-        long thresh = Math.round(mean * ratio); // could store this value
+        long thresh = config.getBifurcationThreshold();
         
         boolean canBifurcate = $subject.getStemCells().size() >= thresh
-            && $subject.deadNeighbors().size() > 0;
+            && $subject.hasDeadNeighbor();
 
         if (canBifurcate)
         {
@@ -74,6 +110,37 @@ public class CryptChangeEvent
             be.setTime($time);
             sim.getEventQueue().offer(be);
         }
+        
+        // a crypt well away from its thresholds may leap from here on
+        CryptLeapEvent.enter($subject, $time);
+    }
+    
+    
+    /**
+     * Return true if a cell's feedback apoptosis event is as the crypt's
+     * unchanged effects want it: pending if feedback is on, absent if not.
+     * The feedback rate depends on the crypt alone.
+     *
+     */
+    static boolean isFeedbackCurrent(Simulation $sim, 
+                                     StemCell $cell, 
+                                     boolean $feedback)
+    {
+        ApoptosisEvent e = $cell.getFeedbackApoptosisEvent();
+        return $feedback ? SimulationEvent.canRescale($sim, e) : e == null;
+    }
+    
+    
+    /**
+     * Return true if a cell's division event is pending at the cell's
+     * current division rate, which mutations may have changed.
+     *
+     */
+    static boolean isDivisionCurrent(Simulation $sim, StemCell $cell)
+    {
+        SymmetricDivisionEvent e = $cell.getDivisionEvent();
+        return SimulationEvent.canRescale($sim, e)
+            && e.getRate() == $cell.getDivisionRate();
     }
     
     
@@ -90,8 +157,7 @@ public class CryptChangeEvent
                         "wrong event type: " + $event.getClass().getName());
         }
         
-        SimulationParams params = $sim.getParams();
-        double floor = params.getDouble("event.celldivision.floor");
+        double floor = $sim.getConfig().getDivisionFloor();
         
         return ($event.getTime() - $time) < floor;
     }
@@ -0,0 +1,1297 @@
+package stemsim.event;
+
+
+import lib.PoissonSampler;
+import lib.RandomSource;
+
+import stemsim.object.*;
+import stemsim.simulation.*;
+
+
+/**
+ * Advances a crypt by tau-leaps (simulation.engine=tau-leap).
+ *
+ * A leaping crypt's cells have no events of their own.  At the start of
+ * each step the rates of its cells are taken, what of them is the cells'
+ * own held over the step, and its deaths and symmetric divisions -- the
+ * events that change the crypt -- are drawn in time order, the crypt's
+ * asymmetric divisions, which make up most of its cell events, counted at
+ * once.
+ * What the leap saves is the event queue and its per-event work: one
+ * event per crypt and step rather than one per cell event.
+ *
+ * The deaths and divisions are drawn for the crypt, not cell by cell.
+ * Each cell's apoptosis is a time, drawn at its birth or division as
+ * ApoptosisEvent draws it and not drawn again.  The waits CryptChangeEvent
+ * draws again at each change to the crypt -- a symmetric division not yet
+ * impending, feedback apoptosis -- are memoryless, so each is a clock of
+ * the crypt as the Next Reaction Method keeps one: an exponential wait of
+ * rate 1 that the crypt's total rate of the kind counts down, drawn again
+ * only when it ends.  Feedback apoptosis has the same rate in every cell
+ * and comes to one picked evenly; the wait for a symmetric division comes
+ * to one of the cells with no division due, picked by rate, whose division
+ * is then due the division floor later, as SymmetricDivisionEvent has it.
+ * A feedback apoptosis comes no sooner than the apoptosis floor after the
+ * crypt's last change.  So the events cost a few steps over the cells
+ * each, and a step with none, nothing but the sums of the rates.
+ *
+ * A cell's asymmetric divisions come the division floor f and an
+ * exponential wait at rate r apart, and start again at its symmetric
+ * divisions.  Their renewal function, for a period of mean m = f + 1/r,
+ * grows as (t - o) / m with o = f - f^2 / (2m), so a cell's divisions are
+ * counted at rate 1/m from o after its last symmetric division on, and a
+ * step's, over the spans of its cells -- each cell's time in the step, cut
+ * at its symmetric divisions -- are one draw from the Poisson distribution
+ * for the whole crypt, shared among the spans by picks weighted by their
+ * means.  A span's divisions lie evenly over it.  The few that the cell's
+ * countdowns end at, mutating or hitting a TSG as in an
+ * AsymmetricDivisionEvent, happen at their own times among the crypt's
+ * events; a TSG hit is recorded at its time, and a hit that makes a cell
+ * cancerous ends the simulation there and the step with it.  Without a
+ * floor this is the Poisson process of the exact events.  With one the
+ * count's mean is right past the first floor but not its spread, which is
+ * no matter to the countdowns; over 100 days the counts agree with the
+ * queue engine's within the noise at a floor of 0.5, and run some 2% high
+ * at a floor of 2, where the renewal function rises less steeply at first.
+ * A symmetric division due is pushed back within the floor after an
+ * asymmetric division, as correctDivEvents() has it, with the chance f/m
+ * one falls in the floor before it, as correctThinnedDivEvents() has it
+ * for divisions it does not see.  Up to that asymmetric division a
+ * division so pushed is not impending, and a change to the crypt sends
+ * its cell back to waiting, as CryptChangeEvent draws it again.
+ *
+ * The step is chosen as in Cao, Gillespie and Petzold (J. Chem. Phys. 124,
+ * 2006) for the one population every rate depends on through the crypt's
+ * effects: for n cells of total division rate b and death rate d, the
+ * expected change (b - d) tau and its standard deviation sqrt((b + d) tau)
+ * are both held to max(epsilon n, 1), epsilon = event.leap.epsilon.  The
+ * crypt's effects, which change in bands of the population, are not held:
+ * the factor on the division rates and the feedback apoptosis rate follow
+ * the population through the step from one death or division to the next,
+ * as CryptChangeEvent has them, and only each cell's own part of its rates
+ * is held.  No step runs past the end of the simulation.  What is left of
+ * the error are the rates a mutation within a step changes, and what other
+ * crypts do to this one -- a neighbor dying -- both held until the step
+ * ends.
+ *
+ * A crypt only leaps well away from the thresholds where single events
+ * matter: it starts when it has more than 2m cells and fewer than the
+ * bifurcation or cancer threshold less 2m, for m = event.leap.margin, and
+ * no cell one TSG hit short of cancer; it stops, and its cells take up
+ * events again, after the first step at whose end one of these no longer
+ * holds with m in place of 2m.  A step ends at the death or division that
+ * takes the crypt within m of its thresholds, so crypt death and
+ * bifurcation always happen by the exact events; only a TSG hit within a
+ * step leaves a cell one hit short of cancer until the step ends.
+ *
+ * Measured by EngineValidation against the queue engine on run.props, 40
+ * runs of each, the mean times to cancer and crypt lifespans lie within 1.6
+ * standard errors of the queue's, and the Kolmogorov-Smirnov p-values at
+ * 0.2 or above, for epsilon 0.1, 0.3 and 1 at margin 3 and for margin 1;
+ * the figures are in run.props.  The crypts that die in so many runs are
+ * few, 10 to 31, so that a bias in their lifespans below some 30% would
+ * not show.
+ *
+ */
+public class CryptLeapEvent extends SimulationEvent
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** The time of an event that does not come */
+    static final double NEVER = Double.POSITIVE_INFINITY;
+
+    /** The kinds of events of a step */
+    static final int DIVISION = 0;
+    static final int APOPTOSIS = 1;
+    static final int FEEDBACK = 2;
+
+
+    /**
+     * Start leaping the given crypt if the simulation leaps and the crypt is
+     * well away from its thresholds.  Its cells let go of their events.
+     * Returns true if the crypt leaps.
+     *
+     */
+    static public boolean enter(Crypt $crypt, double $time)
+    {
+        SimulationConfig config = $crypt.getSimulation().getConfig();
+        if (!config.isLeaping()
+            || $crypt.isLeaping()
+            || !isWithin($crypt, 2 * config.getLeapMargin()))
+        {
+            return false;
+        }
+
+        CryptLeapEvent e = new CryptLeapEvent($crypt);
+        e.takeCells($time);
+        $crypt.setLeapEvent(e);
+        e.schedule($time);
+
+        return true;
+    }
+
+
+    /**
+     * Return true if the given crypt has more than $margin cells, fewer than
+     * its bifurcation and cancer thresholds less $margin, and no cell one
+     * TSG hit short of cancer.
+     *
+     */
+    static boolean isWithin(Crypt $crypt, int $margin)
+    {
+        SimulationConfig config = $crypt.getSimulation().getConfig();
+
+        int numcells = $crypt.getStemCells().size();
+        long limit = Math.min(config.getBifurcationThreshold(),
+                              config.getCancerThreshold());
+        if (numcells <= $margin || numcells >= limit - $margin)
+        {
+            return false;
+        }
+
+        int hits = config.getTSGThreshold() - 1;
+        for (int i=0; i<numcells; i++)
+        {
+            if ($crypt.getStemCell(i).getTSGHits() >= hits)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Return the length of a step for a population of the given number of
+     * cells and total division and death rates.
+     *
+     */
+    static double step(int $numCells,
+                       double $births,
+                       double $deaths,
+                       double $epsilon)
+    {
+        double bound = Math.max($epsilon * $numCells, 1.0);
+        double drift = Math.abs($births - $deaths);
+        double spread = $births + $deaths;
+
+        double tau = Double.MAX_VALUE;
+        if (drift > 0.0)
+        {
+            tau = bound / drift;
+        }
+        if (spread > 0.0)
+        {
+            tau = Math.min(tau, (bound * bound) / spread);
+        }
+        return tau;
+    }
+
+
+    /**
+     * Return the mean period of asymmetric divisions a division floor and
+     * an exponential wait at the given rate apart, NEVER for none.
+     *
+     */
+    static double period(double $rate, double $floor)
+    {
+        return ($rate > 0.0) ? $floor + (1.0 / $rate) : NEVER;
+    }
+
+
+    /**
+     * Return how long after a symmetric division a cell's asymmetric
+     * divisions, of the given mean period, are counted from.
+     *
+     */
+    static double offset(double $period, double $floor)
+    {
+        return $floor - (($floor * $floor) / (2.0 * $period));
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** The crypt that leaps */
+    Crypt _subject;
+
+    /** The cells of the crypt, with the daughters of a step after them */
+    StemCell[] _cells = new StemCell[0];
+
+    /** Number of cells */
+    int _size = 0;
+
+    /** Number of cells at the start of the step */
+    int _first = 0;
+
+    /** When each cell's division floor ends, NEVER if it has no asymmetric
+        divisions; when its asymmetric divisions are counted from; when it
+        dies of apoptosis; and when its symmetric division is due, NEVER if
+        it has none due */
+    double[] _ready = new double[0];
+    double[] _counted = new double[0];
+    double[] _death = new double[0];
+    double[] _due = new double[0];
+
+    /** Until when a change to the crypt draws its due division again: the
+        asymmetric division that pushed it, if one did */
+    double[] _pushed = new double[0];
+
+    /** Its apoptosis and symmetric division rates, and the mean period of
+        its asymmetric divisions, held over the step */
+    double[] _deaths = new double[0];
+    double[] _divisions = new double[0];
+    double[] _periods = new double[0];
+
+    /** The time it died in the step, NEVER if it lives; and its open span */
+    double[] _died = new double[0];
+    int[] _open = new int[0];
+
+    /** The feedback apoptosis rate of each cell, held over the step */
+    double _feedback;
+
+    /** What is left of the crypt's waits for a symmetric division and a
+        feedback apoptosis, at rate 1 */
+    double _triggerLeft;
+    double _feedbackLeft;
+
+    /** The time of the crypt's last change */
+    double _changed;
+
+    /** The deaths and symmetric divisions of the step in time order: their
+        times, cells, kinds, and the daughter of each division and the first
+        of the two spans it opens */
+    double[] _times = new double[0];
+    int[] _who = new int[0];
+    int[] _kinds = new int[0];
+    int[] _daughters = new int[0];
+    int[] _opens = new int[0];
+
+    /** Number of deaths and symmetric divisions in the step */
+    int _nEvents = 0;
+
+    /** The spans of the step: the cell, its times, the running sum of the
+        mean asymmetric divisions, and the divisions drawn, done, to the
+        next hit, and at the next hit */
+    int[] _spanCell = new int[0];
+    double[] _spanFrom = new double[0];
+    double[] _spanTo = new double[0];
+    double[] _spanSum = new double[0];
+    long[] _spanCount = new long[0];
+    long[] _spanDone = new long[0];
+    long[] _spanNext = new long[0];
+    double[] _spanHit = new double[0];
+
+    /** Number of spans in the step */
+    int _nSpans = 0;
+
+    /** The sampler of the crypt's asymmetric divisions */
+    PoissonSampler _poisson = new PoissonSampler(0.0);
+
+
+    /**
+     * Constructor.
+     *
+     */
+    public CryptLeapEvent(Crypt $crypt)
+    {
+        _subject = $crypt;
+    }
+
+
+    /**
+     * Return the crypt that leaps.
+     *
+     */
+    public Crypt getSubject()
+    {
+        return _subject;
+    }
+
+
+    /**
+     * Return the crypt that leaps.
+     *
+     */
+    public Crypt getLocalCrypt()
+    {
+        return _subject;
+    }
+
+
+    /**
+     * Perform this event -- advance the crypt to the end of the step, then
+     * take the next step or hand the crypt back to the events of its cells.
+     * A step cut short by cancer ends at the cancer, and the crypt stops
+     * there with the simulation.
+     *
+     */
+    public void unfold()
+    {
+        if (_subject.getLeapEvent() != this)
+        {
+            return;
+        }
+
+        if (!apply(getTime()))
+        {
+            return;
+        }
+
+        int margin = _subject.getSimulation().getConfig().getLeapMargin();
+        if (isWithin(_subject, margin))
+        {
+            schedule(getTime());
+        }
+        else
+        {
+            exit(getTime());
+        }
+    }
+
+
+    /**
+     * Take the crypt's cells from their events at the given time, a change
+     * to the crypt: when their floors end and when they die, and the
+     * symmetric divisions whose waits are over.
+     *
+     */
+    void takeCells(double $time)
+    {
+        Simulation sim = _subject.getSimulation();
+        SimulationConfig config = sim.getConfig();
+        RandomSource rnd = sim.getRandom();
+        double floor = config.getDivisionFloor();
+
+        int numcells = _subject.getStemCells().size();
+        ensure(numcells);
+        _size = 0;
+        _changed = $time;
+        _triggerLeft = rnd.randomExponential();
+        _feedbackLeft = rnd.randomExponential();
+        for (int n=0; n<numcells; n++)
+        {
+            StemCell cell = _subject.getStemCell(n);
+
+            // settle any no-op asymmetric divisions before the events go
+            AsymmetricDivisionEvent.interrupt(cell, $time);
+
+            int i = _size++;
+            _cells[i] = cell;
+
+            // a cell without asymmetric divisions waits for a symmetric one;
+            // the last division of a cell with them is where they start
+            AsymmetricDivisionEvent asymm = cell.getAsymmetricDivisionEvent();
+            _ready[i] = NEVER;
+            _counted[i] = NEVER;
+            if (isPending(sim, asymm))
+            {
+                double m = period(cell.getAsymmetricDivisionRate(), floor);
+                _ready[i] = Math.max($time, asymm.getClocked() + floor);
+                _counted[i] = (m < NEVER)
+                    ? Math.max($time, asymm.getClocked() + offset(m, floor))
+                    : NEVER;
+            }
+
+            ApoptosisEvent apop = cell.getApoptosisEvent();
+            _death[i] = isPending(sim, apop)
+                ? apop.getTime()
+                : $time + (rnd.randomExponential() / cell.getApoptosisRate());
+
+            // a division within the floor of its time has ended its wait
+            SymmetricDivisionEvent e = cell.getDivisionEvent();
+            _due[i] = (isPending(sim, e) && e.getTime() - $time < floor)
+                ? e.getTime() : NEVER;
+            _pushed[i] = $time;
+
+            cell.clearEvents();
+        }
+    }
+
+
+    /**
+     * Take the rates of the crypt's cells, draw the events of the next step
+     * from the given time and queue its end.
+     *
+     */
+    void schedule(double $time)
+    {
+        Simulation sim = _subject.getSimulation();
+        SimulationConfig config = sim.getConfig();
+        takeRates();
+
+        double births = 0.0;
+        double deaths = 0.0;
+        for (int i=0; i<_size; i++)
+        {
+            births += _divisions[i];
+            deaths += _deaths[i] + _feedback;
+        }
+        double tau = step(_size, births, deaths, config.getLeapEpsilon());
+
+        // no step runs past the end; the one after it ends the simulation
+        double duration = sim.getDuration();
+        if (duration > $time)
+        {
+            tau = Math.min(tau, duration - $time);
+        }
+        else if (duration > 0.0)
+        {
+            tau = Math.ulp($time);
+        }
+
+        setClocked($time);
+        setTime(draw($time, (tau < Double.MAX_VALUE) ? $time + tau : NEVER));
+        sim.getEventQueue().offer(this);
+    }
+
+
+    /**
+     * Take the rates of the crypt's cells as they are now.
+     *
+     */
+    void takeRates()
+    {
+        double floor = _subject.getSimulation().getConfig().getDivisionFloor();
+
+        _feedback = feedback(_size);
+
+        for (int i=0; i<_size; i++)
+        {
+            StemCell cell = _cells[i];
+            _deaths[i] = cell.getApoptosisRate();
+            _divisions[i] = cell.getDivisionRate();
+            _periods[i] = period(cell.getAsymmetricDivisionRate(), floor);
+        }
+    }
+
+
+    /**
+     * Return the feedback apoptosis rate of each cell of the crypt with the
+     * given number of cells and its neighbors as they are, as
+     * StemCell.getFeedbackApoptosisRate() has it where there is feedback.
+     *
+     */
+    double feedback(int $numCells)
+    {
+        SimulationConfig config = _subject.getSimulation().getConfig();
+        if ($numCells <= config.getMeanStemCells()
+            || _subject.hasDeadNeighbor())
+        {
+            return 0.0;
+        }
+        return config.getApoptosisRate()
+            * config.getCryptApoptosisFactor($numCells);
+    }
+
+
+    /**
+     * Draw the events of a step over the given times, and return the time
+     * the step ends: its end, or the first event that takes the crypt
+     * within the leap margin.
+     *
+     */
+    double draw(double $start, double $end)
+    {
+        SimulationConfig config = _subject.getSimulation().getConfig();
+        RandomSource rnd = _subject.getSimulation().getRandom();
+        double divFloor = config.getDivisionFloor();
+        double apopFloor = config.getApoptosisFloor();
+        int margin = config.getLeapMargin();
+        long limit = Math.min(config.getBifurcationThreshold(),
+                              config.getCancerThreshold());
+
+        _first = _size;
+        _nEvents = 0;
+        _nSpans = 0;
+        for (int i=0; i<_size; i++)
+        {
+            _died[i] = NEVER;
+            openSpan(i, $start);
+        }
+
+        // a crypt where nothing can happen waits for nothing
+        if ($end == NEVER)
+        {
+            return $end;
+        }
+
+        // the crypt's effects follow its population through the step: the
+        // factor on the division rates, relative to the one they were
+        // taken at, and the feedback apoptosis rate
+        double held = config.getCryptDivisionFactor(_size);
+        double scale = 1.0;
+        double feedbackRate = _feedback;
+
+        int numcells = _size;
+        double time = $start;
+        while (true)
+        {
+            // the next of the events of the cells, and the crypt's total
+            // rate of symmetric division waits
+            double triggers = 0.0;
+            int next = -1;
+            int kind = -1;
+            double at = $end;
+            for (int i=0; i<_size; i++)
+            {
+                if (_died[i] < NEVER)
+                {
+                    continue;
+                }
+                if (_due[i] == NEVER)
+                {
+                    triggers += _divisions[i];
+                }
+                else if (_due[i] < at)
+                {
+                    at = _due[i];
+                    next = i;
+                    kind = DIVISION;
+                }
+                if (_death[i] < at)
+                {
+                    at = _death[i];
+                    next = i;
+                    kind = APOPTOSIS;
+                }
+            }
+
+            // and of the crypt's waits
+            triggers *= scale;
+            double trigger = (triggers > 0.0)
+                ? time + (_triggerLeft / triggers) : NEVER;
+            double feedbacks = feedbackRate * numcells;
+            double from = Math.max(time, _changed + apopFloor);
+            double feedback = (feedbacks > 0.0)
+                ? from + (_feedbackLeft / feedbacks) : NEVER;
+            if (trigger < at)
+            {
+                at = trigger;
+                kind = -1;
+            }
+            if (feedback < at)
+            {
+                at = feedback;
+                kind = FEEDBACK;
+            }
+
+            // the waits run on up to the event
+            _triggerLeft -= triggers * (at - time);
+            if (at > from)
+            {
+                _feedbackLeft -= feedbacks * (at - from);
+            }
+            time = at;
+            if (time >= $end)
+            {
+                break;
+            }
+
+            if (kind == -1)
+            {
+                // a wait ends, and the cell's division is due
+                int i = pick(rnd.randomDouble() * (triggers / scale));
+                // an asymmetric division within the floor before it pushes
+                // it a floor past that one, and until that one it is not
+                // impending to the queue, which draws it again at a change
+                _due[i] = time + divFloor;
+                _pushed[i] = time;
+                if (divFloor > 0.0
+                    && _ready[i] != NEVER
+                    && rnd.randomDouble() * _periods[i] < divFloor)
+                {
+                    _pushed[i] = time + (divFloor * rnd.randomDouble());
+                    _due[i] = _pushed[i] + divFloor;
+                }
+                _triggerLeft = rnd.randomExponential();
+                continue;
+            }
+
+            if (kind == FEEDBACK)
+            {
+                next = pickLiving(rnd.randomInt(numcells));
+                _feedbackLeft = rnd.randomExponential();
+            }
+
+            closeSpan(_open[next], time);
+            if (kind == DIVISION)
+            {
+                born(next, time);
+                numcells++;
+            }
+            else
+            {
+                _died[next] = time;
+                addEvent(time, next, kind, -1, -1);
+                numcells--;
+            }
+            _changed = time;
+            for (int i=0; i<_size; i++)
+            {
+                if (_due[i] != NEVER && time < _pushed[i])
+                {
+                    _due[i] = NEVER;
+                }
+            }
+
+            // the crypt stops leaping within the margin; division rates
+            // held at a factor of 0 cannot follow it up
+            double factor = config.getCryptDivisionFactor(numcells);
+            if (numcells <= margin
+                || numcells >= limit - margin
+                || (held == 0.0 && factor > 0.0))
+            {
+                $end = time;
+                break;
+            }
+            if (held > 0.0)
+            {
+                scale = factor / held;
+            }
+            feedbackRate = feedback(numcells);
+        }
+
+        for (int i=0; i<_size; i++)
+        {
+            if (_died[i] == NEVER)
+            {
+                closeSpan(_open[i], $end);
+            }
+        }
+        drawAsymmetric(rnd);
+        return $end;
+    }
+
+
+    /**
+     * Return the living cell without a division due at which the running
+     * sum of the division rates passes the given value.
+     *
+     */
+    int pick(double $sum)
+    {
+        int last = -1;
+        for (int i=0; i<_size; i++)
+        {
+            if (_died[i] < NEVER || _due[i] != NEVER)
+            {
+                continue;
+            }
+            last = i;
+            $sum -= _divisions[i];
+            if ($sum < 0.0)
+            {
+                break;
+            }
+        }
+        return last;
+    }
+
+
+    /**
+     * Return the living cell of the given position among those living.
+     *
+     */
+    int pickLiving(int $index)
+    {
+        for (int i=0; i<_size; i++)
+        {
+            if (_died[i] == NEVER && $index-- == 0)
+            {
+                return i;
+            }
+        }
+        throw new IllegalStateException("no living cell " + $index);
+    }
+
+
+    /**
+     * Divide a cell at the given time in the step: the daughter takes the
+     * cell's rates, and both draw their apoptoses, start their floors and
+     * open new spans of asymmetric divisions.
+     *
+     */
+    void born(int $i, double $time)
+    {
+        SimulationConfig config = _subject.getSimulation().getConfig();
+        RandomSource rnd = _subject.getSimulation().getRandom();
+        double divFloor = config.getDivisionFloor();
+        double apopFloor = config.getApoptosisFloor();
+
+        ensure(_size + 1);
+        int j = _size++;
+        _cells[j] = null;
+        _deaths[j] = _deaths[$i];
+        _divisions[j] = _divisions[$i];
+        _periods[j] = _periods[$i];
+        _died[j] = NEVER;
+
+        int span = _nSpans;
+        addEvent($time, $i, DIVISION, j, span);
+
+        for (int k=0; k<2; k++)
+        {
+            int i = (k == 0) ? $i : j;
+            _ready[i] = $time + divFloor;
+            _counted[i] = (_periods[i] < NEVER)
+                ? $time + offset(_periods[i], divFloor) : NEVER;
+            _death[i] = $time + apopFloor
+                + (rnd.randomExponential() / _deaths[i]);
+            _due[i] = NEVER;
+            openSpan(i, $time);
+        }
+    }
+
+
+    /**
+     * Open a span of a cell's asymmetric divisions at the given time.
+     *
+     */
+    void openSpan(int $i, double $time)
+    {
+        if (_nSpans == _spanCell.length)
+        {
+            int length = Math.max(16, 2 * _nSpans);
+            _spanCell = grow(_spanCell, length);
+            _spanFrom = grow(_spanFrom, length);
+            _spanTo = grow(_spanTo, length);
+            _spanSum = grow(_spanSum, length);
+            _spanCount = grow(_spanCount, length);
+            _spanDone = grow(_spanDone, length);
+            _spanNext = grow(_spanNext, length);
+            _spanHit = grow(_spanHit, length);
+        }
+
+        int s = _nSpans++;
+        _spanCell[s] = $i;
+        _spanFrom[s] = Math.max($time, _ready[$i]);
+        _spanTo[s] = _spanFrom[s];
+        _spanCount[s] = 0;
+        _spanDone[s] = 0;
+        _spanHit[s] = NEVER;
+        _open[$i] = s;
+    }
+
+
+    /**
+     * Close a span at the given time, with the mean number of asymmetric
+     * divisions the cell has in it.  None come within the division floor;
+     * the first span past it has those counted from before its end.
+     *
+     */
+    void closeSpan(int $s, double $time)
+    {
+        int i = _spanCell[$s];
+        double mean = 0.0;
+        if ($time > _ready[i] && $time > _counted[i])
+        {
+            mean = ($time - _counted[i]) / _periods[i];
+            _counted[i] = $time;
+        }
+        _spanTo[$s] = Math.max(_spanFrom[$s], $time);
+        _spanSum[$s] = mean;
+    }
+
+
+    /**
+     * Draw the crypt's asymmetric divisions in the step from the Poisson
+     * distribution, and share them among the spans by their means.
+     *
+     */
+    void drawAsymmetric(RandomSource $random)
+    {
+        double total = 0.0;
+        for (int s=0; s<_nSpans; s++)
+        {
+            total += _spanSum[s];
+            _spanSum[s] = total;
+        }
+        if (total <= 0.0)
+        {
+            return;
+        }
+
+        _poisson.setMean(total);
+        long divisions = _poisson.sample($random);
+        for (long k=0; k<divisions; k++)
+        {
+            double u = $random.randomDouble() * total;
+            int lo = 0;
+            int hi = _nSpans - 1;
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (_spanSum[mid] > u)
+                {
+                    hi = mid;
+                }
+                else
+                {
+                    lo = mid + 1;
+                }
+            }
+            _spanCount[lo]++;
+        }
+    }
+
+
+    /**
+     * Add a death or symmetric division to the events of the step, with the
+     * daughter of a division and the first span it opens.
+     *
+     */
+    void addEvent(double $time, int $i, int $kind, int $daughter, int $span)
+    {
+        if (_nEvents == _times.length)
+        {
+            int length = Math.max(16, 2 * _nEvents);
+            _times = grow(_times, length);
+            _who = grow(_who, length);
+            _kinds = grow(_kinds, length);
+            _daughters = grow(_daughters, length);
+            _opens = grow(_opens, length);
+        }
+
+        _times[_nEvents] = $time;
+        _who[_nEvents] = $i;
+        _kinds[_nEvents] = $kind;
+        _daughters[_nEvents] = $daughter;
+        _opens[_nEvents] = $span;
+        _nEvents++;
+    }
+
+
+    /**
+     * Advance the crypt to the given end of the step: its deaths and
+     * divisions up to it happen in order, among the asymmetric divisions
+     * that mutate or hit a TSG.  Returns false if a TSG hit makes a cell
+     * cancerous, and the step stops there.
+     *
+     */
+    boolean apply(double $end)
+    {
+        for (int s=0; s<_first; s++)
+        {
+            _open[s] = s;
+            nextHit(s);
+        }
+
+        for (int k=0; k<=_nEvents; k++)
+        {
+            double time = (k < _nEvents) ? _times[k] : $end;
+            double cancer = hits(time);
+            if (cancer < NEVER)
+            {
+                setTime(cancer);
+                return false;
+            }
+            if (k == _nEvents)
+            {
+                break;
+            }
+
+            int i = _who[k];
+            finish(_open[i]);
+            if (_kinds[k] == DIVISION)
+            {
+                int j = _daughters[k];
+                _cells[j] = divide(_cells[i], time);
+                if (_cells[i].isCancerous() || _cells[j].isCancerous())
+                {
+                    setTime(time);
+                    return false;
+                }
+
+                _open[i] = _opens[k];
+                _open[j] = _opens[k] + 1;
+                nextHit(_open[i]);
+                nextHit(_open[j]);
+            }
+            else
+            {
+                double rate = (_kinds[k] == FEEDBACK)
+                    ? feedback(_subject.getStemCells().size()) : _deaths[i];
+                die(i, time, rate);
+                _open[i] = -1;
+            }
+
+            // the TAC hits the other spans wait for were drawn at the size
+            // the crypt had, so they are found again from here
+            for (int n=0; n<_size; n++)
+            {
+                if (_cells[n] != null && !_cells[n].isTACCountdownCurrent())
+                {
+                    advance(_open[n], time);
+                }
+            }
+        }
+
+        for (int i=0; i<_size; i++)
+        {
+            if (_cells[i] != null)
+            {
+                finish(_open[i]);
+            }
+        }
+
+        if (_nEvents > 0)
+        {
+            compact();
+        }
+        return true;
+    }
+
+
+    /**
+     * Find the next asymmetric division of a span that mutates or hits a
+     * TSG, if it has one, by the countdowns of its cell.
+     *
+     */
+    void nextHit(int $s)
+    {
+        _spanHit[$s] = NEVER;
+        long left = _spanCount[$s] - _spanDone[$s];
+        if (left == 0)
+        {
+            return;
+        }
+
+        long next = _cells[_spanCell[$s]].getDivisionsToTrialHit();
+        if (next > left)
+        {
+            return;
+        }
+
+        // the span's divisions lie evenly over it
+        double share = (_spanDone[$s] + next - 0.5) / _spanCount[$s];
+        _spanNext[$s] = next;
+        _spanHit[$s] = _spanFrom[$s] + share * (_spanTo[$s] - _spanFrom[$s]);
+    }
+
+
+    /**
+     * Apply a span's asymmetric divisions up to the given time, none of
+     * which mutates or hits a TSG by the countdowns they were found with,
+     * and find its next hit again by those of the crypt from then on.
+     *
+     */
+    void advance(int $s, double $time)
+    {
+        long done = _spanDone[$s];
+        long count = _spanCount[$s];
+        if (done == count)
+        {
+            return;
+        }
+
+        // the span's divisions lie evenly over it, as nextHit() has them
+        double length = _spanTo[$s] - _spanFrom[$s];
+        double before = (length > 0.0)
+            ? Math.floor((count * ($time - _spanFrom[$s]) / length) + 0.5)
+            : (($time >= _spanFrom[$s]) ? count : 0);
+        long passed = Math.max(0, (long)Math.min(before, count) - done);
+        if (_spanHit[$s] < NEVER)
+        {
+            passed = Math.min(passed, _spanNext[$s] - 1);
+        }
+
+        if (passed > 0)
+        {
+            StemCell cell = _cells[_spanCell[$s]];
+            cell.getSimulation().recordAsymmetricDivisions(cell, passed);
+            cell.skipTrials(passed);
+            _spanDone[$s] += passed;
+        }
+        nextHit($s);
+    }
+
+
+    /**
+     * Apply the asymmetric divisions that mutate or hit a TSG up to the
+     * given time, in time order.  Returns the time of one that makes a cell
+     * cancerous, NEVER if none does.
+     *
+     */
+    double hits(double $time)
+    {
+        while (true)
+        {
+            int s = -1;
+            double hit = $time;
+            for (int i=0; i<_size; i++)
+            {
+                int open = (_cells[i] == null) ? -1 : _open[i];
+                if (open >= 0 && _spanHit[open] <= hit)
+                {
+                    s = open;
+                    hit = _spanHit[open];
+                }
+            }
+            if (s < 0)
+            {
+                return NEVER;
+            }
+
+            StemCell cell = _cells[_spanCell[s]];
+            long divisions = _spanNext[s];
+            cell.getSimulation().recordAsymmetricDivisions(cell, divisions);
+            cell.skipTrials(divisions - 1);
+            _spanDone[s] += divisions;
+
+            AsymmetricDivisionEvent.checkForTSGHit(cell, hit);
+            SymmetricDivisionEvent.checkForMutation(cell);
+            if (cell.isCancerous())
+            {
+                return hit;
+            }
+            nextHit(s);
+        }
+    }
+
+
+    /**
+     * Apply the rest of a span's asymmetric divisions, none of which mutates
+     * or hits a TSG.
+     *
+     */
+    void finish(int $s)
+    {
+        long left = _spanCount[$s] - _spanDone[$s];
+        if (left == 0)
+        {
+            return;
+        }
+
+        StemCell cell = _cells[_spanCell[$s]];
+        cell.getSimulation().recordAsymmetricDivisions(cell, left);
+        cell.skipTrials(left);
+        _spanDone[$s] = _spanCount[$s];
+        _spanHit[$s] = NEVER;
+    }
+
+
+    /**
+     * Kill a cell at the given time, and tell the listeners of its death by
+     * an ApoptosisEvent at the given rate.
+     *
+     */
+    void die(int $i, double $time, double $rate)
+    {
+        Simulation sim = _subject.getSimulation();
+        StemCell cell = _cells[$i];
+
+        ApoptosisEvent e = sim.getEventPool().apoptosis(cell);
+        e.setTime($time);
+        e.setClocked(getClocked());
+        e.setRate($rate);
+        e._crypt = _subject;
+
+        cell.kill();
+        _subject.remove(cell);
+        _cells[$i] = null;
+
+        sim.notifyListeners(e);
+        sim.getEventPool().release(e);
+    }
+
+
+    /**
+     * Divide a cell symmetrically at the given time, as a
+     * SymmetricDivisionEvent would, and return the daughter.
+     *
+     */
+    StemCell divide(StemCell $cell, double $time)
+    {
+        StemCell daughter = null;
+        try
+        {
+            daughter = (StemCell)$cell.clone();
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        _subject.add(daughter);
+
+        SymmetricDivisionEvent.checkForMutation($cell);
+        SymmetricDivisionEvent.checkForMutation(daughter);
+        AsymmetricDivisionEvent.checkForTSGHit($cell, $time);
+        AsymmetricDivisionEvent.checkForTSGHit(daughter, $time);
+
+        _subject.getSimulation().recordSymmetricDivision($cell);
+
+        return daughter;
+    }
+
+
+    /**
+     * Close up the room the dead cells leave.
+     *
+     */
+    void compact()
+    {
+        int kept = 0;
+        for (int i=0; i<_size; i++)
+        {
+            if (_cells[i] == null)
+            {
+                continue;
+            }
+            _cells[kept] = _cells[i];
+            _ready[kept] = _ready[i];
+            _counted[kept] = _counted[i];
+            _death[kept] = _death[i];
+            _due[kept] = _due[i];
+            _pushed[kept] = _pushed[i];
+            kept++;
+        }
+        for (int i=kept; i<_size; i++)
+        {
+            _cells[i] = null;
+        }
+        _size = kept;
+        _nEvents = 0;
+    }
+
+
+    /**
+     * Make room for at least the given number of cells.
+     *
+     */
+    void ensure(int $numCells)
+    {
+        int n = _cells.length;
+        if (n >= $numCells)
+        {
+            return;
+        }
+
+        int length = Math.max(2 * n, 2 * $numCells);
+
+        StemCell[] cells = new StemCell[length];
+        System.arraycopy(_cells, 0, cells, 0, n);
+        _cells = cells;
+
+        _ready = grow(_ready, length);
+        _counted = grow(_counted, length);
+        _death = grow(_death, length);
+        _due = grow(_due, length);
+        _pushed = grow(_pushed, length);
+        _deaths = grow(_deaths, length);
+        _divisions = grow(_divisions, length);
+        _periods = grow(_periods, length);
+        _died = grow(_died, length);
+        _open = grow(_open, length);
+    }
+
+
+    static double[] grow(double[] $array, int $length)
+    {
+        double[] array = new double[$length];
+        System.arraycopy($array, 0, array, 0, $array.length);
+        return array;
+    }
+
+
+    static int[] grow(int[] $array, int $length)
+    {
+        int[] array = new int[$length];
+        System.arraycopy($array, 0, array, 0, $array.length);
+        return array;
+    }
+
+
+    static long[] grow(long[] $array, int $length)
+    {
+        long[] array = new long[$length];
+        System.arraycopy($array, 0, array, 0, $array.length);
+        return array;
+    }
+
+
+    /**
+     * Stop leaping: give the crypt's cells their events again at the given
+     * time -- their apoptoses and the symmetric divisions due at their own
+     * times, their asymmetric divisions from where their floors end -- and
+     * register the change to the crypt, which checks for cancer and
+     * bifurcation.
+     *
+     */
+    void exit(double $time)
+    {
+        _subject.setLeapEvent(null);
+
+        Simulation sim = _subject.getSimulation();
+        SimulationConfig config = sim.getConfig();
+        EventPool pool = sim.getEventPool();
+        double divFloor = config.getDivisionFloor();
+
+        EventQueue queue = sim.getEventQueue();
+        queue.beginBatch();
+        for (int i=0; i<_size; i++)
+        {
+            StemCell cell = _cells[i];
+
+            ApoptosisEvent apop = pool.apoptosis(cell);
+            apop.setTime(_death[i]);
+            apop.setClocked($time);
+            apop.setRate(cell.getApoptosisRate());
+            cell.setApoptosisEvent(apop);
+            queue.offer(apop);
+
+            if (_ready[i] != NEVER)
+            {
+                AsymmetricDivisionEvent.generate(
+                    Math.max($time, _ready[i]) - divFloor, cell);
+            }
+
+            if (_due[i] != NEVER)
+            {
+                SymmetricDivisionEvent e = pool.symmetricDivision(cell);
+                e.setTime(_due[i]);
+                e.setClocked($time);
+                e.setRate(cell.getDivisionRate());
+                cell.setDivisionEvent(e);
+                queue.offer(e);
+                SymmetricDivisionEvent.correct(sim, cell);
+            }
+            _cells[i] = null;
+        }
+        _size = 0;
+
+        // CryptChangeEvent.run() creates the feedback and division events
+        // it does not find due
+        _subject.setScheduledEffectKey(Crypt.NO_EFFECT_KEY);
+        CryptChangeEvent.run(_subject, $time);
+        queue.commitBatch();
+    }
+
+
+    /**
+     * Return a String representation of this object.
+     *
+     */
+    public String toString()
+    {
+        StringBuffer buf = new StringBuffer();
+        buf.append("CryptLeapEvent(");
+        if (!isValid())
+        {
+            buf.append("invalid ");
+        }
+        buf.append("crypt:");
+        buf.append(_subject.getId());
+        buf.append(" t:");
+        buf.append(TFORM.format(getTime()));
+        buf.append(" c:");
+        buf.append(TFORM.format(_clocked));
+        buf.append(")");
+        return buf.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package stemsim.event;
+
+
+import java.util.ArrayList;
+
+import stemsim.object.*;
+import stemsim.simulation.*;
+
+
+/**
+ * Recycles the apoptosis and division events of a simulation's cells, so the
+ * steady-state event loop does not allocate a new event every time a cell
+ * draws a new one.
+ *
+ * An event comes back to the pool when its cell lets go of it -- because the
+ * event executed, the cell died, or the event was replaced.  Events still
+ * live in the event queue, and the simulation's current and last events, are
+ * never taken back; listeners may still be looking at those.  The tombstones
+ * of a lazy queue are taken back where they lie: handed out again, such an
+ * event is revived in its old place by its next offer.
+ *
+ */
+public class EventPool
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** the simulation whose events are pooled */
+    Simulation _simulation;
+
+    /** free apoptosis events */
+    ArrayList<ApoptosisEvent> _apoptosis = new ArrayList<ApoptosisEvent>();
+
+    /** free symmetric division events */
+    ArrayList<SymmetricDivisionEvent> _symmetric
+        = new ArrayList<SymmetricDivisionEvent>();
+
+    /** free asymmetric division events */
+    ArrayList<AsymmetricDivisionEvent> _asymmetric
+        = new ArrayList<AsymmetricDivisionEvent>();
+
+    /** number of events handed out that were not recycled */
+    int _created = 0;
+
+
+    /**
+     * Constructor.
+     *
+     */
+    public EventPool(Simulation $simulation)
+    {
+        _simulation = $simulation;
+    }
+
+
+    /**
+     * Return an apoptosis event for the given cell.
+     *
+     */
+    public ApoptosisEvent apoptosis(Cell $subject)
+    {
+        int n = _apoptosis.size();
+        if (n == 0)
+        {
+            _created++;
+            return new ApoptosisEvent($subject);
+        }
+
+        ApoptosisEvent e = _apoptosis.remove(n - 1);
+        e.reset();
+        e._subject = $subject;
+        return e;
+    }
+
+
+    /**
+     * Return a symmetric division event for the given stem cell.
+     *
+     */
+    public SymmetricDivisionEvent symmetricDivision(StemCell $subject)
+    {
+        int n = _symmetric.size();
+        if (n == 0)
+        {
+            _created++;
+            return new SymmetricDivisionEvent($subject);
+        }
+
+        SymmetricDivisionEvent e = _symmetric.remove(n - 1);
+        e.reset();
+        e._subject = $subject;
+        return e;
+    }
+
+
+    /**
+     * Return an asymmetric division event for the given stem cell.
+     *
+     */
+    public AsymmetricDivisionEvent asymmetricDivision(StemCell $subject)
+    {
+        int n = _asymmetric.size();
+        if (n == 0)
+        {
+            _created++;
+            return new AsymmetricDivisionEvent($subject);
+        }
+
+        AsymmetricDivisionEvent e = _asymmetric.remove(n - 1);
+        e.reset();
+        e._subject = $subject;
+        return e;
+    }
+
+
+    /**
+     * Take back an event no cell refers to any more.  Events of other types,
+     * events that are still live in the queue and the simulation's current
+     * and last events are left alone.
+     *
+     */
+    public void release(SimulationEvent $event)
+    {
+        if ($event == null
+            || $event._pooled
+            || $event == _simulation.getCurrentEvent()
+            || $event == _simulation.getLastEvent()
+            || (_simulation.getEventQueue().contains($event)
+                && !$event.isCancelled()))
+        {
+            return;
+        }
+
+        if ($event instanceof ApoptosisEvent)
+        {
+            ApoptosisEvent e = (ApoptosisEvent)$event;
+            e._subject = null;
+            e._crypt = null;
+            _apoptosis.add(e);
+        }
+        else if ($event instanceof SymmetricDivisionEvent)
+        {
+            SymmetricDivisionEvent e = (SymmetricDivisionEvent)$event;
+            e._subject = null;
+            _symmetric.add(e);
+        }
+        else if ($event instanceof AsymmetricDivisionEvent)
+        {
+            AsymmetricDivisionEvent e = (AsymmetricDivisionEvent)$event;
+            e._subject = null;
+            _asymmetric.add(e);
+        }
+        else
+        {
+            return;
+        }
+
+        $event._pooled = true;
+    }
+
+
+    /**
+     * Return the number of events waiting to be reused.
+     *
+     */
+    public int size()
+    {
+        return _apoptosis.size() + _symmetric.size() + _asymmetric.size();
+    }
+
+
+    /**
+     * Return the number of events this pool had to allocate.
+     *
+     */
+    public int getCreated()
+    {
+        return _created;
+    }
+}
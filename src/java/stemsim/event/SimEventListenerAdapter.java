@@ -40,6 +40,11 @@ public abstract class SimEventListenerAdapter implements SimEventListener
         {
             bifurcation((CryptBifurcationEvent)$event);
         }
+
+        if ($event instanceof CryptLeapEvent)
+        {
+            leap((CryptLeapEvent)$event);
+        }
     }
     
     public void division(SymmetricDivisionEvent $event) 
@@ -62,6 +67,11 @@ public abstract class SimEventListenerAdapter implements SimEventListener
         
     }
     
+    public void leap(CryptLeapEvent $event) 
+    {
+        
+    }
+    
     public void end(SimulationEndEvent $event) 
     {
         
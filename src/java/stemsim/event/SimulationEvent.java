@@ -7,6 +7,7 @@ import java.io.PrintWriter;
 import java.util.Comparator;
 import java.util.PriorityQueue;
 
+import stemsim.object.Crypt;
 import stemsim.simulation.Simulation;
 
 
@@ -25,18 +26,14 @@ public abstract class SimulationEvent
 
     
     /**
-     * Comparator that orders SimulationEvents by time.
+     * Comparator that orders SimulationEvents by time, and events at the same
+     * time by the order they were queued.
      *
      */
     public static class TimeComparator implements Comparator<SimulationEvent>
     {
         public int compare(SimulationEvent $o1, SimulationEvent $o2)
         {
-            if ($o1 == $o2)
-            {
-                return 0;
-            }
-            
             double t1 = $o1.getTime();
             double t2 = $o2.getTime();
             if (t1 > t2)
@@ -48,10 +45,97 @@ public abstract class SimulationEvent
                 return -1;
             }
 
-            // luck of the draw, y'all
-            // can't use 0, or events will get filtered out by stupid java
-            return 1;
+            long s1 = $o1.getSequence();
+            long s2 = $o2.getSequence();
+            return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+        }
+    }
+
+    
+    /**
+     * Return true if the given event is waiting in the simulation's event
+     * queue, and so can be rescheduled in place rather than replaced.  The
+     * event being executed never is -- listeners have yet to see its time.
+     *
+     */
+    static public boolean isPending(Simulation $sim, SimulationEvent $event)
+    {
+        return $event != null
+            && $event.isValid()
+            && $event != $sim.getCurrentEvent()
+            && $sim.getEventQueue().contains($event);
+    }
+
+    
+    /**
+     * Invalidate an event its cell no longer wants, take it off the event
+     * queue and hand it back to the simulation's event pool.
+     *
+     */
+    static public void discard(Simulation $sim, SimulationEvent $event)
+    {
+        if ($event == null)
+        {
+            return;
+        }
+        
+        $event.invalidate();
+        $sim.getEventQueue().remove($event);
+        $sim.getEventPool().release($event);
+    }
+
+    
+    /**
+     * Return true if the given event can have its waiting time rescaled to a
+     * new rate rather than drawn again: it must be pending and know the
+     * finite rate its time was drawn at.
+     *
+     */
+    static public boolean canRescale(Simulation $sim, SimulationEvent $event)
+    {
+        return isPending($sim, $event)
+            && $event._rate > 0.0
+            && $event._time < Double.POSITIVE_INFINITY;
+    }
+
+    
+    /**
+     * Move a pending event to the time it would have had at a new rate
+     * (Gibson and Bruck's Next Reaction Method).  The event was drawn as
+     * clocked time + floor + an exponential wait; the part of that wait still
+     * ahead of the current time is stretched by old rate / new rate.  By the
+     * memorylessness of the exponential this is distributed exactly as a
+     * fresh draw at the new rate, without using a random number.
+     *
+     * At a new rate of 0 the event can no longer happen and is parked at
+     * +infinity; as its rate is then 0, canRescale() turns it down and the
+     * next rate change draws it afresh.  An event whose wait has run out
+     * stays at the start of the remaining wait.
+     *
+     */
+    static public void rescale(Simulation $sim,
+                               SimulationEvent $event,
+                               double $currentTime,
+                               double $floor,
+                               double $rate)
+    {
+        double start = Math.max($currentTime, $event._clocked + $floor);
+        double left = $event._time - start;
+        double time;
+        if ($rate <= 0.0)
+        {
+            time = Double.POSITIVE_INFINITY;
+        }
+        else if (left <= 0.0)
+        {
+            time = start;
+        }
+        else
+        {
+            time = start + (left * ($event._rate / $rate));
         }
+        $event._rate = Math.max($rate, 0.0);
+        $sim.getEventQueue().reschedule($event, time);
     }
 
     
@@ -83,6 +167,15 @@ public abstract class SimulationEvent
         double originalWaitTime = ($org._time - $org._clocked)
                                 / (1.0 - $org._pctComplete);
         checkForNaN(originalWaitTime, "originalWaitTime", $org, $event);
+
+        // an original event with no wait at all is as good as complete
+        if (originalWaitTime == 0.0)
+        {
+            $event.setTime($org.getTime());
+            $event.setClocked($org.getClocked());
+            $event.setPercentComplete(1.0);
+            return;
+        }
         
         double origin = $org._time - originalWaitTime;
         checkForNaN(origin, "origin", $org, $event);
@@ -98,8 +191,16 @@ public abstract class SimulationEvent
         
         $event.setTime(curTime + waitTime);
         
-        pctComp = ($event._clocked - origin)
-                / ($event.getTime() - origin); 
+        // a new event left with no wait at all is complete
+        if ($event.getTime() == origin)
+        {
+            pctComp = 1.0;
+        }
+        else
+        {
+            pctComp = ($event._clocked - origin)
+                    / ($event.getTime() - origin);
+        }
         checkForNaN(pctComp, "pctComp2", $org, $event);
 
         $event._pctComplete = pctComp;
@@ -143,6 +244,24 @@ public abstract class SimulationEvent
     /** Percentage completion at clocked time -- used in scaling */
     double _pctComplete = 0.0;
     
+    /** Slot of this event in the event queue, -1 if not queued */
+    int _queueIndex = -1;
+    
+    /** Bucket of the event queue holding this event, -1 if not bucketed */
+    int _queueBucket = -1;
+    
+    /** Order in which this event was queued, breaks ties in time */
+    long _sequence = 0;
+    
+    /** True while this event is a tombstone in a lazy event queue */
+    boolean _cancelled = false;
+    
+    /** Rate the waiting time of this event was drawn at, 0 if unknown */
+    double _rate = 0.0;
+    
+    /** True while this event waits in an EventPool to be reused */
+    boolean _pooled = false;
+    
     
     /** 
      * Execute this event 
@@ -151,6 +270,42 @@ public abstract class SimulationEvent
     abstract public void unfold();
 
     
+    /**
+     * Return this event to the state of a newly constructed one -- used by
+     * the EventPool before handing the event out again.  A tombstone of a
+     * lazy queue keeps its place in the queue, cancelled, until it is
+     * offered again and revived there or the queue drops it.
+     *
+     */
+    void reset()
+    {
+        _time = 0.0;
+        _valid = true;
+        _clocked = 0.0;
+        _pctComplete = 0.0;
+        if (!_cancelled)
+        {
+            _queueIndex = -1;
+            _queueBucket = -1;
+            _sequence = 0;
+        }
+        _rate = 0.0;
+        _pooled = false;
+    }
+
+    
+    /**
+     * Return the crypt whose cells this event concerns, or null for an event
+     * of the whole simulation.  Lets an event queue keep a crypt's events
+     * together.
+     *
+     */
+    public Crypt getLocalCrypt()
+    {
+        return null;
+    }
+
+    
     /**
      * Invalidate this event.
      *
@@ -211,6 +366,111 @@ public abstract class SimulationEvent
     }
 
     
+    /**
+     * Set the slot this event occupies in the event queue -- maintained by
+     * the EventQueue only.
+     *
+     */
+    public void setQueueIndex(int $index)
+    {
+        _queueIndex = $index;
+    }
+    
+    
+    /**
+     * Get the slot this event occupies in the event queue, -1 if not queued.
+     *
+     */
+    public int getQueueIndex()
+    {
+        return _queueIndex;
+    }
+
+    
+    /**
+     * Set the order in which this event was queued -- maintained by the
+     * EventQueue only.
+     *
+     */
+    public void setSequence(long $sequence)
+    {
+        _sequence = $sequence;
+    }
+    
+    
+    /**
+     * Get the order in which this event was queued.
+     *
+     */
+    public long getSequence()
+    {
+        return _sequence;
+    }
+
+    
+    /**
+     * Set the bucket holding this event in a bucketed event queue --
+     * maintained by the EventQueue only.
+     *
+     */
+    public void setQueueBucket(int $bucket)
+    {
+        _queueBucket = $bucket;
+    }
+    
+    
+    /**
+     * Get the bucket holding this event in a bucketed event queue, -1 if none.
+     *
+     */
+    public int getQueueBucket()
+    {
+        return _queueBucket;
+    }
+
+    
+    /**
+     * Mark this event as a tombstone left in the event queue -- maintained by
+     * the EventQueue only.
+     *
+     */
+    public void setCancelled(boolean $cancelled)
+    {
+        _cancelled = $cancelled;
+    }
+    
+    
+    /**
+     * Return true if this event has been removed from a lazy event queue but
+     * not yet dropped from its heap.
+     *
+     */
+    public boolean isCancelled()
+    {
+        return _cancelled;
+    }
+
+    
+    /**
+     * Set the rate the waiting time of this event was drawn at.
+     *
+     */
+    public void setRate(double $rate)
+    {
+        _rate = $rate;
+    }
+    
+    
+    /**
+     * Get the rate the waiting time of this event was drawn at, 0 if unknown.
+     *
+     */
+    public double getRate()
+    {
+        return _rate;
+    }
+
+    
     public void setPercentComplete(double $time)
     {
         _pctComplete = $time;
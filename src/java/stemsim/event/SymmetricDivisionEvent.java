@@ -4,7 +4,6 @@ package stemsim.event;
 import java.text.DecimalFormat;
 import java.util.*;
 
-import lib.KnuthRandom;
 import lib.Probability;
 
 import stemsim.object.*;
@@ -28,53 +27,95 @@ public class SymmetricDivisionEvent extends SimulationEvent
      */
     public static SymmetricDivisionEvent generate(double $currentTime, 
                                              StemCell $stemCell)
+    {
+        return generate($currentTime, $stemCell, false);
+    }
+    
+    
+    /**
+     * Generate a cell division for the given stem cell.  If $rescale is set
+     * a pending division is moved to the cell's new rate rather than drawn
+     * again.
+     *
+     */
+    public static SymmetricDivisionEvent generate(double $currentTime, 
+                                                  StemCell $stemCell,
+                                                  boolean $rescale)
     {
         Simulation sim = $stemCell.getSimulation();
-        SimulationParams params = sim.getParams();
-        double floor = params.getDouble("event.celldivision.floor");
+        double floor = sim.getConfig().getDivisionFloor();
+        double rate = $stemCell.getDivisionRate();
+        
+        SymmetricDivisionEvent e = $stemCell.getDivisionEvent();
+        if ($rescale && canRescale(sim, e))
+        {
+            rescale(sim, e, $currentTime, floor, rate);
+            correct(sim, $stemCell);
+            return e;
+        }
         
         // calculate new event time -- unscaled
-        double rate = $stemCell.getDivisionRate();
-        double rnd = Probability.RandomFromExponential(rate, Simulation.RANDOM);
+        double rnd = Probability.RandomFromExponential(rate, sim.getRandom());
         double etime = $currentTime + rnd + floor;
         
-        // create new event
-        SymmetricDivisionEvent e = new SymmetricDivisionEvent($stemCell);
-        e.setTime(etime);
-        e.setClocked($currentTime);
-
-        // remove old event from queue
-        EventQueue queue = $stemCell.getSimulation().getEventQueue();
-        if ($stemCell.getDivisionEvent() != null)
+        EventQueue queue = sim.getEventQueue();
+        if (isPending(sim, e))
         {
-            $stemCell.getDivisionEvent().invalidate();
-            queue.remove($stemCell.getDivisionEvent());
+            // move the pending event to its new time
+            e.setClocked($currentTime);
+            e.setRate(rate);
+            queue.reschedule(e, etime);
+        }
+        else
+        {
+            // create new event
+            SymmetricDivisionEvent old = e;
+            e = sim.getEventPool().symmetricDivision($stemCell);
+            e.setTime(etime);
+            e.setClocked($currentTime);
+            e.setRate(rate);
+
+            // remove old event from queue
+            discard(sim, old);
+
+            // add new event to the queue
+            $stemCell.setDivisionEvent(e);
+            queue.offer(e);
         }
-        
-        // add new event to the queue
-        $stemCell.setDivisionEvent(e);
-        queue.offer(e);
         
         // if the symmetric division event is within the min div time (12 hrs)
         // of the new asymm event, then push symm back min time
-        $stemCell.correctDivEvents();
+        correct(sim, $stemCell);
         
         return e;
     }
     
     
+    /**
+     * Push a cell's new symmetric division back from its asymmetric ones,
+     * including those thinning folded away.
+     *
+     */
+    static void correct(Simulation $sim, StemCell $stemCell)
+    {
+        if ($sim.getConfig().isThinningAsymmetricDivisions())
+        {
+            $stemCell.correctThinnedDivEvents();
+        }
+        $stemCell.correctDivEvents();
+    }
+    
+    
     /** static formatter for String output */
     static DecimalFormat dform = new DecimalFormat("#.###");
 
-    // This could be made more efficient by checking for the time until the next
-    // mutation event for separate mutation rates.
+    // The cell counts down the divisions to its next mutation.
     static public void checkForMutation(StemCell $cell)
     {
         Simulation sim = $cell.getSimulation();
-        if (Simulation.RANDOM.randomDouble() <= $cell.getMutationRate())
+        if ($cell.mutationTrial())
         {
-            Mutation newMut = Mutation.createRandom(sim);
-            $cell.addMutation(newMut);
+            $cell.addMutation(sim.getMutationSampler().sample());
         }
     }
 
@@ -103,6 +144,16 @@ public class SymmetricDivisionEvent extends SimulationEvent
     }
     
     
+    /**
+     * Return the crypt of the subject cell.
+     *
+     */
+    public Crypt getLocalCrypt()
+    {
+        return _subject.getCrypt();
+    }
+    
+    
     /**
      * Perform this event -- create a daughter cell, generate a new mutation,
      * generate new stem cell events, register a change to the crypt.
@@ -125,6 +176,10 @@ public class SymmetricDivisionEvent extends SimulationEvent
         }
         // DEBUG
         
+        // settle any no-op asymmetric divisions before the countdowns are
+        // shared with the daughter
+        AsymmetricDivisionEvent.interrupt(_subject, getTime());
+        
         // create daughter cell
         StemCell daughter = null;
         try
@@ -145,9 +200,9 @@ public class SymmetricDivisionEvent extends SimulationEvent
         AsymmetricDivisionEvent.checkForTSGHit(_subject);
         AsymmetricDivisionEvent.checkForTSGHit(daughter);
 
-        // remove existing events
-        _subject.clearEvents();
-        daughter.clearEvents();
+        // this event is done -- the subject's other pending events are
+        // rescheduled in place below, the daughter starts with none
+        _subject.setDivisionEvent(null);
         
         // CryptChangeEvent.run() creates feedback and division events
         // have to create other events here
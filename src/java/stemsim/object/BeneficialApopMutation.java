@@ -47,9 +47,8 @@ public class BeneficialApopMutation extends Mutation
     {
         super($simulation);
 
-        SimulationParams params = getSimulation().getParams();
         _apopMultiplier = 
-            params.getDouble("beneficialmutation.apoptosis.multiplier");
+            getSimulation().getConfig().getBeneficialApopMultiplier();
     }
     
     public double apoptosisEffect(double $rate)
@@ -57,6 +56,11 @@ public class BeneficialApopMutation extends Mutation
         return $rate * _apopMultiplier;
     }
     
+    public int getSummaryCode()
+    {
+        return MutationSampler.BENEFICIAL_APOP;
+    }
+    
     public String toString()
     {
         return "ba";
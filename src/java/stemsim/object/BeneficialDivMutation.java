@@ -46,9 +46,8 @@ public class BeneficialDivMutation extends Mutation
     {
         super($simulation);
 
-        SimulationParams params = getSimulation().getParams();
         _divMultiplier = 
-            params.getDouble("beneficialmutation.division.multiplier");
+            getSimulation().getConfig().getBeneficialDivMultiplier();
     }
     
     public double divisionEffect(double $rate)
@@ -56,6 +55,11 @@ public class BeneficialDivMutation extends Mutation
         return $rate * _divMultiplier;
     }
     
+    public int getSummaryCode()
+    {
+        return MutationSampler.BENEFICIAL_DIV;
+    }
+    
     public String toString()
     {
         return "bd";
@@ -31,6 +31,9 @@ public class Cell extends SimulationObject implements Cloneable
         return CELL_ID++;
     }
     
+    /** shared-summarizer bits of all the summary codes */
+    static final int ALL_SUMS = (1 << MutationSampler.BUILTIN) - 1;
+    
     
     ////////////////////////////////////////////////////////////////////////////
     // Instance Level
@@ -55,12 +58,12 @@ public class Cell extends SimulationObject implements Cloneable
     SymmetricDivisionEvent _cellDivisionEvent;
     
     /** 
-     * List of individual mutation objects acquired by this cell.  Currently,
-     * we do not store mutations here, only in the SummaryMutation objects
-     * below.  This list of individual objects could be used to store
-     * heterogenous-effect mutations.
+     * List of individual mutation objects acquired by this cell.  The
+     * built-in mutations are stored in the SummaryMutation objects below;
+     * this list holds those of classes registered with the MutationSampler.
+     * Empty, it is the shared immutable empty list until the first add.
      */
-    List<Mutation> _mutations = new LinkedList<Mutation>();
+    List<Mutation> _mutations = Collections.emptyList();
     
     /** Deleterious apoptosis mutation summarizer */
     SummaryMutation _delApopSum;
@@ -77,6 +80,34 @@ public class Cell extends SimulationObject implements Cloneable
     /** Mutator mutation summarizer */
     SummaryMutation _mutatorSum;
     
+    /** 
+     * Bit of each summary code whose summarizer may be shared with a mother
+     * or daughter.  A division shares the summarizers rather than copying
+     * them; a cell copies one before its first change.
+     */
+    int _sharedSums = 0;
+    
+    /** Config the cached rates were computed with */
+    SimulationConfig _ratesConfig = null;
+    
+    /** Crypt the cached crypt-dependent rates were computed in */
+    Crypt _ratesCrypt = null;
+    
+    /** Effect version of that crypt at the time */
+    int _ratesVersion = 0;
+    
+    /** Cached apoptosis rate, NaN if stale */
+    double _apoptosisRate = Double.NaN;
+    
+    /** Cached division rate, NaN if stale */
+    double _divisionRate = Double.NaN;
+    
+    /** Cached mutation rate, NaN if stale */
+    double _mutationRate = Double.NaN;
+    
+    /** Cached TSG mutation rate, NaN if stale */
+    double _tsgMutationRate = Double.NaN;
+    
     
     /**
      * Private constructor.  Create cells using static create() method.
@@ -90,14 +121,117 @@ public class Cell extends SimulationObject implements Cloneable
     
     ////////////////////////////////////////////////////////////////////////////
     // Getter methods for the various rates associated with a cell.
+    //
+    // The rates are cached.  Rates that depend on the mutations alone are
+    // computed again after a new mutation, rates that also depend on the
+    // crypt after the crypt's effects change (see Crypt.getEffectVersion()).
     ////////////////////////////////////////////////////////////////////////////
 
     public double getApoptosisRate()
     {
-        SimulationParams params = getSimulation().getParams();
+        checkRates();
+        if (_apoptosisRate != _apoptosisRate)
+        {
+            _apoptosisRate = computeApoptosisRate();
+        }
+        return _apoptosisRate;
+    }
+    
+    
+    public double getDivisionRate()
+    {
+        checkRates();
+        if (_divisionRate != _divisionRate)
+        {
+            _divisionRate = computeDivisionRate();
+        }
+        return _divisionRate;
+    }
+
+    
+    public double getMutationRate()
+    {
+        checkRates();
+        if (_mutationRate != _mutationRate)
+        {
+            SimulationConfig config = getSimulation().getConfig();
+            double base = config.getMutationRate();
+            double max = config.getMutationRateMax();
+            _mutationRate = getMutationRate(base, max);
+        }
+        return _mutationRate;
+    }
+
+    
+    public double getTSGMutationRate()
+    {
+        checkRates();
+        if (_tsgMutationRate != _tsgMutationRate)
+        {
+            SimulationConfig config = getSimulation().getConfig();
+            double base = config.getTSGMutationRate();
+            double max = config.getTSGMutationRateMax();
+            _tsgMutationRate = getMutationRate(base, max);
+        }
+        return _tsgMutationRate;
+    }
+    
+    
+    /**
+     * Drop the cached rates computed with another config, and the cached
+     * crypt-dependent rates computed in another crypt or before the crypt's
+     * effects last changed.
+     *
+     */
+    void checkRates()
+    {
+        SimulationConfig config = getSimulation().getConfig();
+        if (config != _ratesConfig)
+        {
+            _ratesConfig = config;
+            invalidateRates();
+        }
+        
+        Crypt crypt = getCrypt();
+        int version = (crypt == null) ? 0 : crypt.getEffectVersion();
+        if (crypt != _ratesCrypt || version != _ratesVersion)
+        {
+            _ratesCrypt = crypt;
+            _ratesVersion = version;
+            invalidateCryptRates();
+        }
+    }
+    
+    
+    /**
+     * Drop all cached rates.
+     *
+     */
+    void invalidateRates()
+    {
+        _apoptosisRate = Double.NaN;
+        invalidateCryptRates();
+    }
+    
+    
+    /**
+     * Drop the cached rates that depend on the crypt.
+     *
+     */
+    void invalidateCryptRates()
+    {
+        _divisionRate = Double.NaN;
+        _mutationRate = Double.NaN;
+        _tsgMutationRate = Double.NaN;
+    }
+    
+    
+    double computeApoptosisRate()
+    {
+        SimulationConfig config = getSimulation().getConfig();
         
         // start with base rate
-        double rate = params.getDouble("stemcell.apoptosisrate.base");
+        double rate = config.getApoptosisRate();
         
         // factor non-standard mutations
         for (Mutation mut : _mutations)
@@ -113,12 +247,12 @@ public class Cell extends SimulationObject implements Cloneable
     }
     
     
-    public double getDivisionRate()
+    double computeDivisionRate()
     {
-        SimulationParams params = getSimulation().getParams();
+        SimulationConfig config = getSimulation().getConfig();
         
         // start with base rate
-        double rate = params.getDouble("stemcell.divisionrate.base");
+        double rate = config.getDivisionRate();
         
         // factor crypt effect
         rate = getCrypt().divisionEffect(rate);
@@ -136,30 +270,10 @@ public class Cell extends SimulationObject implements Cloneable
         
         return rate;
     }
-
-    
-    public double getMutationRate()
-    {
-        SimulationParams params = getSimulation().getParams();
-        double base = params.getDouble("stemcell.mutationrate.base");
-        double max = params.getDouble("stemcell.mutationrate.max");
-        return getMutationRate(base, max);
-    }
-
-    
-    public double getTSGMutationRate()
-    {
-        SimulationParams params = getSimulation().getParams();
-        double base = params.getDouble("stemcell.tsgmutationrate.base");
-        double max = params.getDouble("stemcell.tsgmutationrate.max");
-        return getMutationRate(base, max);
-    }
     
     
     double getMutationRate(double $baserate, double $max)
     {
-        SimulationParams params = getSimulation().getParams();
-        
         // start with base rate
         double rate = $baserate;
         
@@ -204,29 +318,90 @@ public class Cell extends SimulationObject implements Cloneable
      */
     public void addMutation(Mutation $mut)
     {
-        if ($mut instanceof DeleteriousApopMutation)
+        invalidateRates();
+        
+        SummaryMutation sum = getSummary($mut.getSummaryCode());
+        if (sum != null)
         {
-            _delApopSum.summarize($mut);
+            int bit = 1 << $mut.getSummaryCode();
+            if ((_sharedSums & bit) != 0)
+            {
+                sum = copySum($mut.getSummaryCode());
+                _sharedSums &= ~bit;
+            }
+            sum.summarize($mut);
+        }
+        else
+        {
+            if (_mutations.isEmpty())
+            {
+                _mutations = new ArrayList<Mutation>(2);
+            }
+            _mutations.add($mut);
         }
-        else if ($mut instanceof DeleteriousDivMutation)
+    }
+    
+    
+    /**
+     * Add a mutation of the given MutationSampler class to this cell.
+     *
+     */
+    public void addMutation(int $code)
+    {
+        if ($code == MutationSampler.NONE)
         {
-            _delDivSum.summarize($mut);
+            return;
         }
-        else if ($mut instanceof BeneficialApopMutation)
+        
+        MutationSampler sampler = getSimulation().getMutationSampler();
+        addMutation(sampler.getMutation($code));
+    }
+    
+    
+    /**
+     * Give this cell a summarizer of its own for the given summary code, no
+     * longer shared with a mother or daughter, and return it.
+     *
+     */
+    SummaryMutation copySum(int $code)
+    {
+        SummaryMutation sum;
+        try
         {
-            _benApopSum.summarize($mut);
+            sum = (SummaryMutation)getSummary($code).clone();
         }
-        else if ($mut instanceof BeneficialDivMutation)
+        catch (CloneNotSupportedException e)
         {
-            _benDivSum.summarize($mut);
+            throw new RuntimeException(e);
         }
-        else if ($mut instanceof MutatorMutation)
+        
+        switch ($code)
         {
-            _mutatorSum.summarize($mut);
+        case MutationSampler.DELETERIOUS_APOP: _delApopSum = sum; break;
+        case MutationSampler.DELETERIOUS_DIV: _delDivSum = sum; break;
+        case MutationSampler.BENEFICIAL_APOP: _benApopSum = sum; break;
+        case MutationSampler.BENEFICIAL_DIV: _benDivSum = sum; break;
+        case MutationSampler.MUTATOR: _mutatorSum = sum; break;
         }
-        else
+        return sum;
+    }
+    
+    
+    /**
+     * Return the summary mutation for the given class code, null if
+     * mutations of that class are not summarized.
+     *
+     */
+    SummaryMutation getSummary(int $code)
+    {
+        switch ($code)
         {
-            _mutations.add($mut);
+        case MutationSampler.DELETERIOUS_APOP: return _delApopSum;
+        case MutationSampler.DELETERIOUS_DIV: return _delDivSum;
+        case MutationSampler.BENEFICIAL_APOP: return _benApopSum;
+        case MutationSampler.BENEFICIAL_DIV: return _benDivSum;
+        case MutationSampler.MUTATOR: return _mutatorSum;
+        default: return null;
         }
     }
     
@@ -293,21 +468,13 @@ public class Cell extends SimulationObject implements Cloneable
     
     public void clearEvents()
     {
-        EventQueue queue = getSimulation().getEventQueue();
+        Simulation sim = getSimulation();
 
-        if (_apoptosisEvent != null)
-        {
-            _apoptosisEvent.invalidate();
-            queue.remove(_apoptosisEvent);
-            _apoptosisEvent = null;
-        }
+        SimulationEvent.discard(sim, _apoptosisEvent);
+        _apoptosisEvent = null;
 
-        if (_cellDivisionEvent != null)
-        {
-            _cellDivisionEvent.invalidate();
-            queue.remove(_cellDivisionEvent);
-            _cellDivisionEvent = null;
-        }
+        SimulationEvent.discard(sim, _cellDivisionEvent);
+        _cellDivisionEvent = null;
     }
     
     /**
@@ -316,7 +483,12 @@ public class Cell extends SimulationObject implements Cloneable
      */
     public void kill()
     {
+        boolean wasAlive = _alive;
         _alive = false;
+        if (wasAlive && _crypt != null)
+        {
+            _crypt.cellKilled(this);
+        }
     }
     
     /**
@@ -340,11 +512,21 @@ public class Cell extends SimulationObject implements Cloneable
         // New ID for the daughter clone
         clone._id = nextId(); 
         
-        clone._delApopSum = (SummaryMutation)_delApopSum.clone();
-        clone._delDivSum = (SummaryMutation)_delDivSum.clone();
-        clone._benApopSum = (SummaryMutation)_benApopSum.clone();
-        clone._benDivSum = (SummaryMutation)_benDivSum.clone();
-        clone._mutatorSum = (SummaryMutation)_mutatorSum.clone();
+        // the daughter schedules its own events
+        clone._apoptosisEvent = null;
+        clone._cellDivisionEvent = null;
+        
+        // each summarizer is copied by whichever cell changes it first
+        _sharedSums = ALL_SUMS;
+        clone._sharedSums = ALL_SUMS;
+        
+        // the daughter's individual mutations are her own from here on
+        if (!_mutations.isEmpty())
+        {
+            clone._mutations = new ArrayList<Mutation>(_mutations);
+        }
+        
+        // the cached rates carry over -- the daughter has the same mutations
         
         return clone;
     }
@@ -8,6 +8,7 @@ import java.util.*;
 
 import stemsim.event.*;
 import stemsim.simulation.*;
+import stemsim.util.ArraySet;
 
 
 /**
@@ -30,6 +31,15 @@ public class Crypt extends SimulationObject implements StemCellAffector
     /** Formatter for text output */
     static DecimalFormat dform = new DecimalFormat("#.###");
 
+    /** Effect key bit set when a neighbor is dead */
+    static final public int EFFECT_DEAD_NEIGHBOR = 1;
+
+    /** Effect key bit set when the population is above homeostatic */
+    static final public int EFFECT_ABOVE_HOMEOSTATIC = 2;
+
+    /** Effect key of a crypt whose cells' events were never scheduled */
+    static final public int NO_EFFECT_KEY = Integer.MIN_VALUE;
+
     
     /**
      * Create an isolated Crypt with a number of stem cells taken from
@@ -38,8 +48,7 @@ public class Crypt extends SimulationObject implements StemCellAffector
      */
     public static Crypt create(Simulation $simulation)
     {
-        SimulationParams params = $simulation.getParams();
-        int numstemcells = params.getInt("crypt.numcells.mean");
+        int numstemcells = $simulation.getConfig().getMeanStemCells();
         return create($simulation, numstemcells, 0);
     }
 
@@ -50,8 +59,7 @@ public class Crypt extends SimulationObject implements StemCellAffector
      */
     public static Crypt create(Simulation $simulation, int $numNeighbors)
     {
-        SimulationParams params = $simulation.getParams();
-        int numstemcells = params.getInt("crypt.numcells.mean");
+        int numstemcells = $simulation.getConfig().getMeanStemCells();
         return create($simulation, numstemcells, $numNeighbors);
     }
     
@@ -83,14 +91,45 @@ public class Crypt extends SimulationObject implements StemCellAffector
     /** The tissue of which this crypt is a part */
     Tissue _tissue;
     
-    /** The stem cells in this crypt */
-    Set<StemCell> _stemCells = new HashSet<StemCell>();
+    /** The stem cells in this crypt, in a stable order for seeded runs */
+    ArraySet<StemCell> _stemCells = new ArraySet<StemCell>();
     
     /** The neighbors of this crypt */
     Crypt[] _neighbors = null;
 
     /** Hex coordinates used to compute hex grid distance */
     HexPoint _hexPoint;
+    
+    /** Local queue of this crypt's events in the event queue, -1 if none */
+    int _eventGroup = -1;
+    
+    /** Effect key the events of this crypt's cells were last scheduled at */
+    int _scheduledEffectKey = NO_EFFECT_KEY;
+    
+    /** Pending leap of this crypt, null while its cells have events */
+    CryptLeapEvent _leapEvent = null;
+    
+    /** Incremented whenever this crypt's effects on its cells may change */
+    int _effectVersion = 0;
+    
+    /** Config and effect version of the effect factors below */
+    SimulationConfig _factorsConfig = null;
+    int _factorsVersion = -1;
+    
+    /** Number of living stem cells */
+    int _numLiving = 0;
+    
+    /** Number of dead neighbors */
+    int _numDeadNeighbors = 0;
+    
+    /** Current factor on the apoptosis rates of our cells, NaN if stale */
+    double _apoptosisFactor = Double.NaN;
+    
+    /** Current population factor on the division rates, NaN if stale */
+    double _divisionFactor = Double.NaN;
+    
+    /** Current dead neighbor factor on the division rates, NaN if stale */
+    double _deadNeighborFactor = Double.NaN;
 
     
     /**
@@ -111,6 +150,10 @@ public class Crypt extends SimulationObject implements StemCellAffector
     public void setTissue(Tissue $tissue)
     {
         _tissue = $tissue;
+        
+        // the tissue is wired up by now
+        _numDeadNeighbors = countDeadNeighbors();
+        _effectVersion++;
     }
     
     /**
@@ -123,6 +166,27 @@ public class Crypt extends SimulationObject implements StemCellAffector
     }
     
     
+    /**
+     * Set the local queue holding this crypt's events in a hierarchical
+     * event queue -- maintained by the EventQueue only.
+     *
+     */
+    public void setEventGroup(int $group)
+    {
+        _eventGroup = $group;
+    }
+    
+    
+    /**
+     * Get the local queue holding this crypt's events, -1 if none.
+     *
+     */
+    public int getEventGroup()
+    {
+        return _eventGroup;
+    }
+    
+    
     /**
      * Returns the set of stem cells in this crypt.
      *
@@ -133,6 +197,17 @@ public class Crypt extends SimulationObject implements StemCellAffector
     }
     
     
+    /**
+     * Return the stem cell at the given position of getStemCells(), for
+     * walking the cells without an iterator.
+     *
+     */
+    public StemCell getStemCell(int $index)
+    {
+        return _stemCells.get($index);
+    }
+    
+    
     /**
      * Return the ordered list of neighbors of this crypt.
      *
@@ -172,6 +247,8 @@ public class Crypt extends SimulationObject implements StemCellAffector
     public void setNeighbors(Crypt[] $crypts)
     {
         _neighbors = $crypts;
+        _numDeadNeighbors = countDeadNeighbors();
+        _effectVersion++;
     }
     
     
@@ -196,14 +273,162 @@ public class Crypt extends SimulationObject implements StemCellAffector
     
     public boolean hasDeadNeighbor()
     {
-        for (Crypt tc : getNeighbors())
+        return _numDeadNeighbors > 0;
+    }
+    
+    
+    public int getDeadNeighborCount()
+    {
+        return _numDeadNeighbors;
+    }
+    
+    
+    /**
+     * Return a key that changes whenever the effects of this crypt on its
+     * stem cells may change: the population band that apoptosisEffect() and
+     * divisionEffect() compute in integer arithmetic, whether a neighbor is
+     * dead, and whether the population is above the homeostatic level.
+     *
+     */
+    public int getEffectKey()
+    {
+        return getEffectKey(getStemCells().size());
+    }
+    
+    
+    /**
+     * Return the effect key this crypt would have with the given number of
+     * stem cells and its neighbors as they are.
+     *
+     */
+    public int getEffectKey(int $numCells)
+    {
+        SimulationConfig config = getSimulation().getConfig();
+        
+        int numcells = $numCells;
+        int mean = config.getMeanStemCells();
+        int stdev = config.getStemCellDeviation();
+        
+        int key = ((numcells - mean)/stdev) << 2;
+        if (hasDeadNeighbor())
         {
-            if (tc != null && !tc.isAlive())
+            key |= EFFECT_DEAD_NEIGHBOR;
+        }
+        if (numcells > mean)
+        {
+            key |= EFFECT_ABOVE_HOMEOSTATIC;
+        }
+        return key;
+    }
+    
+    
+    public void setScheduledEffectKey(int $key)
+    {
+        _scheduledEffectKey = $key;
+    }
+    
+    
+    /**
+     * Return the effect key the events of this crypt's cells were last
+     * scheduled at by a CryptChangeEvent, NO_EFFECT_KEY if never.
+     *
+     */
+    public int getScheduledEffectKey()
+    {
+        return _scheduledEffectKey;
+    }
+    
+    
+    public void setLeapEvent(CryptLeapEvent $event)
+    {
+        _leapEvent = $event;
+    }
+    
+    
+    public CryptLeapEvent getLeapEvent()
+    {
+        return _leapEvent;
+    }
+    
+    
+    /**
+     * Return true if this crypt advances by tau-leaping, its cells without
+     * events of their own.
+     *
+     */
+    public boolean isLeaping()
+    {
+        return _leapEvent != null;
+    }
+    
+    
+    /**
+     * Return the version of this crypt's effects on its stem cells.  It
+     * changes with the population of the crypt and whenever a neighbor dies
+     * or comes back to life; cells keep their crypt-dependent rates until it
+     * does.
+     *
+     */
+    public int getEffectVersion()
+    {
+        return _effectVersion;
+    }
+    
+    
+    /**
+     * Note a change of the number of living stem cells in this crypt.  The
+     * neighbors and the tissue hear of the crypt dying or coming back to
+     * life.
+     *
+     */
+    void livingChanged(int $delta)
+    {
+        boolean wasAlive = _numLiving > 0;
+        _numLiving += $delta;
+        _effectVersion++;
+        
+        boolean alive = _numLiving > 0;
+        if (alive == wasAlive)
+        {
+            return;
+        }
+        
+        int dead = alive ? -1 : 1;
+        for (Crypt c : _neighbors)
+        {
+            if (c != null)
             {
-                return true;
+                c.neighborChanged(dead);
             }
         }
-        return false;
+        if (_tissue != null)
+        {
+            _tissue.cryptChanged(this, alive);
+        }
+    }
+    
+    
+    /**
+     * Note that a neighbor died ($dead = 1) or came back to life ($dead = -1).
+     *
+     */
+    void neighborChanged(int $dead)
+    {
+        _numDeadNeighbors += $dead;
+        _effectVersion++;
+    }
+    
+    
+    /**
+     * Note that one of our stem cells was killed.
+     *
+     */
+    void cellKilled(Cell $cell)
+    {
+        if (_stemCells.contains($cell))
+        {
+            livingChanged(-1);
+        }
     }
     
     
@@ -213,8 +438,12 @@ public class Crypt extends SimulationObject implements StemCellAffector
      */
     public void add(StemCell $cell)
     {
-        _stemCells.add($cell);
+        boolean added = _stemCells.add($cell);
         $cell.setCrypt(this);
+        if (added)
+        {
+            livingChanged($cell.isAlive() ? 1 : 0);
+        }
     }
     
     
@@ -236,6 +465,7 @@ public class Crypt extends SimulationObject implements StemCellAffector
             if (removed)
             {
                 $cell.setCrypt(null);
+                livingChanged($cell.isAlive() ? -1 : 0);
             }
         }
 
@@ -267,12 +497,17 @@ public class Crypt extends SimulationObject implements StemCellAffector
      */
     public boolean isAlive()
     {
-        for (StemCell cell : getStemCells())
-        {
-            if (cell.isAlive()) return true;
-        }
-        
-        return false;
+        return _numLiving > 0;
+    }
+    
+    
+    /**
+     * Return the number of living stem cells in this crypt.
+     *
+     */
+    public int getLivingCount()
+    {
+        return _numLiving;
     }
     
     
@@ -283,18 +518,9 @@ public class Crypt extends SimulationObject implements StemCellAffector
      */
     public boolean isCancerous()
     {
-        SimulationParams params = getSimulation().getParams();
-        
         // cancer is defined as having a number of stemcells greater than
         // the equilibrium level times a threshold
-        double stemmean = params.getDouble("crypt.numcells.mean");
-        double cancerthresh = 
-            params.getDouble("cancer.uncontrolledgrowth.threshold");
-        cancerthresh *= stemmean;
-        
-        // Could be optimized by storing this value in the params at the start 
-        // of a run
-        long thresh = Math.round(cancerthresh); 
+        long thresh = getSimulation().getConfig().getCancerThreshold();
         
         return (getStemCells().size() > thresh);
     }
@@ -388,10 +614,8 @@ public class Crypt extends SimulationObject implements StemCellAffector
     
     public boolean isAboveHomeostatic()
     {
-        SimulationParams params = getSimulation().getParams();
-
         int numcells = getStemCells().size();
-        int mean = params.getInt("crypt.numcells.mean");
+        int mean = getSimulation().getConfig().getMeanStemCells();
         
         return numcells > mean;
     }
@@ -403,33 +627,16 @@ public class Crypt extends SimulationObject implements StemCellAffector
      */
     public double apoptosisEffect(double $rate)
     {
-        SimulationParams params = getSimulation().getParams();
-        
-        // if have a dead neighbor, remove apoptotic effect
-        if (deadNeighbors().size() > 0)
-        {
-            return $rate;
-        }
-        
-        // compute effect based on number of stem cells
-        int numcells = getStemCells().size();
-        int mean = params.getInt("crypt.numcells.mean");
-        int stdev = params.getInt("crypt.numcells.standarddeviation");
-        
-        double multiplier = params.getDouble("crypt.apoptosis.multiplier");
-        
-        double distanceFromMean  = (numcells - mean)/stdev;
-        if (distanceFromMean <= 0) 
+        checkFactors();
+        if (_apoptosisFactor != _apoptosisFactor)
         {
-            return $rate;
+            // if have a dead neighbor, remove apoptotic effect, otherwise
+            // look up the effect of the number of stem cells
+            _apoptosisFactor = (_numDeadNeighbors > 0) ? 1.0 
+                : _factorsConfig.getCryptApoptosisFactor(getStemCells().size());
         }
         
-        multiplier = Math.pow(multiplier, Math.abs(distanceFromMean));
-        
-        // System.out.println("distanceFromMean = " + distanceFromMean);
-        // System.out.println(numCells + " => " + multiplier);
-        
-        return $rate * multiplier;
+        return $rate * _apoptosisFactor;
     }
     
     
@@ -439,35 +646,58 @@ public class Crypt extends SimulationObject implements StemCellAffector
      */
     public double divisionEffect(double $rate)
     {
-        SimulationParams params = getSimulation().getParams();
-        
-        // first calculate based on number of stem cells in this crypt
-        int numCells = getStemCells().size();
-        int mean = params.getInt("crypt.numcells.mean");
-        int stdiv = params.getInt("crypt.numcells.standarddeviation");
-        
-        double distanceFromMean  = (numCells - mean)/stdiv;
-        int numDeadNeighbors = deadNeighbors().size();
-        
-        // apply low population multiplier
-        if (distanceFromMean < 0)
+        checkFactors();
+        if (_divisionFactor != _divisionFactor)
         {
-            double popMult = params.getDouble("crypt.division.multiplier");
-            popMult = Math.pow(popMult, Math.abs(distanceFromMean));
-            
-            $rate *= popMult;
+            // low population multiplier, then dead neighbor multiplier
+            _divisionFactor = 
+                _factorsConfig.getCryptDivisionFactor(getStemCells().size());
+            _deadNeighborFactor = (_numDeadNeighbors > 0) 
+                ? _factorsConfig.getDeadNeighborDivisionMultiplier() : 1.0;
         }
         
-        //  apply dead neighbor muliplier
-        if (numDeadNeighbors > 0)
+        // a factor of 1 leaves the rate exactly as it is
+        return ($rate * _divisionFactor) * _deadNeighborFactor;
+    }
+    
+    
+    /**
+     * Drop the effect factors if the population or neighbors of this crypt
+     * or the config changed since they were computed.  The factors
+     * themselves are looked up when next needed.
+     *
+     */
+    void checkFactors()
+    {
+        SimulationConfig config = getSimulation().getConfig();
+        if (_factorsVersion == _effectVersion && _factorsConfig == config)
         {
-            double dnMult = 
-                params.getDouble("crypt.division.deadneighbor.multiplier"); 
-            
-            $rate *= dnMult;
+            return;
         }
         
-        return $rate;
+        _factorsConfig = config;
+        _factorsVersion = _effectVersion;
+        _apoptosisFactor = Double.NaN;
+        _divisionFactor = Double.NaN;
+        _deadNeighborFactor = Double.NaN;
+    }
+    
+    
+    /**
+     * Count the dead neighbors of this crypt from scratch.
+     *
+     */
+    int countDeadNeighbors()
+    {
+        int n = 0;
+        for (Crypt tc : getNeighbors())
+        {
+            if (tc != null && !tc.isAlive())
+            {
+                n++;
+            }
+        }
+        return n;
     }
     
     
@@ -51,9 +51,8 @@ public class DeleteriousApopMutation extends Mutation
     {
         super($simulation);
 
-        SimulationParams params = getSimulation().getParams();
         _multiplier = 
-            params.getDouble("deleteriousmutation.apoptosis.multiplier");
+            getSimulation().getConfig().getDeleteriousApopMultiplier();
     }
     
     public double apoptosisEffect(double $rate)
@@ -61,6 +60,11 @@ public class DeleteriousApopMutation extends Mutation
         return $rate * _multiplier;
     }
     
+    public int getSummaryCode()
+    {
+        return MutationSampler.DELETERIOUS_APOP;
+    }
+    
     public String toString()
     {
         return "da";
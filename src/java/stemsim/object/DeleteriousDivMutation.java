@@ -46,9 +46,8 @@ public class DeleteriousDivMutation extends Mutation
     {
         super($simulation);
 
-        SimulationParams params = getSimulation().getParams();
         _divMultiplier = 
-            params.getDouble("deleteriousmutation.division.multiplier");
+            getSimulation().getConfig().getDeleteriousDivMultiplier();
     }
     
     public double divisionEffect(double $rate)
@@ -56,6 +55,11 @@ public class DeleteriousDivMutation extends Mutation
         return $rate * _divMultiplier;
     }
     
+    public int getSummaryCode()
+    {
+        return MutationSampler.DELETERIOUS_DIV;
+    }
+    
     public String toString()
     {
         return "dd";
@@ -32,42 +32,9 @@ public class Mutation extends SimulationObject implements StemCellAffector
      */
     public static Mutation createRandom(Simulation $simulation)
     {
-        SimulationParams params = $simulation.getParams();
-        double pctDelA = params.getDouble("mutation.rate.deleterious.apop");
-        double pctDelD = params.getDouble("mutation.rate.deleterious.div");
-        double pctBenA = params.getDouble("mutation.rate.beneficial.apop");
-        double pctBenD = params.getDouble("mutation.rate.beneficial.div");
-        double pctMut = params.getDouble("mutation.rate.mutator");
-        
-        double d = Simulation.RANDOM.randomDouble();
-        if (d < pctDelA)
-        {
-            return DeleteriousApopMutation.create($simulation);
-        }
-
-        // This could be made more efficient by storing these sums, since they 
-        // don't change
-        if (d < pctDelA + pctDelD) 
-        {
-            return DeleteriousDivMutation.create($simulation);
-        }
-        
-        if (d < pctDelA + pctDelD + pctBenA)
-        {
-            return BeneficialApopMutation.create($simulation);
-        }
-        
-        if (d < pctDelA + pctDelD + pctBenA + pctBenD)
-        {
-            return BeneficialDivMutation.create($simulation);
-        }
-        
-        if (d < pctDelA + pctDelD + pctBenA + pctBenD + pctMut)
-        {
-            return MutatorMutation.create($simulation);
-        }
-        
-        return null;
+        MutationSampler sampler = $simulation.getMutationSampler();
+        int code = sampler.sample();
+        return (code == MutationSampler.NONE) ? null : sampler.getMutation(code);
     }
     
     
@@ -111,6 +78,18 @@ public class Mutation extends SimulationObject implements StemCellAffector
     public double mutationEffect(double $rate) {return $rate;}
     
     
+    /**
+     * Return the MutationSampler class code of the summary mutation that
+     * summarizes mutations of this class, MutationSampler.NONE if they are
+     * kept individually.
+     *
+     */
+    public int getSummaryCode()
+    {
+        return MutationSampler.NONE;
+    }
+    
+    
     /**
      * Return an XML representation of this mutation object.
      *
@@ -0,0 +1,237 @@
+package stemsim.object;
+
+
+import stemsim.simulation.*;
+
+
+/**
+ * Picks the class of a new mutation from the mutation type proportions of a
+ * simulation.  The cumulative proportions are laid out once in a table, and
+ * a sample is a mutation class code, which Cell.addMutation(int) folds into
+ * the cell without creating a mutation object.
+ *
+ * The five built-in classes take codes 0 to 4 in the order of their
+ * proportions on [0,1).  Further mutation classes may be registered with a
+ * proportion of their own, which follows the built-in ones; their mutations
+ * are kept on the cell individually.  All proportions together may not pass
+ * 1, so a class of its own needs built-in proportions that leave it room.
+ * Registered classes outlive a change of params: the sampler built for the
+ * new config takes them over with the same codes.
+ *
+ */
+public class MutationSampler
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** no mutation -- the draw fell past every class */
+    static final public int NONE = -1;
+
+    static final public int DELETERIOUS_APOP = 0;
+    static final public int DELETERIOUS_DIV = 1;
+    static final public int BENEFICIAL_APOP = 2;
+    static final public int BENEFICIAL_DIV = 3;
+    static final public int MUTATOR = 4;
+
+    /** number of built-in mutation classes */
+    static final public int BUILTIN = 5;
+
+
+    /**
+     * Create the sampler of the built-in mutation classes for the given
+     * simulation.
+     *
+     */
+    static public MutationSampler create(Simulation $simulation)
+    {
+        return create($simulation, null);
+    }
+
+
+    /**
+     * Create the sampler of the built-in mutation classes for the given
+     * simulation, registering again the further classes of the previous
+     * sampler, if any.
+     *
+     */
+    static public MutationSampler create(Simulation $simulation,
+                                         MutationSampler $previous)
+    {
+        SimulationConfig config = $simulation.getConfig();
+        MutationSampler sampler = new MutationSampler($simulation, config);
+
+        // the bounds come summed from the config; mutation objects are only
+        // created when their class is first drawn
+        sampler._bounds[DELETERIOUS_APOP] = config.getDeleteriousApopBound();
+        sampler._bounds[DELETERIOUS_DIV] = config.getDeleteriousDivBound();
+        sampler._bounds[BENEFICIAL_APOP] = config.getBeneficialApopBound();
+        sampler._bounds[BENEFICIAL_DIV] = config.getBeneficialDivBound();
+        sampler._bounds[MUTATOR] = config.getMutatorBound();
+        sampler._size = BUILTIN;
+
+        if ($previous != null)
+        {
+            for (int i=BUILTIN; i<$previous._size; i++)
+            {
+                sampler.register($previous._mutations[i],
+                                 $previous._proportions[i]);
+            }
+        }
+
+        return sampler;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** the simulation whose mutations we sample */
+    Simulation _simulation;
+
+    /** the config the built-in proportions were taken from */
+    SimulationConfig _config;
+
+    /** upper bound of each class on [0,1), ascending */
+    double[] _bounds = new double[8];
+
+    /** mutation object of each class, null until first needed */
+    Mutation[] _mutations = new Mutation[8];
+
+    /** proportion of each registered class */
+    double[] _proportions = new double[8];
+
+    /** number of classes */
+    int _size = 0;
+
+
+    MutationSampler(Simulation $simulation, SimulationConfig $config)
+    {
+        _simulation = $simulation;
+        _config = $config;
+    }
+
+
+    /**
+     * Register a mutation class, drawn with the given proportion past the
+     * classes already registered.  Returns its class code.  Throws
+     * IllegalArgumentException if the proportions would sum past 1.
+     *
+     */
+    public int register(Mutation $mutation, double $proportion)
+    {
+        if ($mutation == null || $proportion < 0)
+        {
+            throw new IllegalArgumentException("invalid mutation class");
+        }
+        if (_bounds[_size - 1] + $proportion 
+            > SimulationConfig.MAX_MUTATION_TOTAL)
+        {
+            throw new IllegalArgumentException(
+                "mutation proportions sum past 1");
+        }
+
+        if (_size == _bounds.length)
+        {
+            double[] bounds = new double[_size * 2];
+            System.arraycopy(_bounds, 0, bounds, 0, _size);
+            _bounds = bounds;
+
+            Mutation[] mutations = new Mutation[_size * 2];
+            System.arraycopy(_mutations, 0, mutations, 0, _size);
+            _mutations = mutations;
+
+            double[] proportions = new double[_size * 2];
+            System.arraycopy(_proportions, 0, proportions, 0, _size);
+            _proportions = proportions;
+        }
+
+        _bounds[_size] = _bounds[_size - 1] + $proportion;
+        _mutations[_size] = $mutation;
+        _proportions[_size] = $proportion;
+        return _size++;
+    }
+
+
+    /**
+     * Return the class code of a new mutation, NONE if none.
+     *
+     */
+    public int sample()
+    {
+        return sample(_simulation.getRandom().randomDouble());
+    }
+
+
+    /**
+     * Return the class whose share of [0,1) holds the given uniform, NONE if
+     * it falls past all of them.
+     *
+     */
+    public int sample(double $u)
+    {
+        // a handful of classes -- a linear scan beats a binary search
+        for (int i=0; i<_size; i++)
+        {
+            if ($u < _bounds[i])
+            {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+
+    /**
+     * Return the mutation object of the given class.
+     *
+     */
+    public Mutation getMutation(int $code)
+    {
+        Mutation mut = _mutations[$code];
+        if (mut == null)
+        {
+            switch ($code)
+            {
+            case DELETERIOUS_APOP:
+                mut = DeleteriousApopMutation.create(_simulation);
+                break;
+            case DELETERIOUS_DIV:
+                mut = DeleteriousDivMutation.create(_simulation);
+                break;
+            case BENEFICIAL_APOP:
+                mut = BeneficialApopMutation.create(_simulation);
+                break;
+            case BENEFICIAL_DIV:
+                mut = BeneficialDivMutation.create(_simulation);
+                break;
+            case MUTATOR:
+                mut = MutatorMutation.create(_simulation);
+                break;
+            }
+            _mutations[$code] = mut;
+        }
+        return mut;
+    }
+
+
+    /**
+     * Return the number of mutation classes.
+     *
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+
+    /**
+     * Return the config this sampler was built from.
+     *
+     */
+    public SimulationConfig getConfig()
+    {
+        return _config;
+    }
+}
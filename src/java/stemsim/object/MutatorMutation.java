@@ -43,8 +43,7 @@ public class MutatorMutation extends Mutation
     {
         super($simulation);
 
-        SimulationParams params = getSimulation().getParams();
-        _multiplier = params.getDouble("mutatormutation.mutation.multiplier");
+        _multiplier = getSimulation().getConfig().getMutatorMultiplier();
     }
     
     public double mutationEffect(double $rate)
@@ -52,6 +51,11 @@ public class MutatorMutation extends Mutation
         return $rate * _multiplier;
     }
     
+    public int getSummaryCode()
+    {
+        return MutationSampler.MUTATOR;
+    }
+    
     public String toString()
     {
         return "m";
@@ -6,6 +6,8 @@ import java.io.PrintWriter;
 import java.util.*;
 import java.text.DecimalFormat;
 
+import lib.Probability;
+
 import stemsim.event.*;
 import stemsim.simulation.*;
 
@@ -58,6 +60,31 @@ public class StemCell extends Cell implements Cloneable
     /** the TSG knockout mutations in the related TAC cells */
     int _tsgHitsTAC = 0;
     
+    /** Cached feedback apoptosis rate, NaN if stale */
+    double _feedbackApoptosisRate = Double.NaN;
+    
+    /** Cached asymmetric division rate, NaN if stale */
+    double _asymmetricDivisionRate = Double.NaN;
+    
+    /** divisions left until the next fitness mutation, 0 to draw again */
+    long _mutationCountdown = 0;
+    
+    /** mutation rate the countdown was drawn at */
+    double _mutationCountdownRate;
+    
+    /** divisions left until the next TSG hit in the stem cell */
+    long _tsgCountdown = 0;
+    
+    /** TSG mutation rate the countdown was drawn at */
+    double _tsgCountdownRate;
+    
+    /** divisions left until the next TSG hit in the TAC compartment */
+    long _tacCountdown = 0;
+    
+    /** TSG mutation rate and TAC size the countdown was drawn at */
+    double _tacCountdownRate;
+    double _tacCountdownCells;
+    
     
     //
     // Getters and Setters
@@ -92,9 +119,9 @@ public class StemCell extends Cell implements Cloneable
      */
     public double getTransientCells()
     {
-        SimulationParams params = getSimulation().getParams();
+        SimulationConfig config = getSimulation().getConfig();
 
-        int tacSize = params.getInt("stemcell.tacsize.base");
+        int tacSize = config.getTACSize();
         int numCells = getCrypt().getStemCells().size();
 
         return tacSize / numCells;
@@ -132,10 +159,46 @@ public class StemCell extends Cell implements Cloneable
     //
     public double getFeedbackApoptosisRate()
     {
-        SimulationParams params = getSimulation().getParams();
+        checkRates();
+        if (_feedbackApoptosisRate != _feedbackApoptosisRate)
+        {
+            _feedbackApoptosisRate = computeFeedbackApoptosisRate();
+        }
+        return _feedbackApoptosisRate;
+    }
+
+    
+    public double getAsymmetricDivisionRate()
+    {
+        checkRates();
+        if (_asymmetricDivisionRate != _asymmetricDivisionRate)
+        {
+            _asymmetricDivisionRate = computeAsymmetricDivisionRate();
+        }
+        return _asymmetricDivisionRate;
+    }
+    
+    
+    void invalidateRates()
+    {
+        super.invalidateRates();
+        _asymmetricDivisionRate = Double.NaN;
+    }
+    
+    
+    void invalidateCryptRates()
+    {
+        super.invalidateCryptRates();
+        _feedbackApoptosisRate = Double.NaN;
+    }
+    
+    
+    double computeFeedbackApoptosisRate()
+    {
+        SimulationConfig config = getSimulation().getConfig();
 
         // start with base rate
-        double rate = params.getDouble("stemcell.apoptosisrate.base");
+        double rate = config.getApoptosisRate();
 
         // factor crypt effect
         rate = getCrypt().apoptosisEffect(rate);
@@ -144,12 +207,12 @@ public class StemCell extends Cell implements Cloneable
     }
 
     
-    public double getAsymmetricDivisionRate()
+    double computeAsymmetricDivisionRate()
     {
-        SimulationParams params = getSimulation().getParams();
+        SimulationConfig config = getSimulation().getConfig();
 
         // start with base rate
-        double rate = params.getDouble("stemcell.divisionrate.base");
+        double rate = config.getDivisionRate();
 
         // factor non-standard mutation effects
         for (Mutation mut : _mutations)
@@ -162,13 +225,166 @@ public class StemCell extends Cell implements Cloneable
         rate = _delDivSum.divisionEffect(rate);
 
         // multiply by asymmetric/symmetric ratio
-        int asymmratio = params.getInt("stemcell.asymmetricdivision.ratio");
+        int asymmratio = config.getAsymmetricDivisionRatio();
         rate *= (double)asymmratio;
 
         return rate;
     }
     
     
+    //
+    // Division trials
+    //
+    // A division mutates, or hits a TSG, with a tiny probability.  Rather
+    // than flip a coin for each, the cell draws the number of divisions up
+    // to the next success from the geometric distribution and counts it
+    // down.  The geometric distribution is memoryless, so a countdown is
+    // simply drawn again whenever its probability changes.
+    //
+    
+    /**
+     * Count a division towards the next fitness mutation, returning true if
+     * this division mutates.
+     *
+     */
+    public boolean mutationTrial()
+    {
+        checkMutationCountdown();
+        return --_mutationCountdown == 0;
+    }
+    
+    
+    /**
+     * Count a division towards the next TSG hit in the stem cell, returning
+     * true if this division hits.
+     *
+     */
+    public boolean tsgTrial()
+    {
+        checkTSGCountdown();
+        return --_tsgCountdown == 0;
+    }
+    
+    
+    /**
+     * Count a division towards the next TSG hit in the TAC compartment,
+     * returning true if this division hits.  A division hits if any of the
+     * transient cells does.
+     *
+     */
+    public boolean tacTrial()
+    {
+        checkTACCountdown();
+        return --_tacCountdown == 0;
+    }
+    
+    
+    /**
+     * Return the number of divisions up to and including the next one that
+     * mutates or hits a TSG, in the stem cell or its TAC compartment.
+     *
+     */
+    public long getDivisionsToTrialHit()
+    {
+        checkTSGCountdown();
+        checkTACCountdown();
+        checkMutationCountdown();
+        
+        long n = Math.min(_tsgCountdown, _tacCountdown);
+        return Math.min(n, _mutationCountdown);
+    }
+    
+    
+    /**
+     * Return true if the TAC countdown was drawn for the transient cells
+     * the crypt has now.  A thinned asymmetric division event is timed by
+     * the countdown it was drawn with, and is drawn again when it is not.
+     *
+     */
+    public boolean isTACCountdownCurrent()
+    {
+        TACProbabilityTable table = getSimulation().getTACTable();
+        int numCells = getCrypt().getStemCells().size();
+        return _tacCountdownCells == table.getTransientCells(numCells);
+    }
+    
+    
+    /**
+     * Count the given number of divisions, none of which hits, towards
+     * every countdown.
+     *
+     */
+    public void skipTrials(long $divisions)
+    {
+        _mutationCountdown = skip(_mutationCountdown, $divisions);
+        _tsgCountdown = skip(_tsgCountdown, $divisions);
+        _tacCountdown = skip(_tacCountdown, $divisions);
+    }
+    
+    
+    /**
+     * Draw every countdown again at the next division.
+     *
+     */
+    public void resetTrials()
+    {
+        _mutationCountdown = 0;
+        _tsgCountdown = 0;
+        _tacCountdown = 0;
+    }
+    
+    
+    static long skip(long $countdown, long $divisions)
+    {
+        // a countdown no longer than the skip is drawn again
+        return ($countdown > $divisions) ? $countdown - $divisions : 0;
+    }
+    
+    
+    void checkMutationCountdown()
+    {
+        double p = getMutationRate();
+        if (_mutationCountdown == 0 || p != _mutationCountdownRate)
+        {
+            _mutationCountdown = 
+                Probability.RandomFromGeometric(p, getSimulation().getRandom());
+            _mutationCountdownRate = p;
+        }
+    }
+    
+    
+    void checkTSGCountdown()
+    {
+        double p = getTSGMutationRate();
+        if (_tsgCountdown == 0 || p != _tsgCountdownRate)
+        {
+            _tsgCountdown = 
+                Probability.RandomFromGeometric(p, getSimulation().getRandom());
+            _tsgCountdownRate = p;
+        }
+    }
+    
+    
+    void checkTACCountdown()
+    {
+        TACProbabilityTable table = getSimulation().getTACTable();
+        int numCells = getCrypt().getStemCells().size();
+        
+        double pmut = getTSGMutationRate();
+        double cells = table.getTransientCells(numCells);
+        if (_tacCountdown == 0 
+            || pmut != _tacCountdownRate 
+            || cells != _tacCountdownCells)
+        {
+            double p = table.getProbability(pmut, numCells);
+            _tacCountdown = 
+                Probability.RandomFromGeometric(p, getSimulation().getRandom());
+            _tacCountdownRate = pmut;
+            _tacCountdownCells = cells;
+        }
+    }
+    
+    
     /**
      * Return true if the number of TSG knockouts in the stem cel only 
      * exceeds the threshold.
@@ -176,9 +392,9 @@ public class StemCell extends Cell implements Cloneable
      */
     public boolean isCancerous()
     {
-        SimulationParams params = getSimulation().getParams();
+        SimulationConfig config = getSimulation().getConfig();
 
-        int tsgThresh = params.getInt("cancer.tsg.threshold");
+        int tsgThresh = config.getTSGThreshold();
         return (getTSGHits() >= tsgThresh);
     }
     
@@ -199,8 +415,7 @@ public class StemCell extends Cell implements Cloneable
         if (adiv == null) return false;
         
         Simulation sim = getSimulation();
-        SimulationParams params = sim.getParams();
-        double floor = params.getDouble("event.celldivision.floor");
+        double floor = sim.getConfig().getDivisionFloor();
         
         double stime = sdiv.getTime();
         double atime = adiv.getTime();
@@ -209,10 +424,13 @@ public class StemCell extends Cell implements Cloneable
         {
             EventQueue queue = sim.getEventQueue();
 
+            // the sum may round to just short of a floor past atime
             stime = atime + floor;
-            queue.remove(sdiv);
-            sdiv.setTime(stime);
-            queue.offer(sdiv);
+            while (stime - atime < floor)
+            {
+                stime += Math.ulp(stime);
+            }
+            queue.reschedule(sdiv, stime);
 
             return true;
         }
@@ -221,6 +439,47 @@ public class StemCell extends Cell implements Cloneable
     }
     
     
+    /**
+     * With thinning, the no-op asymmetric divisions before the pending
+     * asymmetric division event have no events of their own to push the
+     * symmetric division back.  Push it back as they would have: one falls
+     * less than div floor time before the symmetric division with
+     * probability floor / (floor + 1 / rate), at a uniform time within the
+     * floor.
+     *
+     * Returns true if we had to do a push.
+     *
+     */
+    public boolean correctThinnedDivEvents()
+    {
+        SymmetricDivisionEvent sdiv = getDivisionEvent();
+        if (sdiv == null) return false;
+        
+        AsymmetricDivisionEvent adiv = getAsymmetricDivisionEvent();
+        if (adiv == null || adiv.getDivisions() == 1) return false;
+        
+        // past the pending event correctDivEvents() takes over
+        double stime = sdiv.getTime();
+        if (stime >= adiv.getTime()) return false;
+        
+        Simulation sim = getSimulation();
+        double floor = sim.getConfig().getDivisionFloor();
+        double period = floor + (1.0 / adiv.getRate());
+        
+        if (sim.getRandom().randomDouble() * period >= floor)
+        {
+            return false;
+        }
+        
+        EventQueue queue = sim.getEventQueue();
+        
+        stime += floor * sim.getRandom().randomDouble();
+        queue.reschedule(sdiv, stime);
+        
+        return true;
+    }
+    
+    
     
     /**
      * Private constructor.  Create stem cells using static create() method.
@@ -233,7 +492,6 @@ public class StemCell extends Cell implements Cloneable
         setCrypt($crypt);
         
         Simulation sim = $crypt.getSimulation();
-        SimulationParams params = sim.getParams();
 
         // create baseline summary mutations
         _delApopSum = new SummaryMutation(sim, "delApopSum");
@@ -248,24 +506,16 @@ public class StemCell extends Cell implements Cloneable
     {
         super.clearEvents();
         
-        EventQueue queue = getSimulation().getEventQueue();
+        Simulation sim = getSimulation();
         
         // We have separate rates of background apoptosis (handled by the super)
         // and the apoptosis due to homeostasis.
         // Mutations can affect the first but not the second.
-        if (_feedbackApoptosisEvent != null) 
-        {
-            _feedbackApoptosisEvent.invalidate();
-            queue.remove(_feedbackApoptosisEvent);
-            _feedbackApoptosisEvent = null;
-        }
+        SimulationEvent.discard(sim, _feedbackApoptosisEvent);
+        _feedbackApoptosisEvent = null;
         
-        if (_asymmetricDivisionEvent != null)
-        {
-            _asymmetricDivisionEvent.invalidate();
-            queue.remove(_asymmetricDivisionEvent);
-            _asymmetricDivisionEvent = null;
-        }
+        SimulationEvent.discard(sim, _asymmetricDivisionEvent);
+        _asymmetricDivisionEvent = null;
     }
     
     
@@ -307,6 +557,15 @@ public class StemCell extends Cell implements Cloneable
     {
         StemCell clone =  (StemCell)super.clone();
         
+        // the daughter schedules its own events
+        clone._feedbackApoptosisEvent = null;
+        clone._asymmetricDivisionEvent = null;
+        
+        // and draws its own countdowns
+        clone._mutationCountdown = 0;
+        clone._tsgCountdown = 0;
+        clone._tacCountdown = 0;
+        
         return clone;
     }
         
@@ -0,0 +1,187 @@
+package stemsim.object;
+
+
+import stemsim.simulation.*;
+
+
+/**
+ * The probability that a stem cell division hits a TSG somewhere in the
+ * cell's transient amplifying compartment, 1 - (1 - p)^n for a TSG mutation
+ * rate p and n transient cells.
+ *
+ * Both inputs take few distinct values: n follows from the number of stem
+ * cells in the crypt, and p is the base TSG rate times a power of the mutator
+ * multiplier, capped.  The table keeps a row per rate seen, indexed by the
+ * number of stem cells, and fills it as values are asked for.  With
+ * simulation.debug.checktables set, every lookup is checked against the
+ * formula.
+ *
+ */
+public class TACProbabilityTable
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Create the table of the given simulation.
+     *
+     */
+    static public TACProbabilityTable create(Simulation $simulation)
+    {
+        return new TACProbabilityTable($simulation.getConfig());
+    }
+
+
+    /**
+     * Return the probability of a hit among the given number of transient
+     * cells.
+     *
+     */
+    static double compute(double $pmut, double $cells)
+    {
+        return 1 - (Math.pow((1 - $pmut), $cells));
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** the config the table was built for */
+    SimulationConfig _config;
+
+    /** TSG mutation rates seen so far */
+    double[] _rates = new double[4];
+
+    /** probabilities by rate and number of stem cells, NaN if not filled */
+    double[][] _probs = new double[4][];
+
+    /** number of rates seen */
+    int _nRates = 0;
+
+    /** check every lookup against the formula */
+    boolean _check;
+
+
+    TACProbabilityTable(SimulationConfig $config)
+    {
+        _config = $config;
+        _check = $config.isCheckingTables();
+    }
+
+
+    /**
+     * Return the number of transient cells of each stem cell in a crypt of
+     * the given number of stem cells -- each has an equal, whole share.
+     *
+     */
+    public double getTransientCells(int $numStemCells)
+    {
+        return _config.getTACSize() / $numStemCells;
+    }
+
+
+    /**
+     * Return the probability that a division of a stem cell with the given
+     * TSG mutation rate, in a crypt of the given number of stem cells, hits
+     * a TSG in its transient cells.
+     *
+     */
+    public double getProbability(double $pmut, int $numStemCells)
+    {
+        double[] row = row($pmut, $numStemCells);
+        double p = row[$numStemCells];
+        if (p != p)
+        {
+            p = compute($pmut, getTransientCells($numStemCells));
+            row[$numStemCells] = p;
+        }
+        else if (_check)
+        {
+            double q = compute($pmut, getTransientCells($numStemCells));
+            if (p != q)
+            {
+                throw new IllegalStateException(
+                    "TAC probability table: " + p + " != " + q);
+            }
+        }
+        return p;
+    }
+
+
+    /**
+     * Return the number of rates the table has rows for.
+     *
+     */
+    public int getRates()
+    {
+        return _nRates;
+    }
+
+
+    /**
+     * Return the config this table was built for.
+     *
+     */
+    public SimulationConfig getConfig()
+    {
+        return _config;
+    }
+
+
+    /**
+     * Return the row of the given rate, long enough for the given number of
+     * stem cells.
+     *
+     */
+    double[] row(double $pmut, int $numStemCells)
+    {
+        int r = 0;
+        while (r < _nRates && _rates[r] != $pmut)
+        {
+            r++;
+        }
+
+        if (r == _nRates)
+        {
+            if (_nRates == _rates.length)
+            {
+                double[] rates = new double[_nRates * 2];
+                System.arraycopy(_rates, 0, rates, 0, _nRates);
+                _rates = rates;
+
+                double[][] probs = new double[_nRates * 2][];
+                System.arraycopy(_probs, 0, probs, 0, _nRates);
+                _probs = probs;
+            }
+            _rates[r] = $pmut;
+            _probs[r] = empty(new double[0],
+                              Math.max(2 * $numStemCells, 16));
+            _nRates++;
+        }
+
+        if ($numStemCells >= _probs[r].length)
+        {
+            _probs[r] = empty(_probs[r], 2 * $numStemCells);
+        }
+        return _probs[r];
+    }
+
+
+    /**
+     * Return a copy of the given row grown to the given length, the new
+     * entries not filled.
+     *
+     */
+    static double[] empty(double[] $row, int $length)
+    {
+        double[] row = new double[$length];
+        System.arraycopy($row, 0, row, 0, $row.length);
+        for (int i=$row.length; i<$length; i++)
+        {
+            row[i] = Double.NaN;
+        }
+        return row;
+    }
+}
@@ -48,8 +48,7 @@ public class Tissue extends SimulationObject
      */
     public static Tissue create(Simulation $simulation)
     {
-        SimulationParams params = $simulation.getParams();
-        boolean wraparound = params.getBoolean("tissue.wraparound");
+        boolean wraparound = $simulation.getConfig().isWraparound();
 
         Tissue tissue = createFlatTissue($simulation);
         
@@ -80,7 +79,8 @@ public class Tissue extends SimulationObject
     
     /**
      * Create the initial events for this tissue -- the apoptosis and
-     * division events for the stem cells.
+     * division events for the stem cells, then the first leap of a crypt
+     * that can leap, which takes its cells' floors from their events.
      * 
      */
     static void createInitialEvents(Tissue $tissue)
@@ -96,6 +96,8 @@ public class Tissue extends SimulationObject
                     SymmetricDivisionEvent.generate(0.0, cell);
                     AsymmetricDivisionEvent.generate(0.0, cell);
                 }
+                
+                CryptLeapEvent.enter(tc, 0.0);
             }
         }
         
@@ -108,9 +110,9 @@ public class Tissue extends SimulationObject
      */
     static Tissue createFlatTissue(Simulation $simulation)
     {
-        SimulationParams params = $simulation.getParams();
-        int numrows = params.getInt("tissue.rows");
-        int numcols = params.getInt("tissue.cols");
+        SimulationConfig config = $simulation.getConfig();
+        int numrows = config.getRows();
+        int numcols = config.getCols();
 
         if (numrows < 1)
         {
@@ -414,6 +416,9 @@ public class Tissue extends SimulationObject
     /** TSGHit book-keeping */
     boolean _knockoutStem = false;
     
+    /** Number of living crypts, kept up to date by the crypts */
+    int _numLiving = 0;
+    
     
     /** 
      * Constructor 
@@ -423,6 +428,11 @@ public class Tissue extends SimulationObject
     {
         super($simulation);
         _rows = $rows;
+        
+        for (Crypt c : getCrypts())
+        {
+            if (c.isAlive()) _numLiving++;
+        }
     }
     
     
@@ -471,9 +481,9 @@ public class Tissue extends SimulationObject
 	public List<Crypt> getCrypts()
 	{
 		Simulation sim = getSimulation();
-        SimulationParams params = sim.getParams();
-        int numrows = params.getInt("tissue.rows");
-        int numcols = params.getInt("tissue.cols");
+        SimulationConfig config = sim.getConfig();
+        int numrows = config.getRows();
+        int numcols = config.getCols();
 		
 		List<Crypt> crypts = new ArrayList<Crypt>(numrows * numcols);
 		int numRows = numRows();
@@ -505,39 +515,50 @@ public class Tissue extends SimulationObject
      */
     public boolean isAlive()
     {
-        for (int i=0; i<getRows().size(); i++)
-        {
-            // This is equivalent to a foreach command to get every "tc" 
-            // from the Row
-            for (Crypt tc : getRow(i)) 
-            {
-                if (tc.isAlive()) return true;
-            }
-        }
-        return false;
+        return _numLiving > 0;
+    }
+    
+    
+    /**
+     * Return the number of living crypts.
+     *
+     */
+    public int getLivingCount()
+    {
+        return _numLiving;
+    }
+    
+    
+    /**
+     * Note that one of our crypts died or came back to life.
+     *
+     */
+    void cryptChanged(Crypt $crypt, boolean $alive)
+    {
+        _numLiving += $alive ? 1 : -1;
     }
 
     
     // This could be made more efficient by only storing when a second TSG hit 
     // happens in a TAC (just the first time) and in a stem cell (first time).
-    public void recordTSGCell(StemCell $cell)
+    public void recordTSGCell(StemCell $cell, double $time)
     {
         // only record if we've had at least 1 stem hit and haven't already
         // recorded a 2nd hit
         if ($cell.getTSGHits() < 2 || _knockoutStem) return;
         
-        _tsgHits.add(new TSGHit($cell, TSGLocation.STEM));
+        _tsgHits.add(new TSGHit($cell, TSGLocation.STEM, $time));
         _knockoutStem = true;
     }
     
     
-    public void recordTSGTAC(StemCell $cell)
+    public void recordTSGTAC(StemCell $cell, double $time)
     {
         // only record if we've had at least 1 stem hit and haven't already
         // recorded a 2nd hit
         if ($cell.getTSGHits() < 1 || _knockoutTAC) return;
         
-        _tsgHits.add(new TSGHit($cell, TSGLocation.TAC));
+        _tsgHits.add(new TSGHit($cell, TSGLocation.TAC, $time));
         _knockoutTAC = true;
     }
     
@@ -779,10 +800,10 @@ public class Tissue extends SimulationObject
         TSGLocation _location;
         double _time = 0.0;
         
-        public TSGHit(StemCell $cell, TSGLocation $loc)
+        public TSGHit(StemCell $cell, TSGLocation $loc, double $time)
         {
             _location = $loc;
-            _time = $cell.getSimulation().getCurrentEvent().getTime();
+            _time = $time;
             
             try
             {
@@ -0,0 +1,99 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+import stemsim.event.*;
+
+
+/**
+ * Base class for the event queue implementations.
+ *
+ */
+public abstract class AbstractEventQueue implements EventQueue
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Bail out on an event that can never be ordered.
+     *
+     */
+    static void checkTime(SimulationEvent $event)
+    {
+        if (Double.isNaN($event.getTime()))
+        {
+            System.err.println("NAN: " + $event);
+            System.exit(1);
+        }
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** Sequence number given to the next event offered */
+    long _sequence = 0;
+
+
+    /**
+     * Check an event about to be queued and give it the next sequence
+     * number, so that events at equal times come out in the order offered.
+     *
+     */
+    void stamp(SimulationEvent $event)
+    {
+        checkTime($event);
+        $event.setSequence(_sequence++);
+    }
+
+
+    /**
+     * Move an event to a new time by taking it out and offering it again.
+     * Implementations that can re-key an event in place override this.
+     *
+     */
+    public boolean reschedule(SimulationEvent $event, double $time)
+    {
+        remove($event);
+        $event.setTime($time);
+        return offer($event);
+    }
+
+
+    /**
+     * Open a batch of updates.  Queues that keep no deferred work apply every
+     * update at once, so batches are no-ops for them.
+     *
+     */
+    public void beginBatch()
+    {
+    }
+
+
+    /**
+     * Close a batch of updates.
+     *
+     */
+    public void commitBatch()
+    {
+    }
+
+
+    /**
+     * Return the queued events in no particular order.
+     *
+     */
+    abstract List<SimulationEvent> events();
+
+
+    /**
+     * Return string representation of the queue.
+     *
+     */
+    public String toString()
+    {
+        return events().toString();
+    }
+}
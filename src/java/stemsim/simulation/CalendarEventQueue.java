@@ -0,0 +1,318 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+import stemsim.event.*;
+
+
+/**
+ * A calendar queue (R. Brown, CACM 31(10), 1988).
+ *
+ * Events are hashed by time into a ring of day buckets, each a sorted list;
+ * a year is one trip around the ring.  Dequeue walks the ring from the
+ * current day looking for an event due in that day.  The number of buckets
+ * follows the queue size and the day width is re-estimated from the earliest
+ * events whenever the ring is resized, which gives O(1) amortised enqueue and
+ * dequeue when hold times are spread evenly -- as they are for the
+ * exponential waits and fixed floors of this model.
+ *
+ */
+public class CalendarEventQueue extends AbstractEventQueue
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** the ring never shrinks below this many buckets */
+    static final int MIN_BUCKETS = 2;
+
+    /** number of earliest events sampled to estimate the day width */
+    static final int SAMPLE_SIZE = 25;
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** The ring of day buckets, each sorted latest first */
+    EventBucket[] _buckets = newBuckets(MIN_BUCKETS);
+
+    /** The width of a day */
+    double _width = 1.0;
+
+    /** The day, counted from time zero, dequeue searches from */
+    long _day = 0;
+
+    /** Number of events in the queue */
+    int _size = 0;
+
+
+    /**
+     * Poll for the next event.
+     *
+     */
+    public SimulationEvent poll()
+    {
+        if (_size == 0)
+        {
+            return null;
+        }
+
+        SimulationEvent e = _buckets[findFirst()].removeLast();
+        _size--;
+        if (_size < _buckets.length / 2 && _buckets.length > MIN_BUCKETS)
+        {
+            resize(_buckets.length / 2);
+        }
+
+        return e;
+    }
+
+
+    /**
+     * Peek at the next event.
+     *
+     */
+    public SimulationEvent peek()
+    {
+        return (_size == 0) ? null : _buckets[findFirst()].last();
+    }
+
+
+    /**
+     * Add an event to this queue.
+     *
+     */
+    public boolean offer(SimulationEvent $event)
+    {
+        // an event can only be in the queue once
+        remove($event);
+        stamp($event);
+
+        insert($event);
+        _size++;
+        if (_size > 2 * _buckets.length)
+        {
+            resize(2 * _buckets.length);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Remove an event from the queue.
+     *
+     */
+    public boolean remove(SimulationEvent $event)
+    {
+        int b = $event.getQueueBucket();
+        if (b < 0 || b >= _buckets.length || !_buckets[b].removeOrdered($event))
+        {
+            return false;
+        }
+
+        _size--;
+        return true;
+    }
+
+
+    /**
+     * Return true if the given event is currently in this queue.
+     *
+     */
+    public boolean contains(SimulationEvent $event)
+    {
+        int b = $event.getQueueBucket();
+        return b >= 0 && b < _buckets.length && _buckets[b].indexOf($event) >= 0;
+    }
+
+
+    /**
+     * Return the size of the queue.
+     *
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+
+    /**
+     * Return the queued events in bucket order.
+     *
+     */
+    List<SimulationEvent> events()
+    {
+        List<SimulationEvent> events = new ArrayList<SimulationEvent>(_size);
+        for (int i=0; i<_buckets.length; i++)
+        {
+            _buckets[i].copyTo(events);
+        }
+        return events;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Calendar maintenance
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the day of the given time.
+     *
+     */
+    long day(double $time)
+    {
+        return (long)Math.floor($time / _width);
+    }
+
+
+    /**
+     * Return the bucket of the given day.
+     *
+     */
+    int bucket(long $day)
+    {
+        int b = (int)($day % _buckets.length);
+        return (b < 0) ? b + _buckets.length : b;
+    }
+
+
+    /**
+     * File an event into its day bucket.
+     *
+     */
+    void insert(SimulationEvent $event)
+    {
+        long day = day($event.getTime());
+        if (day < _day)
+        {
+            _day = day;
+        }
+
+        int b = bucket(day);
+        _buckets[b].insertSorted($event, b);
+    }
+
+
+    /**
+     * Return the bucket holding the earliest event, advancing the current
+     * day to it.  The queue must not be empty.
+     *
+     */
+    int findFirst()
+    {
+        // walk one year of the ring from the current day
+        long day = _day;
+        for (int i=0; i<_buckets.length; i++, day++)
+        {
+            int b = bucket(day);
+            EventBucket bucket = _buckets[b];
+            if (!bucket.isEmpty() && day(bucket.last().getTime()) <= day)
+            {
+                _day = day;
+                return b;
+            }
+        }
+
+        // nothing due this year -- search the bucket heads directly
+        int first = -1;
+        for (int b=0; b<_buckets.length; b++)
+        {
+            EventBucket bucket = _buckets[b];
+            if (!bucket.isEmpty()
+                && (first < 0
+                    || EventBucket.before(bucket.last(), _buckets[first].last())))
+            {
+                first = b;
+            }
+        }
+        _day = day(_buckets[first].last().getTime());
+
+        return first;
+    }
+
+
+    /**
+     * Rebuild the ring with the given number of buckets, estimating a new
+     * day width from the separation of the earliest events.
+     *
+     */
+    void resize(int $buckets)
+    {
+        // take the earliest events off the calendar
+        int n = Math.min(_size, SAMPLE_SIZE);
+        SimulationEvent[] sample = new SimulationEvent[n];
+        for (int i=0; i<n; i++)
+        {
+            sample[i] = _buckets[findFirst()].removeLast();
+        }
+
+        // events parked at infinity, as a rescale to rate 0 leaves them,
+        // come last and have no separation to give
+        int finite = n;
+        while (finite > 0 && Double.isInfinite(sample[finite-1].getTime()))
+        {
+            finite--;
+        }
+
+        // average separation, ignoring outliers of more than twice the mean
+        if (finite > 1)
+        {
+            double mean = (sample[finite-1].getTime() - sample[0].getTime())
+                / (finite-1);
+            double sum = 0.0;
+            int count = 0;
+            for (int i=1; i<finite; i++)
+            {
+                double sep = sample[i].getTime() - sample[i-1].getTime();
+                if (sep <= 2.0 * mean)
+                {
+                    sum += sep;
+                    count++;
+                }
+            }
+            double width = (count > 0) ? 3.0 * sum / count : 0.0;
+            if (width > 0.0)
+            {
+                _width = width;
+            }
+        }
+
+        // refile everything
+        EventBucket[] old = _buckets;
+        _buckets = newBuckets($buckets);
+        _day = Long.MAX_VALUE;
+        for (int i=0; i<n; i++)
+        {
+            insert(sample[i]);
+        }
+        for (int b=0; b<old.length; b++)
+        {
+            EventBucket bucket = old[b];
+            for (int i=bucket.size()-1; i>=0; i--)
+            {
+                insert(bucket.get(i));
+            }
+        }
+        if (_size == 0)
+        {
+            _day = 0;
+        }
+    }
+
+
+    /**
+     * Return an array of empty buckets.
+     *
+     */
+    static EventBucket[] newBuckets(int $n)
+    {
+        EventBucket[] buckets = new EventBucket[$n];
+        for (int i=0; i<$n; i++)
+        {
+            buckets[i] = new EventBucket();
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,466 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+
+import lib.Probability;
+import lib.RandomSource;
+
+import stemsim.event.*;
+
+
+/**
+ * The composition-rejection stochastic simulation algorithm (A. Slepoy,
+ * A. P. Thompson and S. J. Plimpton, J. Chem. Phys. 128, 2008) behind the
+ * event queue interface, selected by simulation.engine=cr-ssa.
+ *
+ * The queue engine keeps the drawn time of every cell event.  This one keeps
+ * only their propensities: the next event is chosen among all of them with
+ * probability proportional to its propensity, after an exponential wait at
+ * their total.  Propensities are grouped by their power of two; a group is
+ * picked by its share of the total, then an event within it by rejection
+ * against the group's upper bound, which accepts at least every other try.
+ * Selection is O(1) expected whatever the size of the tissue, and a change
+ * of rate is an O(1) update of its group.
+ *
+ * A cell event is a reaction if it knows the rate it was drawn at; its
+ * propensity is that rate.  This is exact only for the model's exponential
+ * waits: a wait of a floor plus an exponential, the pushing back of a
+ * symmetric division that falls within the floor of an asymmetric one, and
+ * the Gamma wait of a thinned asymmetric division have no propensity, so
+ * SimulationConfig refuses this engine with non-zero event floors or with
+ * thinning.  A reaction has no time of its own until it is chosen; while it
+ * waits its time reads infinite.  Events of no rate (simulation start and
+ * end, crypt bifurcation) keep their times in a small heap and come out
+ * when the clock reaches them.
+ *
+ * A reaction records its group in its queue bucket and its slot in that
+ * group in its queue index.
+ *
+ */
+public class CompositionRejectionEventQueue extends AbstractEventQueue
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** queue bucket of the events kept by time */
+    static final int TIMED = 0;
+
+    /** queue bucket of a group is its binary exponent plus this */
+    static final int GROUP_BASE = 1100;
+
+    /** number of group slots, covering every exponent of a double */
+    static final int GROUP_SLOTS = GROUP_BASE + Double.MAX_EXPONENT + 2;
+
+
+    /**
+     * The reactions whose propensities share a binary exponent, so lie in
+     * [2^e, 2^(e+1)).
+     *
+     */
+    static class Group
+    {
+        /** reactions of this group */
+        SimulationEvent[] _events = new SimulationEvent[16];
+
+        /** propensity of each reaction */
+        double[] _propensities = new double[16];
+
+        /** number of reactions */
+        int _size = 0;
+
+        /** sum of the propensities */
+        double _sum = 0.0;
+
+        /** upper bound of the propensities, 2^(e+1) */
+        double _bound;
+
+
+        Group(int $exponent)
+        {
+            _bound = Math.scalb(1.0, $exponent + 1);
+        }
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** Generator the waits and choices are drawn from */
+    RandomSource _random;
+
+    /** Events of no rate, by time */
+    IndexedHeapEventQueue _timed = new IndexedHeapEventQueue();
+
+    /** Group of each binary exponent, null until needed */
+    Group[] _groups = new Group[GROUP_SLOTS];
+
+    /** Queue buckets of the non-empty groups */
+    int[] _active = new int[16];
+
+    /** Number of non-empty groups */
+    int _nActive = 0;
+
+    /** Number of reactions in all groups */
+    int _nReactions = 0;
+
+    /** Simulation time of the last event chosen */
+    double _clock = 0.0;
+
+    /** Event chosen by peek(), null if none is waiting */
+    SimulationEvent _next = null;
+
+    /** Clock at the event chosen by peek() */
+    double _nextClock;
+
+
+    /**
+     * Constructor.
+     *
+     */
+    public CompositionRejectionEventQueue(RandomSource $random)
+    {
+        _random = $random;
+    }
+
+
+    /**
+     * Poll for the next event.
+     *
+     */
+    public SimulationEvent poll()
+    {
+        SimulationEvent e = peek();
+        if (e == null)
+        {
+            return null;
+        }
+
+        _next = null;
+        _clock = _nextClock;
+        if (e.getQueueBucket() == TIMED)
+        {
+            _timed.remove(e);
+        }
+        else
+        {
+            removeReaction(e);
+            e.setTime(_clock);
+        }
+        e.setQueueBucket(-1);
+
+        return e;
+    }
+
+
+    /**
+     * Choose the next event, without removing it.  The choice holds until
+     * the queue changes.
+     *
+     */
+    public SimulationEvent peek()
+    {
+        if (_next != null)
+        {
+            return _next;
+        }
+
+        SimulationEvent timed = _timed.peek();
+
+        double total = 0.0;
+        for (int i=0; i<_nActive; i++)
+        {
+            total += _groups[_active[i]]._sum;
+        }
+
+        if (!(total > 0.0))
+        {
+            if (timed != null)
+            {
+                _next = timed;
+                _nextClock = Math.max(_clock, timed.getTime());
+            }
+            return _next;
+        }
+
+        // a timed event comes first if it falls within the wait; the wait is
+        // memoryless, so nothing is lost by drawing it again afterwards
+        double clock = _clock
+            + Probability.RandomFromExponential(total, _random);
+        if (timed != null && timed.getTime() <= clock)
+        {
+            _next = timed;
+            _nextClock = Math.max(_clock, timed.getTime());
+            return _next;
+        }
+
+        // composition: a group by its share of the total
+        double u = _random.randomDouble() * total;
+        Group group = null;
+        for (int i=0; i<_nActive; i++)
+        {
+            group = _groups[_active[i]];
+            u -= group._sum;
+            if (u < 0.0)
+            {
+                break;
+            }
+        }
+
+        // rejection: a reaction of the group against its upper bound
+        int slot;
+        do
+        {
+            slot = (int)(_random.randomDouble() * group._size);
+        }
+        while (_random.randomDouble() * group._bound
+               >= group._propensities[slot]);
+
+        _next = group._events[slot];
+        _nextClock = clock;
+        return _next;
+    }
+
+
+    /**
+     * Add an event to this queue, or update its propensity if it is queued.
+     *
+     */
+    public boolean offer(SimulationEvent $event)
+    {
+        _next = null;
+        remove($event);
+        stamp($event);
+
+        double rate = $event.getRate();
+        if (rate > 0.0 && rate < Double.POSITIVE_INFINITY)
+        {
+            addReaction($event);
+        }
+        else
+        {
+            $event.setQueueBucket(TIMED);
+            _timed.offer($event);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Move an event to a new time -- which a reaction ignores, and only
+     * takes up its rate.
+     *
+     */
+    public boolean reschedule(SimulationEvent $event, double $time)
+    {
+        $event.setTime($time);
+        return offer($event);
+    }
+
+
+    /**
+     * Remove an event from the queue.
+     *
+     */
+    public boolean remove(SimulationEvent $event)
+    {
+        if (!contains($event))
+        {
+            return false;
+        }
+
+        _next = null;
+        if ($event.getQueueBucket() == TIMED)
+        {
+            _timed.remove($event);
+        }
+        else
+        {
+            removeReaction($event);
+        }
+        $event.setQueueBucket(-1);
+
+        return true;
+    }
+
+
+    /**
+     * Return true if the given event is currently in this queue.
+     *
+     */
+    public boolean contains(SimulationEvent $event)
+    {
+        int b = $event.getQueueBucket();
+        if (b == TIMED)
+        {
+            return _timed.contains($event);
+        }
+        if (b <= TIMED || b >= GROUP_SLOTS || _groups[b] == null)
+        {
+            return false;
+        }
+
+        Group group = _groups[b];
+        int i = $event.getQueueIndex();
+        return i >= 0 && i < group._size && group._events[i] == $event;
+    }
+
+
+    /**
+     * Return the size of the queue.
+     *
+     */
+    public int size()
+    {
+        return _timed.size() + _nReactions;
+    }
+
+
+    /**
+     * Return the simulation time of the last event polled.
+     *
+     */
+    public double getClock()
+    {
+        return _clock;
+    }
+
+
+    /**
+     * Return the number of non-empty propensity groups.
+     *
+     */
+    public int getGroups()
+    {
+        return _nActive;
+    }
+
+
+    /**
+     * Return the queued events, the timed ones first.
+     *
+     */
+    List<SimulationEvent> events()
+    {
+        List<SimulationEvent> all = new ArrayList<SimulationEvent>(size());
+        all.addAll(_timed.events());
+        for (int i=0; i<_nActive; i++)
+        {
+            Group group = _groups[_active[i]];
+            for (int j=0; j<group._size; j++)
+            {
+                all.add(group._events[j]);
+            }
+        }
+        return all;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Group maintenance
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Add a reaction to the group of its propensity.
+     *
+     */
+    void addReaction(SimulationEvent $event)
+    {
+        double a = $event.getRate();
+        int b = Math.getExponent(a) + GROUP_BASE;
+
+        Group group = _groups[b];
+        if (group == null)
+        {
+            group = new Group(b - GROUP_BASE);
+            _groups[b] = group;
+        }
+
+        if (group._size == 0)
+        {
+            activate(b);
+        }
+        else if (group._size == group._events.length)
+        {
+            int n = group._size;
+            SimulationEvent[] events = new SimulationEvent[n * 2];
+            System.arraycopy(group._events, 0, events, 0, n);
+            group._events = events;
+
+            double[] propensities = new double[n * 2];
+            System.arraycopy(group._propensities, 0, propensities, 0, n);
+            group._propensities = propensities;
+        }
+
+        int i = group._size++;
+        group._events[i] = $event;
+        group._propensities[i] = a;
+        group._sum += a;
+        _nReactions++;
+
+        $event.setQueueBucket(b);
+        $event.setQueueIndex(i);
+
+        // a reaction waits without a time of its own
+        $event.setTime(Double.POSITIVE_INFINITY);
+    }
+
+
+    /**
+     * Take a reaction out of its group, moving the group's last reaction
+     * into its slot.
+     *
+     */
+    void removeReaction(SimulationEvent $event)
+    {
+        int b = $event.getQueueBucket();
+        Group group = _groups[b];
+        int i = $event.getQueueIndex();
+        int last = --group._size;
+        _nReactions--;
+
+        if (last == 0)
+        {
+            // start the sum afresh rather than carry its rounding along
+            group._sum = 0.0;
+            deactivate(b);
+        }
+        else
+        {
+            group._sum -= group._propensities[i];
+            group._events[i] = group._events[last];
+            group._propensities[i] = group._propensities[last];
+            group._events[i].setQueueIndex(i);
+        }
+        group._events[last] = null;
+        $event.setQueueIndex(-1);
+    }
+
+
+    void activate(int $bucket)
+    {
+        if (_nActive == _active.length)
+        {
+            int[] active = new int[_nActive * 2];
+            System.arraycopy(_active, 0, active, 0, _nActive);
+            _active = active;
+        }
+        _active[_nActive++] = $bucket;
+    }
+
+
+    void deactivate(int $bucket)
+    {
+        for (int i=0; i<_nActive; i++)
+        {
+            if (_active[i] == $bucket)
+            {
+                _active[i] = _active[--_nActive];
+                return;
+            }
+        }
+    }
+}
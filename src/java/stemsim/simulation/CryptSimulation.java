@@ -71,6 +71,9 @@ public class CryptSimulation extends Simulation
         pw.println("<cryptsim>");
         pw.println();
         
+        pw.println("<seed>" + getSeed() + "</seed>");
+        pw.println();
+        
         pw.println("<lastevent>");
         pw.println(getLastEvent().toXML());
         pw.println("</lastevent>");
@@ -0,0 +1,290 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+import stemsim.event.*;
+
+
+/**
+ * A growable list of events used as a bucket by the calendar and ladder
+ * queues.  A bucket is either unsorted, in which case each event records its
+ * slot so it can be swapped out in O(1), or sorted latest first so the
+ * earliest event can be taken off the end.
+ *
+ */
+class EventBucket
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** Orders events latest first */
+    static final Comparator<SimulationEvent> LATEST_FIRST =
+        Collections.reverseOrder(new SimulationEvent.TimeComparator());
+
+
+    /**
+     * Return true if event $e1 comes out of the queue before event $e2.
+     *
+     */
+    static boolean before(SimulationEvent $e1, SimulationEvent $e2)
+    {
+        return TimeHeap.before($e1.getTime(), $e1.getSequence(),
+                               $e2.getTime(), $e2.getSequence());
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** The events */
+    SimulationEvent[] _events = new SimulationEvent[4];
+
+    /** Number of events in the bucket */
+    int _size = 0;
+
+
+    /**
+     * Append an event to an unsorted bucket and tag it with the bucket code.
+     *
+     */
+    void add(SimulationEvent $event, int $code)
+    {
+        ensureCapacity(_size + 1);
+        _events[_size] = $event;
+        $event.setQueueIndex(_size);
+        $event.setQueueBucket($code);
+        _size++;
+    }
+
+
+    /**
+     * Insert an event into a sorted bucket.
+     *
+     */
+    void insertSorted(SimulationEvent $event, int $code)
+    {
+        int lo = 0;
+        int hi = _size;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (before($event, _events[mid]))
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+
+        ensureCapacity(_size + 1);
+        System.arraycopy(_events, lo, _events, lo + 1, _size - lo);
+        _events[lo] = $event;
+        $event.setQueueIndex(0);
+        $event.setQueueBucket($code);
+        _size++;
+    }
+
+
+    /**
+     * Swap the event at slot $i of an unsorted bucket out for the last one.
+     *
+     */
+    void removeAt(int $i)
+    {
+        SimulationEvent removed = _events[$i];
+        SimulationEvent last = _events[--_size];
+        _events[_size] = null;
+        if ($i != _size)
+        {
+            _events[$i] = last;
+            last.setQueueIndex($i);
+        }
+        untag(removed);
+    }
+
+
+    /**
+     * Remove an event from a sorted bucket, keeping the order.  Return false
+     * if the event is not in the bucket.
+     *
+     */
+    boolean removeOrdered(SimulationEvent $event)
+    {
+        int i = indexOf($event);
+        if (i < 0)
+        {
+            return false;
+        }
+
+        System.arraycopy(_events, i + 1, _events, i, _size - i - 1);
+        _events[--_size] = null;
+        untag($event);
+        return true;
+    }
+
+
+    /**
+     * Return the slot of the given event in this bucket, -1 if absent.
+     *
+     */
+    int indexOf(SimulationEvent $event)
+    {
+        for (int i=_size-1; i>=0; i--)
+        {
+            if (_events[i] == $event)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Remove and return the last event, the earliest of a sorted bucket.
+     *
+     */
+    SimulationEvent removeLast()
+    {
+        SimulationEvent e = _events[--_size];
+        _events[_size] = null;
+        untag(e);
+        return e;
+    }
+
+
+    /**
+     * Return the last event, the earliest of a sorted bucket.
+     *
+     */
+    SimulationEvent last()
+    {
+        return _events[_size - 1];
+    }
+
+
+    /**
+     * Return true if the given event is at its recorded slot in this
+     * unsorted bucket.
+     *
+     */
+    boolean holds(SimulationEvent $event)
+    {
+        int i = $event.getQueueIndex();
+        return i >= 0 && i < _size && _events[i] == $event;
+    }
+
+
+    /**
+     * Sort the bucket latest first and tag its events with the bucket code.
+     *
+     */
+    void sort(int $code)
+    {
+        Arrays.sort(_events, 0, _size, LATEST_FIRST);
+        for (int i=0; i<_size; i++)
+        {
+            _events[i].setQueueIndex(0);
+            _events[i].setQueueBucket($code);
+        }
+    }
+
+
+    /**
+     * Move all events of this bucket into the given one, leaving this bucket
+     * empty.  The events are left untagged.
+     *
+     */
+    void drainTo(EventBucket $bucket)
+    {
+        $bucket.ensureCapacity($bucket._size + _size);
+        System.arraycopy(_events, 0, $bucket._events, $bucket._size, _size);
+        $bucket._size += _size;
+        clear();
+    }
+
+
+    /**
+     * Add the events of this bucket to the given collection.
+     *
+     */
+    void copyTo(Collection<SimulationEvent> $events)
+    {
+        for (int i=0; i<_size; i++)
+        {
+            $events.add(_events[i]);
+        }
+    }
+
+
+    /**
+     * Empty this bucket without untagging its events.
+     *
+     */
+    void clear()
+    {
+        Arrays.fill(_events, 0, _size, null);
+        _size = 0;
+    }
+
+
+    /**
+     * Return the number of events in the bucket.
+     *
+     */
+    int size()
+    {
+        return _size;
+    }
+
+
+    /**
+     * Return true if the bucket is empty.
+     *
+     */
+    boolean isEmpty()
+    {
+        return _size == 0;
+    }
+
+
+    /**
+     * Return the event at slot $i.
+     *
+     */
+    SimulationEvent get(int $i)
+    {
+        return _events[$i];
+    }
+
+
+    /**
+     * Grow the event array to hold at least $n events.
+     *
+     */
+    void ensureCapacity(int $n)
+    {
+        if ($n > _events.length)
+        {
+            int len = Math.max($n, _events.length * 2);
+            SimulationEvent[] grown = new SimulationEvent[len];
+            System.arraycopy(_events, 0, grown, 0, _size);
+            _events = grown;
+        }
+    }
+
+
+    /**
+     * Mark an event as no longer queued.
+     *
+     */
+    static void untag(SimulationEvent $event)
+    {
+        $event.setQueueIndex(-1);
+        $event.setQueueBucket(-1);
+    }
+}
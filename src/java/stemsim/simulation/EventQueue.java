@@ -1,91 +1,82 @@
 package stemsim.simulation;
 
 
-import java.util.*;
 import stemsim.event.*;
 
 
 /**
- * An event queue for a simultion, built around the Java PriorityQueue object.
+ * An event queue for a simultion.  Events come out in time order; an event
+ * is held at most once, so offering a queued event again moves it to its new
+ * time.
+ *
+ * Implementations are chosen by EventQueueFactory from the simulation
+ * parameters.
  *
  */
-public class EventQueue
+public interface EventQueue
 {
-    ////////////////////////////////////////////////////////////////////////////
-    // Instance Level
-    ////////////////////////////////////////////////////////////////////////////
-    
-    /** Comparator to order events by time */
-    Comparator _eComp = new SimulationEvent.TimeComparator();
-    
-    /** PriorityQueue containing all events */
-    PriorityQueue<SimulationEvent> _eventQueue = 
-        new PriorityQueue<SimulationEvent>(1000, _eComp);
-    
-    
     /**
-     * Poll for the next event.
+     * Remove and return the next event, null if the queue is empty.
      *
      */
-    public SimulationEvent poll()
-    {
-        return _eventQueue.poll();
-    }
+    public SimulationEvent poll();
+
 
-    
     /**
-     * Peek at the next event.
+     * Return the next event without removing it, null if the queue is empty.
      *
      */
-    public SimulationEvent peek()
-    {
-        return _eventQueue.peek();
-    }
-    
-    
-    
+    public SimulationEvent peek();
+
+
     /**
      * Add an event to this queue.
      *
      */
-    public boolean offer(SimulationEvent $event)
-    {
-        if (Double.isNaN($event.getTime()))
-        {
-            System.err.println("NAN: " + $event);
-            System.exit(1);
-        }
-        
-        return _eventQueue.offer($event);
-    }
-    
-    
+    public boolean offer(SimulationEvent $event);
+
+
+    /**
+     * Move an event to a new time, earlier or later, in place.  An event
+     * that is not queued is queued at the new time.
+     *
+     */
+    public boolean reschedule(SimulationEvent $event, double $time);
+
+
+    /**
+     * Remove an event from the queue.  Return false if it was not queued.
+     *
+     */
+    public boolean remove(SimulationEvent $event);
+
+
     /**
-     * Remove an event from the queue.
+     * Return true if the given event is currently in this queue.
      *
      */
-    public boolean remove(SimulationEvent $event)
-    {
-        return _eventQueue.remove($event);
-    }
-    
-    
+    public boolean contains(SimulationEvent $event);
+
+
     /**
-     * Return the size of the queue.
-     * 
+     * Open a batch of updates.  Until the matching commitBatch() the queue
+     * may defer restoring its order, and restore it in one pass if the batch
+     * turns out large.  Batches nest; only the outermost commit applies them.
+     *
      */
-    public int size()
-    {
-        return _eventQueue.size();
-    }
-    
-    
+    public void beginBatch();
+
+
+    /**
+     * Close the batch opened by the matching beginBatch().
+     *
+     */
+    public void commitBatch();
+
+
     /**
-     * Return string representation of the queue.
+     * Return the number of events in the queue.
      *
      */
-    public String toString()
-    {
-        return _eventQueue.toString();
-    }
+    public int size();
 }
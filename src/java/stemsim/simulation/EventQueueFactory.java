@@ -0,0 +1,119 @@
+package stemsim.simulation;
+
+
+import lib.RandomSource;
+
+
+/**
+ * Creates the event queue configured in the simulation parameters.
+ *
+ * simulation.engine -- queue (default), events in the order of their drawn
+ *     times, cr-ssa, events chosen by their rates by a
+ *     CompositionRejectionEventQueue, or tau-leap, the queue engine with
+ *     crypts away from their thresholds advanced by CryptLeapEvents; the
+ *     eventqueue settings below apply to the queue and tau-leap engines
+ * simulation.eventqueue.impl -- heap, indexedheap (default), calendar,
+ *     ladder or hierarchical
+ * simulation.eventqueue.deletion -- eager (default) or lazy; lazy deletion
+ *     is only supported by the indexedheap queue
+ * simulation.eventqueue.compaction.ratio -- tombstone fraction of the heap
+ *     that triggers a compaction in lazy mode
+ *
+ */
+public class EventQueueFactory
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Create an event queue configured by the given simulation parameters,
+     * drawing from the given generator should it draw.
+     *
+     */
+    public static EventQueue create(SimulationParams $params,
+                                    RandomSource $random)
+    {
+        if ($params.isConfigured("simulation.engine"))
+        {
+            String engine = $params.getString("simulation.engine").trim();
+            if (engine.equals("cr-ssa"))
+            {
+                SimulationConfig.checkCompositionRejection($params);
+                return new CompositionRejectionEventQueue($random);
+            }
+            else if (!engine.equals("queue") && !engine.equals("tau-leap"))
+            {
+                throw new IllegalArgumentException(
+                                "Invalid simulation.engine");
+            }
+        }
+
+        String impl = "indexedheap";
+        if ($params.isConfigured("simulation.eventqueue.impl"))
+        {
+            impl = $params.getString("simulation.eventqueue.impl").trim();
+        }
+
+        boolean lazy = false;
+        if ($params.isConfigured("simulation.eventqueue.deletion"))
+        {
+            String deletion =
+                $params.getString("simulation.eventqueue.deletion").trim();
+            if (deletion.equals("lazy"))
+            {
+                lazy = true;
+            }
+            else if (!deletion.equals("eager"))
+            {
+                throw new IllegalArgumentException(
+                                "Invalid simulation.eventqueue.deletion");
+            }
+        }
+
+        double ratio = IndexedHeapEventQueue.DEFAULT_COMPACTION_RATIO;
+        if ($params.isConfigured("simulation.eventqueue.compaction.ratio"))
+        {
+            ratio = $params.getDouble("simulation.eventqueue.compaction.ratio");
+            if (!(ratio > 0.0 && ratio < 1.0))
+            {
+                throw new IllegalArgumentException(
+                                "Invalid simulation.eventqueue.compaction.ratio");
+            }
+        }
+
+        if (impl.equals("indexedheap"))
+        {
+            return new IndexedHeapEventQueue(lazy, ratio);
+        }
+
+        if (lazy)
+        {
+            throw new IllegalArgumentException(
+                "simulation.eventqueue.deletion=lazy requires " +
+                "simulation.eventqueue.impl=indexedheap");
+        }
+
+        if (impl.equals("heap"))
+        {
+            return new HeapEventQueue();
+        }
+        else if (impl.equals("calendar"))
+        {
+            return new CalendarEventQueue();
+        }
+        else if (impl.equals("ladder"))
+        {
+            return new LadderEventQueue();
+        }
+        else if (impl.equals("hierarchical"))
+        {
+            return new HierarchicalEventQueue();
+        }
+        else
+        {
+            throw new IllegalArgumentException(
+                                "unrecognized simulation.eventqueue.impl");
+        }
+    }
+}
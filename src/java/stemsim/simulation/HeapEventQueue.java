@@ -0,0 +1,112 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+import stemsim.event.*;
+
+
+/**
+ * An event queue built around the Java PriorityQueue object.  Removal of an
+ * arbitrary event is a linear scan.  A queued event has its queue index set
+ * to 0, so offering an event that is not queued -- the common case -- skips
+ * the scan, and contains() is a flag test.  As with the other queues, an
+ * event is held by one queue at a time.
+ *
+ */
+public class HeapEventQueue extends AbstractEventQueue
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+    
+    /** Comparator to order events by time */
+    Comparator<SimulationEvent> _eComp = new SimulationEvent.TimeComparator();
+    
+    /** PriorityQueue containing all events */
+    PriorityQueue<SimulationEvent> _eventQueue = 
+        new PriorityQueue<SimulationEvent>(1000, _eComp);
+    
+    
+    /**
+     * Poll for the next event.
+     *
+     */
+    public SimulationEvent poll()
+    {
+        SimulationEvent e = _eventQueue.poll();
+        if (e != null)
+        {
+            e.setQueueIndex(-1);
+        }
+        return e;
+    }
+
+    
+    /**
+     * Peek at the next event.
+     *
+     */
+    public SimulationEvent peek()
+    {
+        return _eventQueue.peek();
+    }
+    
+    
+    /**
+     * Add an event to this queue.
+     *
+     */
+    public boolean offer(SimulationEvent $event)
+    {
+        // an event can only be in the queue once
+        remove($event);
+        stamp($event);
+        $event.setQueueIndex(0);
+        return _eventQueue.offer($event);
+    }
+    
+    
+    /**
+     * Remove an event from the queue.
+     *
+     */
+    public boolean remove(SimulationEvent $event)
+    {
+        if ($event.getQueueIndex() != 0)
+        {
+            return false;
+        }
+        $event.setQueueIndex(-1);
+        return _eventQueue.remove($event);
+    }
+    
+    
+    /**
+     * Return true if the given event is currently in this queue.
+     *
+     */
+    public boolean contains(SimulationEvent $event)
+    {
+        return $event.getQueueIndex() == 0;
+    }
+    
+    
+    /**
+     * Return the size of the queue.
+     * 
+     */
+    public int size()
+    {
+        return _eventQueue.size();
+    }
+    
+    
+    /**
+     * Return the queued events in heap order.
+     *
+     */
+    List<SimulationEvent> events()
+    {
+        return new ArrayList<SimulationEvent>(_eventQueue);
+    }
+}
@@ -0,0 +1,420 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+import stemsim.event.*;
+import stemsim.object.Crypt;
+
+
+/**
+ * A two level event queue: every crypt keeps its cells' events in a small
+ * local indexed heap, and a global TimeHeap orders the crypts by their
+ * earliest event.
+ *
+ * Birth and death in a crypt reschedule every event of that crypt, which in
+ * a single queue costs O(log n) per event against all the events of the
+ * tissue.  Here the same churn costs O(log m) against the m events of the
+ * crypt, and only a change to the crypt's earliest event moves it in the
+ * global heap of crypts.  Events of no crypt (simulation start and end)
+ * share a local queue of their own.
+ *
+ * An event records its local queue in its queue bucket and its slot in that
+ * queue in its queue index; a crypt records its local queue as its event
+ * group.  Sequence numbers are drawn from this queue, so events come out in
+ * exactly the (time, sequence) order of the other implementations.
+ *
+ * Inside a batch every local queue touched is itself batched, and the
+ * crypts' places in the global heap are brought up to date once, when the
+ * batch is committed.
+ *
+ */
+public class HierarchicalEventQueue extends AbstractEventQueue
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** local queue of the events that belong to no crypt */
+    static final int GLOBAL = 0;
+
+    /** number of slots a local queue starts with */
+    static final int LOCAL_CAPACITY = 16;
+
+
+    /**
+     * The events of one crypt, keyed on the sequence numbers given out by the
+     * enclosing queue.
+     *
+     */
+    static class LocalQueue extends IndexedHeapEventQueue
+    {
+        LocalQueue()
+        {
+            super(LOCAL_CAPACITY, false, DEFAULT_COMPACTION_RATIO);
+        }
+
+        /**
+         * The enclosing queue has already stamped the event.
+         *
+         */
+        void stamp(SimulationEvent $event)
+        {
+        }
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** Local queue of each group */
+    LocalQueue[] _groups = new LocalQueue[64];
+
+    /** Crypt owning each group, null for the global group */
+    Crypt[] _owners = new Crypt[64];
+
+    /** Number of groups handed out so far */
+    int _nGroups = 0;
+
+    /** Heap of non-empty groups keyed on their earliest event */
+    TimeHeap _top = new TimeHeap(64);
+
+    /** Number of events in all local queues */
+    int _size = 0;
+
+    /** Nesting depth of open batches */
+    int _batchDepth = 0;
+
+    /** Groups touched during the open batch */
+    int[] _touched = new int[16];
+
+    /** Number of groups touched during the open batch */
+    int _nTouched = 0;
+
+    /** True for each group on the touched list */
+    boolean[] _isTouched = new boolean[64];
+
+
+    /**
+     * Constructor.
+     *
+     */
+    public HierarchicalEventQueue()
+    {
+        addGroup(null);
+    }
+
+
+    /**
+     * Poll for the next event.
+     *
+     */
+    public SimulationEvent poll()
+    {
+        flush();
+        if (_top.size() == 0)
+        {
+            return null;
+        }
+
+        int g = _top.peek();
+        SimulationEvent e = _groups[g].poll();
+        e.setQueueBucket(-1);
+        _size--;
+        refresh(g);
+
+        return e;
+    }
+
+
+    /**
+     * Peek at the next event.
+     *
+     */
+    public SimulationEvent peek()
+    {
+        flush();
+        return (_top.size() == 0) ? null : _groups[_top.peek()].peek();
+    }
+
+
+    /**
+     * Add an event to this queue.  An event already queued is moved to its
+     * new time, and to its crypt's local queue if its cell has changed
+     * crypts since.
+     *
+     */
+    public boolean offer(SimulationEvent $event)
+    {
+        stamp($event);
+
+        int g = groupOf($event);
+        if (contains($event))
+        {
+            int old = $event.getQueueBucket();
+            if (old == g)
+            {
+                touch(g);
+                _groups[g].offer($event);
+                refresh(g);
+                return true;
+            }
+
+            touch(old);
+            _groups[old].remove($event);
+            _size--;
+            refresh(old);
+        }
+
+        $event.setQueueBucket(g);
+        touch(g);
+        _groups[g].offer($event);
+        _size++;
+        refresh(g);
+
+        return true;
+    }
+
+
+    /**
+     * Move an event to a new time in place.
+     *
+     */
+    public boolean reschedule(SimulationEvent $event, double $time)
+    {
+        $event.setTime($time);
+        return offer($event);
+    }
+
+
+    /**
+     * Remove an event from the queue.
+     *
+     */
+    public boolean remove(SimulationEvent $event)
+    {
+        if (!contains($event))
+        {
+            return false;
+        }
+
+        int g = $event.getQueueBucket();
+        touch(g);
+        _groups[g].remove($event);
+        $event.setQueueBucket(-1);
+        _size--;
+        refresh(g);
+
+        return true;
+    }
+
+
+    /**
+     * Open a batch of updates.
+     *
+     */
+    public void beginBatch()
+    {
+        _batchDepth++;
+    }
+
+
+    /**
+     * Close a batch, committing the local queues it touched if it is the
+     * outermost.
+     *
+     */
+    public void commitBatch()
+    {
+        if (_batchDepth > 0 && --_batchDepth == 0)
+        {
+            flush();
+        }
+    }
+
+
+    /**
+     * Return true if the given event is currently in this queue.
+     *
+     */
+    public boolean contains(SimulationEvent $event)
+    {
+        int g = $event.getQueueBucket();
+        return g >= 0 && g < _nGroups && _groups[g].contains($event);
+    }
+
+
+    /**
+     * Return the size of the queue.
+     *
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+
+    /**
+     * Return the number of local queues, counting the one for events of no
+     * crypt.
+     *
+     */
+    public int getGroups()
+    {
+        return _nGroups;
+    }
+
+
+    /**
+     * Return the queued events, a local queue at a time.
+     *
+     */
+    List<SimulationEvent> events()
+    {
+        List<SimulationEvent> all = new ArrayList<SimulationEvent>(_size);
+        for (int g=0; g<_nGroups; g++)
+        {
+            all.addAll(_groups[g].events());
+        }
+        return all;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Group maintenance
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the group an event belongs in, creating one for a crypt seen
+     * for the first time.
+     *
+     */
+    int groupOf(SimulationEvent $event)
+    {
+        Crypt crypt = $event.getLocalCrypt();
+        if (crypt == null)
+        {
+            return GLOBAL;
+        }
+
+        // the crypt may carry a group of an earlier queue
+        int g = crypt.getEventGroup();
+        if (g > GLOBAL && g < _nGroups && _owners[g] == crypt)
+        {
+            return g;
+        }
+
+        g = addGroup(crypt);
+        crypt.setEventGroup(g);
+        return g;
+    }
+
+
+    /**
+     * Add an empty group for the given crypt.
+     *
+     */
+    int addGroup(Crypt $owner)
+    {
+        if (_nGroups == _groups.length)
+        {
+            LocalQueue[] groups = new LocalQueue[_nGroups * 2];
+            System.arraycopy(_groups, 0, groups, 0, _nGroups);
+            _groups = groups;
+
+            Crypt[] owners = new Crypt[_nGroups * 2];
+            System.arraycopy(_owners, 0, owners, 0, _nGroups);
+            _owners = owners;
+
+            boolean[] touched = new boolean[_nGroups * 2];
+            System.arraycopy(_isTouched, 0, touched, 0, _nGroups);
+            _isTouched = touched;
+        }
+
+        _groups[_nGroups] = new LocalQueue();
+        _owners[_nGroups] = $owner;
+        return _nGroups++;
+    }
+
+
+    /**
+     * Bring a group's entry in the global heap up to date with its earliest
+     * event.
+     *
+     */
+    void refresh(int $group)
+    {
+        if (_batchDepth > 0)
+        {
+            return;
+        }
+
+        LocalQueue local = _groups[$group];
+        if (local.size() == 0)
+        {
+            _top.remove($group);
+            return;
+        }
+
+        SimulationEvent first = local.peek();
+        if (_top.contains($group))
+        {
+            _top.update($group, first.getTime(), first.getSequence());
+        }
+        else
+        {
+            _top.add($group, first.getTime(), first.getSequence());
+        }
+    }
+
+
+    /**
+     * Open a batch on a group's local queue the first time the open batch
+     * touches it.
+     *
+     */
+    void touch(int $group)
+    {
+        if (_batchDepth == 0 || _isTouched[$group])
+        {
+            return;
+        }
+
+        if (_nTouched == _touched.length)
+        {
+            int[] grown = new int[_nTouched * 2];
+            System.arraycopy(_touched, 0, grown, 0, _nTouched);
+            _touched = grown;
+        }
+        _touched[_nTouched++] = $group;
+        _isTouched[$group] = true;
+        _groups[$group].beginBatch();
+    }
+
+
+    /**
+     * Commit the local queues touched so far and bring their places in the
+     * global heap up to date.
+     *
+     */
+    void flush()
+    {
+        int n = _nTouched;
+        if (n == 0)
+        {
+            return;
+        }
+        _nTouched = 0;
+
+        int depth = _batchDepth;
+        _batchDepth = 0;
+        for (int i=0; i<n; i++)
+        {
+            int g = _touched[i];
+            _isTouched[g] = false;
+            _groups[g].commitBatch();
+            refresh(g);
+        }
+        _batchDepth = depth;
+    }
+}
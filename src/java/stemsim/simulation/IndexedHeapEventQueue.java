@@ -0,0 +1,494 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+import stemsim.event.*;
+
+
+/**
+ * An event queue built as an indexed binary heap.
+ *
+ * Each queued event holds a slot in an event table and records it, and the
+ * heap itself is a TimeHeap of slots keyed on (time, sequence).  Removing an
+ * arbitrary event (which happens on nearly every event due to homeostasis in
+ * the stem compartment) costs O(log n) rather than the linear scan of
+ * java.util.PriorityQueue.remove(Object), and sifting compares primitive
+ * keys without touching the events.
+ *
+ * The queue can also run in lazy deletion mode.  Every superseded event is
+ * invalidated before it is removed, so in lazy mode remove() only marks an
+ * invalid event as a tombstone and leaves it in the heap; tombstones are
+ * dropped when they reach the top of the heap.  When the fraction of
+ * tombstones in the heap passes the compaction ratio the heap is rebuilt
+ * without them so memory stays bounded on long runs.
+ *
+ * Inside a batch, offered events get their slots at once but are placed in
+ * the heap only when the batch is committed: one at a time for a small
+ * batch, or by rebuilding the heap in linear time when that is cheaper.
+ *
+ */
+public class IndexedHeapEventQueue extends AbstractEventQueue
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** default tombstone fraction that triggers a compaction in lazy mode */
+    static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+    /** heaps smaller than this are never compacted */
+    static final int MIN_COMPACTION_SIZE = 64;
+
+    /** number of slots a queue starts with */
+    static final int DEFAULT_CAPACITY = 1000;
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** Heap of event slots */
+    TimeHeap _heap;
+
+    /** Event held in each slot */
+    SimulationEvent[] _events;
+
+    /** Stack of free slots below _slots */
+    int[] _free;
+
+    /** Number of free slots on the stack */
+    int _nFree = 0;
+
+    /** Number of slots handed out so far */
+    int _slots = 0;
+
+    /** Nesting depth of open batches */
+    int _batchDepth = 0;
+
+    /** Slots offered during the open batch, not yet placed in the heap */
+    int[] _pending = new int[16];
+
+    /** Number of entries on the pending list */
+    int _nPending = 0;
+
+    /** True for each slot waiting on the pending list */
+    boolean[] _isPending;
+
+    /** true if removal of invalid events is deferred to poll time */
+    boolean _lazy = false;
+
+    /** Number of tombstones still in the heap (lazy mode) */
+    int _tombstones = 0;
+
+    /** tombstone fraction of the heap that triggers a compaction */
+    double _compactionRatio = DEFAULT_COMPACTION_RATIO;
+
+
+    /**
+     * Create an event queue with eager deletion.
+     *
+     */
+    public IndexedHeapEventQueue()
+    {
+        this(DEFAULT_CAPACITY, false, DEFAULT_COMPACTION_RATIO);
+    }
+
+
+    /**
+     * Create an event queue, lazy or not, with the given compaction ratio.
+     *
+     */
+    public IndexedHeapEventQueue(boolean $lazy, double $compactionRatio)
+    {
+        this(DEFAULT_CAPACITY, $lazy, $compactionRatio);
+    }
+
+
+    /**
+     * Create an event queue that starts with room for the given number of
+     * events.
+     *
+     */
+    IndexedHeapEventQueue(int $capacity, 
+                          boolean $lazy, 
+                          double $compactionRatio)
+    {
+        $capacity = Math.max($capacity, 1);
+        _heap = new TimeHeap($capacity);
+        _events = new SimulationEvent[$capacity];
+        _isPending = new boolean[$capacity];
+        _free = new int[$capacity];
+        _lazy = $lazy;
+        _compactionRatio = $compactionRatio;
+    }
+
+
+    /**
+     * Poll for the next event.
+     *
+     */
+    public SimulationEvent poll()
+    {
+        flush();
+        dropTombstones();
+        if (_heap.size() == 0)
+        {
+            return null;
+        }
+
+        return release(_heap.poll());
+    }
+
+
+    /**
+     * Peek at the next event.
+     *
+     */
+    public SimulationEvent peek()
+    {
+        flush();
+        dropTombstones();
+        return (_heap.size() == 0) ? null : _events[_heap.peek()];
+    }
+
+
+
+    /**
+     * Add an event to this queue.
+     *
+     */
+    public boolean offer(SimulationEvent $event)
+    {
+        stamp($event);
+
+        // an event can only be in the queue once -- move it to its new place
+        if (contains($event))
+        {
+            if ($event.isCancelled())
+            {
+                $event.setCancelled(false);
+                _tombstones--;
+            }
+            if (_batchDepth > 0)
+            {
+                defer($event.getQueueIndex());
+            }
+            else
+            {
+                _heap.update($event.getQueueIndex(),
+                             $event.getTime(), $event.getSequence());
+            }
+            return true;
+        }
+
+        int slot = allocate($event);
+        if (_batchDepth > 0)
+        {
+            defer(slot);
+        }
+        else
+        {
+            _heap.add(slot, $event.getTime(), $event.getSequence());
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Move an event to a new time, sifting it up or down from where it is.
+     *
+     */
+    public boolean reschedule(SimulationEvent $event, double $time)
+    {
+        $event.setTime($time);
+        return offer($event);
+    }
+
+
+    /**
+     * Remove an event from the queue.
+     *
+     */
+    public boolean remove(SimulationEvent $event)
+    {
+        if (!contains($event) || $event.isCancelled())
+        {
+            return false;
+        }
+
+        // invalid events are never executed, so in lazy mode they can sit
+        // in the heap until they surface
+        if (_lazy && !$event.isValid())
+        {
+            $event.setCancelled(true);
+            _tombstones++;
+            if (_batchDepth == 0
+                && _heap.size() >= MIN_COMPACTION_SIZE
+                && _tombstones > _heap.size() * _compactionRatio)
+            {
+                compact();
+            }
+            return true;
+        }
+
+        // an event offered in this batch may not be in the heap yet
+        int slot = $event.getQueueIndex();
+        _heap.remove(slot);
+        release(slot);
+        return true;
+    }
+
+
+    /**
+     * Open a batch of updates.
+     *
+     */
+    public void beginBatch()
+    {
+        _batchDepth++;
+    }
+
+
+    /**
+     * Close a batch, placing its events in the heap if it is the outermost.
+     *
+     */
+    public void commitBatch()
+    {
+        if (_batchDepth > 0 && --_batchDepth == 0)
+        {
+            flush();
+        }
+    }
+
+
+    /**
+     * Return true if the given event is currently in this queue.
+     *
+     */
+    public boolean contains(SimulationEvent $event)
+    {
+        int i = $event.getQueueIndex();
+        return i >= 0 && i < _slots && _events[i] == $event;
+    }
+
+
+    /**
+     * Return the size of the queue, not counting tombstones.
+     *
+     */
+    public int size()
+    {
+        return _slots - _nFree - _tombstones;
+    }
+
+
+    /**
+     * Return true if this queue defers removal of invalid events.
+     *
+     */
+    public boolean isLazy()
+    {
+        return _lazy;
+    }
+
+
+    /**
+     * Return the number of tombstones currently held in the heap.
+     *
+     */
+    public int getTombstones()
+    {
+        return _tombstones;
+    }
+
+
+    /**
+     * Return the queued events, less tombstones, in slot order.
+     *
+     */
+    List<SimulationEvent> events()
+    {
+        List<SimulationEvent> live = new ArrayList<SimulationEvent>(size());
+        for (int slot=0; slot<_slots; slot++)
+        {
+            SimulationEvent e = _events[slot];
+            if (e != null && !e.isCancelled())
+            {
+                live.add(e);
+            }
+        }
+        return live;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Heap maintenance
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Give an event a slot in the event table.
+     *
+     */
+    int allocate(SimulationEvent $event)
+    {
+        int slot;
+        if (_nFree > 0)
+        {
+            slot = _free[--_nFree];
+        }
+        else
+        {
+            if (_slots == _events.length)
+            {
+                SimulationEvent[] grown = new SimulationEvent[_slots * 2];
+                System.arraycopy(_events, 0, grown, 0, _slots);
+                _events = grown;
+
+                boolean[] pending = new boolean[_slots * 2];
+                System.arraycopy(_isPending, 0, pending, 0, _slots);
+                _isPending = pending;
+            }
+            slot = _slots++;
+        }
+
+        _events[slot] = $event;
+        $event.setQueueIndex(slot);
+
+        return slot;
+    }
+
+
+    /**
+     * Free a slot that is no longer in the heap and return its event.
+     *
+     */
+    SimulationEvent release(int $slot)
+    {
+        SimulationEvent e = _events[$slot];
+        _events[$slot] = null;
+        _isPending[$slot] = false;
+        e.setQueueIndex(-1);
+
+        if (_nFree == _free.length)
+        {
+            int[] grown = new int[_nFree * 2];
+            System.arraycopy(_free, 0, grown, 0, _nFree);
+            _free = grown;
+        }
+        _free[_nFree++] = $slot;
+
+        return e;
+    }
+
+
+    /**
+     * Put a slot on the pending list of the open batch.
+     *
+     */
+    void defer(int $slot)
+    {
+        if (_isPending[$slot])
+        {
+            return;
+        }
+
+        if (_nPending == _pending.length)
+        {
+            int[] grown = new int[_nPending * 2];
+            System.arraycopy(_pending, 0, grown, 0, _nPending);
+            _pending = grown;
+        }
+        _pending[_nPending++] = $slot;
+        _isPending[$slot] = true;
+    }
+
+
+    /**
+     * Place the events of the pending list in the heap.  Slots released
+     * since they were deferred are no longer flagged and are skipped.
+     *
+     */
+    void flush()
+    {
+        int n = _nPending;
+        if (n == 0)
+        {
+            return;
+        }
+        _nPending = 0;
+
+        boolean rebuild = _heap.cheaperToRebuild(n);
+        for (int i=0; i<n; i++)
+        {
+            int slot = _pending[i];
+            if (!_isPending[slot])
+            {
+                continue;
+            }
+            _isPending[slot] = false;
+
+            SimulationEvent e = _events[slot];
+            if (rebuild)
+            {
+                _heap.set(slot, e.getTime(), e.getSequence());
+            }
+            else if (_heap.contains(slot))
+            {
+                _heap.update(slot, e.getTime(), e.getSequence());
+            }
+            else
+            {
+                _heap.add(slot, e.getTime(), e.getSequence());
+            }
+        }
+
+        if (rebuild)
+        {
+            _heap.heapify();
+        }
+    }
+
+
+    /**
+     * Pop tombstones off the top of the heap until a live event surfaces.
+     *
+     */
+    void dropTombstones()
+    {
+        while (_tombstones > 0 && _heap.size() > 0
+               && _events[_heap.peek()].isCancelled())
+        {
+            SimulationEvent dead = release(_heap.poll());
+            dead.setCancelled(false);
+            _tombstones--;
+        }
+    }
+
+
+    /**
+     * Rebuild the heap without its tombstones.
+     *
+     */
+    void compact()
+    {
+        int[] dead = new int[_tombstones];
+        int n = 0;
+        for (int k=0; k<_heap.size(); k++)
+        {
+            int slot = _heap.itemAt(k);
+            if (_events[slot].isCancelled())
+            {
+                dead[n++] = slot;
+            }
+        }
+
+        _heap.removeAll(dead, n);
+        for (int i=0; i<n; i++)
+        {
+            release(dead[i]).setCancelled(false);
+        }
+        _tombstones = 0;
+    }
+}
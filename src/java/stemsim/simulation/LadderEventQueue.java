@@ -0,0 +1,414 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+import stemsim.event.*;
+
+
+/**
+ * A ladder queue (W. T. Tang, R. S. M. Goh and I. L.-J. Thng, ACM TOMACS
+ * 15(3), 2005).
+ *
+ * New events far in the future land unsorted in the top list.  When the
+ * near future runs dry the top list is spread over the buckets of a rung,
+ * and the earliest non-empty bucket of the lowest rung is either spread over
+ * a finer child rung, if it is crowded, or sorted into the short bottom list
+ * that events are dequeued from.  Only the bottom list is ever sorted, so
+ * enqueue and dequeue are O(1) amortised, and unlike the calendar queue no
+ * resizing is needed when the hold time distribution shifts.
+ *
+ * Each event records the bucket holding it, and its slot in that bucket if
+ * unsorted, so arbitrary events are removed without searching.
+ *
+ */
+public class LadderEventQueue extends AbstractEventQueue
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** maximum number of rungs */
+    static final int MAX_RUNGS = 8;
+
+    /** buckets with more events than this are spread over a child rung */
+    static final int THRESHOLD = 50;
+
+    /** maximum number of buckets in a rung */
+    static final int MAX_BUCKETS = 1 << 20;
+
+    /** bucket code of the top list */
+    static final int TOP = 0;
+
+    /** bucket code of the bottom list */
+    static final int BOTTOM = 1;
+
+    /** bucket codes of rung buckets are RUNG_BASE + rung * RUNG_STRIDE + b */
+    static final int RUNG_BASE = 2;
+
+    /** spacing of rung bucket codes */
+    static final int RUNG_STRIDE = 1 << 27;
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** Unsorted events at or after _topStart */
+    EventBucket _top = new EventBucket();
+
+    /** Earliest time in the top list */
+    double _topMin = Double.POSITIVE_INFINITY;
+
+    /** Latest time in the top list */
+    double _topMax = Double.NEGATIVE_INFINITY;
+
+    /** Events at or after this time go to the top list */
+    double _topStart = Double.NEGATIVE_INFINITY;
+
+    /** The buckets of each rung -- arrays are reused as rungs come and go */
+    EventBucket[][] _rungs = new EventBucket[MAX_RUNGS][];
+
+    /** Number of buckets in use in each rung */
+    int[] _rungBuckets = new int[MAX_RUNGS];
+
+    /** Start time of each rung */
+    double[] _rungStart = new double[MAX_RUNGS];
+
+    /** Bucket width of each rung */
+    double[] _rungWidth = new double[MAX_RUNGS];
+
+    /** Next bucket to be dequeued from each rung */
+    int[] _rungCur = new int[MAX_RUNGS];
+
+    /** Number of events held in each rung */
+    int[] _rungSize = new int[MAX_RUNGS];
+
+    /** Number of rungs in use */
+    int _nRungs = 0;
+
+    /** Events dequeued next, sorted latest first */
+    EventBucket _bottom = new EventBucket();
+
+    /** Number of events in the queue */
+    int _size = 0;
+
+
+    /**
+     * Poll for the next event.
+     *
+     */
+    public SimulationEvent poll()
+    {
+        if (_size == 0)
+        {
+            return null;
+        }
+
+        fillBottom();
+        _size--;
+
+        return _bottom.removeLast();
+    }
+
+
+    /**
+     * Peek at the next event.
+     *
+     */
+    public SimulationEvent peek()
+    {
+        if (_size == 0)
+        {
+            return null;
+        }
+
+        fillBottom();
+
+        return _bottom.last();
+    }
+
+
+    /**
+     * Add an event to this queue.
+     *
+     */
+    public boolean offer(SimulationEvent $event)
+    {
+        // an event can only be in the queue once
+        remove($event);
+        stamp($event);
+
+        insert($event);
+        _size++;
+
+        return true;
+    }
+
+
+    /**
+     * Remove an event from the queue.
+     *
+     */
+    public boolean remove(SimulationEvent $event)
+    {
+        int code = $event.getQueueBucket();
+        if (code == BOTTOM)
+        {
+            if (!_bottom.removeOrdered($event))
+            {
+                return false;
+            }
+        }
+        else
+        {
+            EventBucket bucket = unsortedBucket(code);
+            if (bucket == null || !bucket.holds($event))
+            {
+                return false;
+            }
+            bucket.removeAt($event.getQueueIndex());
+            if (code >= RUNG_BASE)
+            {
+                _rungSize[(code - RUNG_BASE) / RUNG_STRIDE]--;
+            }
+        }
+
+        _size--;
+        return true;
+    }
+
+
+    /**
+     * Return true if the given event is currently in this queue.
+     *
+     */
+    public boolean contains(SimulationEvent $event)
+    {
+        int code = $event.getQueueBucket();
+        if (code == BOTTOM)
+        {
+            return _bottom.indexOf($event) >= 0;
+        }
+
+        EventBucket bucket = unsortedBucket(code);
+        return bucket != null && bucket.holds($event);
+    }
+
+
+    /**
+     * Return the size of the queue.
+     *
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+
+    /**
+     * Return the queued events, top list first.
+     *
+     */
+    List<SimulationEvent> events()
+    {
+        List<SimulationEvent> events = new ArrayList<SimulationEvent>(_size);
+        _top.copyTo(events);
+        for (int x=0; x<_nRungs; x++)
+        {
+            for (int b=_rungCur[x]; b<_rungBuckets[x]; b++)
+            {
+                _rungs[x][b].copyTo(events);
+            }
+        }
+        _bottom.copyTo(events);
+        return events;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Ladder maintenance
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * File an event into the top list, a rung, or the bottom list.
+     *
+     */
+    void insert(SimulationEvent $event)
+    {
+        double t = $event.getTime();
+
+        if (t >= _topStart)
+        {
+            _top.add($event, TOP);
+            _topMin = Math.min(_topMin, t);
+            _topMax = Math.max(_topMax, t);
+            return;
+        }
+
+        for (int x=0; x<_nRungs; x++)
+        {
+            double d = (t - _rungStart[x]) / _rungWidth[x];
+            if (d >= _rungCur[x])
+            {
+                int b = (d < _rungBuckets[x]) ? (int)d : _rungBuckets[x] - 1;
+                if (b >= _rungCur[x])
+                {
+                    _rungs[x][b].add($event, RUNG_BASE + x * RUNG_STRIDE + b);
+                    _rungSize[x]++;
+                    return;
+                }
+            }
+        }
+
+        _bottom.insertSorted($event, BOTTOM);
+        if (_bottom.size() > THRESHOLD && _nRungs < MAX_RUNGS)
+        {
+            spawnRung(_bottom);
+        }
+    }
+
+
+    /**
+     * Refill the empty bottom list from the lowest rung, spreading the top
+     * list over a new rung when the ladder is empty.  The queue must not be
+     * empty.
+     *
+     */
+    void fillBottom()
+    {
+        while (_bottom.isEmpty())
+        {
+            if (_nRungs == 0)
+            {
+                spawnTopRung();
+                continue;
+            }
+
+            int x = _nRungs - 1;
+            if (_rungSize[x] == 0)
+            {
+                _nRungs--;
+                continue;
+            }
+
+            EventBucket[] rung = _rungs[x];
+            int b = _rungCur[x];
+            while (rung[b].isEmpty())
+            {
+                b++;
+            }
+            _rungCur[x] = b + 1;
+
+            EventBucket bucket = rung[b];
+            _rungSize[x] -= bucket.size();
+            if (bucket.size() > THRESHOLD && _nRungs < MAX_RUNGS
+                && spawnRung(bucket))
+            {
+                continue;
+            }
+
+            bucket.drainTo(_bottom);
+            _bottom.sort(BOTTOM);
+        }
+    }
+
+
+    /**
+     * Spread the top list over a new first rung.
+     *
+     */
+    void spawnTopRung()
+    {
+        _topStart = _topMax;
+        if (!spawnRung(_top))
+        {
+            _top.drainTo(_bottom);
+            _bottom.sort(BOTTOM);
+        }
+        _topMin = Double.POSITIVE_INFINITY;
+        _topMax = Double.NEGATIVE_INFINITY;
+    }
+
+
+    /**
+     * Spread the events of a bucket over a new lowest rung.  Return false,
+     * leaving the bucket alone, if its events all share one time.
+     *
+     */
+    boolean spawnRung(EventBucket $bucket)
+    {
+        int n = $bucket.size();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i=0; i<n; i++)
+        {
+            double t = $bucket.get(i).getTime();
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        if (!(max > min))
+        {
+            return false;
+        }
+
+        int x = _nRungs++;
+        int buckets = Math.min(n, MAX_BUCKETS);
+        if (_rungs[x] == null || _rungs[x].length < buckets)
+        {
+            EventBucket[] rung = new EventBucket[buckets];
+            int have = (_rungs[x] == null) ? 0 : _rungs[x].length;
+            if (have > 0)
+            {
+                System.arraycopy(_rungs[x], 0, rung, 0, have);
+            }
+            for (int b=have; b<buckets; b++)
+            {
+                rung[b] = new EventBucket();
+            }
+            _rungs[x] = rung;
+        }
+        _rungBuckets[x] = buckets;
+        _rungStart[x] = min;
+        _rungWidth[x] = (max - min) / buckets;
+        _rungCur[x] = 0;
+        _rungSize[x] = n;
+
+        EventBucket[] rung = _rungs[x];
+        int base = RUNG_BASE + x * RUNG_STRIDE;
+        for (int i=0; i<n; i++)
+        {
+            SimulationEvent e = $bucket.get(i);
+            double d = (e.getTime() - min) / _rungWidth[x];
+            int b = (d < buckets) ? (int)d : buckets - 1;
+            rung[b].add(e, base + b);
+        }
+        $bucket.clear();
+
+        return true;
+    }
+
+
+    /**
+     * Return the unsorted bucket with the given code, null if there is none.
+     *
+     */
+    EventBucket unsortedBucket(int $code)
+    {
+        if ($code == TOP)
+        {
+            return _top;
+        }
+        if ($code < RUNG_BASE)
+        {
+            return null;
+        }
+
+        int x = ($code - RUNG_BASE) / RUNG_STRIDE;
+        int b = ($code - RUNG_BASE) % RUNG_STRIDE;
+        if (x >= _nRungs || b < _rungCur[x] || b >= _rungBuckets[x])
+        {
+            return null;
+        }
+        return _rungs[x][b];
+    }
+}
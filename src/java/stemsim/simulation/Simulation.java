@@ -4,9 +4,17 @@ package stemsim.simulation;
 import java.io.*;
 import java.util.*;
 
+import lib.BufferedSource;
 import lib.KnuthRandom;
+import lib.RandomSource;
+import lib.SplitMix;
+import lib.Xoshiro256;
+import lib.ZigguratSource;
 
 import stemsim.event.*;
+import stemsim.object.MutationSampler;
+import stemsim.object.StemCell;
+import stemsim.object.TACProbabilityTable;
 
 
 /**
@@ -19,6 +27,9 @@ public abstract class Simulation
     // Class Level
     ////////////////////////////////////////////////////////////////////////////
     
+    /** seeds of the generators are in [0, SEED_RANGE) */
+    static final public long SEED_RANGE = 1000000000L;
+    
     /** unique identifier for simulation objects */
     static int ID = 1;
     static int nextId()
@@ -26,11 +37,106 @@ public abstract class Simulation
         return ID++;
     }
     
-    /** random number generator for all simulations */
-    static final public KnuthRandom RANDOM = new KnuthRandom();
-    static
+    
+    /**
+     * Read simulation.seed, the seed of a run's generator; missing, blank or
+     * negative, the generator seeds itself from the clock.  Throws
+     * IllegalArgumentException naming the key if the seed is not an integer
+     * or not below SEED_RANGE.
+     *
+     */
+    static long readSeed(SimulationParams $params)
     {
-        RANDOM.seedRandom(-1);
+        if (!$params.isConfigured("simulation.seed"))
+        {
+            return -1;
+        }
+        
+        String seed = $params.getString("simulation.seed").trim();
+        if (seed.length() == 0)
+        {
+            return -1;
+        }
+        
+        long value;
+        try
+        {
+            value = Long.parseLong(seed);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(
+                "param is not an integer: simulation.seed");
+        }
+        if (value >= SEED_RANGE)
+        {
+            throw new IllegalArgumentException(
+                "param is not below " + SEED_RANGE + ": simulation.seed");
+        }
+        return value;
+    }
+    
+    
+    /**
+     * Create the generator named by simulation.random.impl -- knuth
+     * (default), xoshiro256 or splitmix -- not yet seeded.  Its exponential
+     * variates come by simulation.random.exponential -- inversion (default)
+     * or ziggurat -- and with simulation.random.buffer above 0 its variates
+     * are drawn that many at a time.
+     *
+     */
+    static RandomSource createRandom(SimulationParams $params)
+    {
+        String impl = "knuth";
+        if ($params.isConfigured("simulation.random.impl"))
+        {
+            impl = $params.getString("simulation.random.impl").trim();
+        }
+        
+        RandomSource random;
+        if (impl.equals("knuth"))
+        {
+            random = new KnuthRandom();
+        }
+        else if (impl.equals("xoshiro256"))
+        {
+            random = new Xoshiro256();
+        }
+        else if (impl.equals("splitmix"))
+        {
+            random = new SplitMix();
+        }
+        else
+        {
+            throw new IllegalArgumentException(
+                            "Invalid simulation.random.impl");
+        }
+        
+        if ($params.isConfigured("simulation.random.exponential"))
+        {
+            String exponential = 
+                $params.getString("simulation.random.exponential").trim();
+            if (exponential.equals("ziggurat"))
+            {
+                random = new ZigguratSource(random);
+            }
+            else if (!exponential.equals("inversion"))
+            {
+                throw new IllegalArgumentException(
+                                "Invalid simulation.random.exponential");
+            }
+        }
+        
+        if ($params.isConfigured("simulation.random.buffer"))
+        {
+            int size = $params.getInt("simulation.random.buffer");
+            if (size > 0)
+            {
+                random = new BufferedSource(random, size);
+            }
+        }
+        
+        return random;
     }
     
 
@@ -46,8 +152,24 @@ public abstract class Simulation
     /** the simulation parameters of this object */
     SimulationParams _params = null;
     
+    /** random number generator of this simulation, seeded from the clock
+        until run() creates and seeds the configured one */
+    RandomSource _random = new KnuthRandom();
+    {
+        _random.seedRandom(-1);
+    }
+    
     /** the single event queue for this simulation */
-    EventQueue _eventQueue = new EventQueue();
+    EventQueue _eventQueue = new IndexedHeapEventQueue();
+    
+    /** recycled cell events for this simulation */
+    EventPool _eventPool = new EventPool(this);
+    
+    /** picks the classes of new mutations, null until needed */
+    MutationSampler _mutationSampler = null;
+    
+    /** TAC compartment TSG hit probabilities, null until needed */
+    TACProbabilityTable _tacTable = null;
     
     /** the maximum duration of this simulation */
     double _duration = -1;
@@ -61,9 +183,24 @@ public abstract class Simulation
     /** list of listeners of this simulation's events */
     Set<SimEventListener> _listeners = new HashSet<SimEventListener>();
     
+    /** the listeners as an array, walked once per event */
+    SimEventListener[] _listenerArray = new SimEventListener[0];
+    
     /** the output directory for result files */
     File _outputDirectory = null;
     
+    /** Expected asymmetric divisions left without an event of their own */
+    double _asymmetricDivisions = 0.0;
+    
+    /** Sum of the mutation rates of those divisions */
+    double _asymmetricMutationSum = 0.0;
+    
+    /** Symmetric divisions leaping left without an event */
+    int _symmetricDivisions = 0;
+    
+    /** Sum of the mutation rates of those divisions */
+    double _symmetricMutationSum = 0.0;
+    
     
     /**
      * Initialize this simulation object given parameters -- called before the
@@ -92,6 +229,17 @@ public abstract class Simulation
     }
     
     
+    /**
+     * Return the maximum duration of this simulation, read when it runs; -1
+     * if it has none.
+     *
+     */
+    public double getDuration()
+    {
+        return _duration;
+    }
+    
+    
     /**
      * Print the current debug state.
      *
@@ -157,6 +305,37 @@ public abstract class Simulation
         return _eventQueue;
     }
     
+    
+    /**
+     * Return the random number generator of this simulation.  Every draw of
+     * a run comes from it, so a run is fixed by its seed.
+     *
+     */
+    public RandomSource getRandom()
+    {
+        return _random;
+    }
+    
+    
+    /**
+     * Return the seed this simulation's generator was last seeded with.
+     *
+     */
+    public long getSeed()
+    {
+        return _random.getSeed();
+    }
+    
+    
+    /**
+     * Return the pool of reusable cell events of this simulation.
+     *
+     */
+    public EventPool getEventPool()
+    {
+        return _eventPool;
+    }
+    
 
     public void setLabel(String $label)
     {
@@ -189,6 +368,95 @@ public abstract class Simulation
     }
     
     
+    /**
+     * Get the compiled model parameters of this simulation.
+     *
+     */
+    public SimulationConfig getConfig()
+    {
+        return _params.getConfig();
+    }
+    
+    
+    /**
+     * Get the mutation sampler of this simulation, built again if the
+     * params changed since.  The new sampler keeps the mutation classes
+     * registered with the old one.
+     *
+     */
+    public MutationSampler getMutationSampler()
+    {
+        if (_mutationSampler == null 
+            || _mutationSampler.getConfig() != getConfig())
+        {
+            _mutationSampler = MutationSampler.create(this, _mutationSampler);
+        }
+        return _mutationSampler;
+    }
+    
+    
+    /**
+     * Get the table of TAC compartment TSG hit probabilities of this
+     * simulation, built again if the params changed since.
+     *
+     */
+    public TACProbabilityTable getTACTable()
+    {
+        if (_tacTable == null || _tacTable.getConfig() != getConfig())
+        {
+            _tacTable = TACProbabilityTable.create(this);
+        }
+        return _tacTable;
+    }
+    
+    
+    /**
+     * Record a number of asymmetric divisions a cell went through without
+     * an event of their own.
+     *
+     */
+    public void recordAsymmetricDivisions(StemCell $cell, double $divisions)
+    {
+        _asymmetricDivisions += $divisions;
+        _asymmetricMutationSum += $divisions * $cell.getMutationRate();
+    }
+    
+    
+    public double getAsymmetricDivisions()
+    {
+        return _asymmetricDivisions;
+    }
+    
+    
+    public double getAsymmetricMutationSum()
+    {
+        return _asymmetricMutationSum;
+    }
+    
+    
+    /**
+     * Record a symmetric division of a cell without an event of its own.
+     *
+     */
+    public void recordSymmetricDivision(StemCell $cell)
+    {
+        _symmetricDivisions++;
+        _symmetricMutationSum += $cell.getMutationRate();
+    }
+    
+    
+    public int getSymmetricDivisions()
+    {
+        return _symmetricDivisions;
+    }
+    
+    
+    public double getSymmetricMutationSum()
+    {
+        return _symmetricMutationSum;
+    }
+    
+    
     /**
      * Register a listener of this simulation's events.
      *
@@ -198,6 +466,22 @@ public abstract class Simulation
         if (!_listeners.contains($listener))
         {
             _listeners.add($listener);
+            _listenerArray = _listeners.toArray(_listenerArray);
+        }
+    }
+    
+    
+    /**
+     * Notify the listeners of an event: the current one, or one that happened
+     * within it, as a death within a crypt's leap.
+     *
+     */
+    public void notifyListeners(SimulationEvent $event)
+    {
+        SimEventListener[] listeners = _listenerArray;
+        for (int i = 0; i < listeners.length; i++)
+        {
+            listeners[i].notify($event);
         }
     }
     
@@ -208,7 +492,15 @@ public abstract class Simulation
      */
     public final void run() throws Exception
     {
-        _eventQueue = new EventQueue();
+        SimulationConfig config = getConfig();
+        _random = createRandom(getParams());
+        _random.seedRandom(config.getSeed());
+        _eventQueue = EventQueueFactory.create(getParams(), _random);
+        _eventPool = new EventPool(this);
+        _asymmetricDivisions = 0.0;
+        _asymmetricMutationSum = 0.0;
+        _symmetricDivisions = 0;
+        _symmetricMutationSum = 0.0;
         _duration = getParams().getDouble("simulation.duration");
         init(getParams());
         
@@ -233,9 +525,7 @@ public abstract class Simulation
             debugStep = params.getInt("simulation.debug.echo.step");
             if (debugStepType.equals("real"))
             {
-                Calendar c = Calendar.getInstance();
-                c.add(Calendar.SECOND, debugStep);
-                debugTime = c.getTimeInMillis();
+                debugTime = System.currentTimeMillis() + debugStep * 1000L;
             }
             else if (debugStepType.equals("event"))
             {
@@ -269,6 +559,7 @@ public abstract class Simulation
             // We try to remove all invalid events (which happens often due to 
             // homeostasis in the stem compartment)
             // So this should always be valid but we are just making sure here.
+            // (A lazy event queue drops its invalid events in poll().)
             if (_current.isValid())  
             {
                 // DEBUG
@@ -281,15 +572,16 @@ public abstract class Simulation
                 // DEBUG
                 
                 _current.unfold();
+                
+                // the previous event is now out of every listener's sight
+                SimulationEvent done = _last;
                 _last = _current;
+                _eventPool.release(done);
                 count++;
             }
             
             // notify listeners
-            for (SimEventListener el : _listeners)
-            {
-                el.notify(_current);
-            }
+            notifyListeners(_current);
             
             // stop if we're past our max scheduled duration
             if (_duration > 0 && _current.getTime() > _duration)
@@ -306,13 +598,11 @@ public abstract class Simulation
             // echo state
             if (debug)
             {
-                Calendar c = Calendar.getInstance();
-                if (debugStepType.equals("real") 
-                    && c.getTimeInMillis() > debugTime)
+                long now = System.currentTimeMillis();
+                if (debugStepType.equals("real") && now > debugTime)
                 {
                     debugPrintState();
-                    c.add(Calendar.SECOND, debugStep);
-                    debugTime = c.getTimeInMillis();
+                    debugTime = now + debugStep * 1000L;
                 }
                 else if (debugStepType.equals("event") 
                          && _current.getTime() > debugTime)
@@ -0,0 +1,879 @@
+package stemsim.simulation;
+
+
+import java.util.*;
+
+
+/**
+ * An immutable, typed snapshot of the model parameters of a SimulationParams,
+ * compiled once so that the cells, crypts and events read plain fields instead
+ * of looking parameters up by name on every rate computation.
+ *
+ * Compiling checks every model parameter that is present: a value of the
+ * wrong type, or an unknown key in one of the model namespaces, fails here
+ * rather than in the middle of a run.  A parameter that is absent only fails,
+ * as before, when something asks for it -- partial parameter sets are fine
+ * for code that never needs the missing values.
+ *
+ * Values derived from several parameters (the cancer and bifurcation
+ * thresholds, the cumulative mutation type proportions, the crypt effect
+ * tables) are computed once here.
+ *
+ */
+public class SimulationConfig
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** marks an integer parameter that is not configured */
+    static final int MISSING = Integer.MIN_VALUE;
+
+    /** smallest number of stem cell counts covered by the effect tables */
+    static final int MIN_EFFECT_TABLE = 64;
+
+    /** default bound on the relative population change of a leap */
+    static final double DEFAULT_LEAP_EPSILON = 0.3;
+
+    /** default distance in stem cells from the thresholds to stop leaping */
+    static final int DEFAULT_LEAP_MARGIN = 3;
+
+    /** largest sum of the mutation proportions, 1 give or take rounding */
+    static final public double MAX_MUTATION_TOTAL = 1.0 + 1e-9;
+
+    /** key prefixes of the model parameters checked at compile time */
+    static final String[] NAMESPACES = {
+        "stemcell.",
+        "crypt.",
+        "cancer.",
+        "event.",
+        "mutation.",
+        "beneficialmutation.",
+        "deleteriousmutation.",
+        "mutatormutation.",
+        "tissue.",
+    };
+
+    /** model parameters read by the simulation */
+    static final String[] KEYS = {
+        "stemcell.apoptosisrate.base",
+        "stemcell.divisionrate.base",
+        "stemcell.mutationrate.base",
+        "stemcell.mutationrate.max",
+        "stemcell.tsgmutationrate.base",
+        "stemcell.tsgmutationrate.max",
+        "stemcell.asymmetricdivision.ratio",
+        "stemcell.tacsize.base",
+        "crypt.numcells.mean",
+        "crypt.numcells.standarddeviation",
+        "crypt.apoptosis.multiplier",
+        "crypt.division.multiplier",
+        "crypt.division.deadneighbor.multiplier",
+        "crypt.bifurcation.threshold.ratio",
+        "cancer.uncontrolledgrowth.threshold",
+        "cancer.tsg.threshold",
+        "event.celldivision.floor",
+        "event.apoptosis.floor",
+        "event.rescale",
+        "event.asymmetricdivision.thinning",
+        "event.leap.epsilon",
+        "event.leap.margin",
+        "mutation.rate.deleterious.apop",
+        "mutation.rate.deleterious.div",
+        "mutation.rate.beneficial.apop",
+        "mutation.rate.beneficial.div",
+        "mutation.rate.mutator",
+        "beneficialmutation.apoptosis.multiplier",
+        "beneficialmutation.division.multiplier",
+        "deleteriousmutation.apoptosis.multiplier",
+        "deleteriousmutation.division.multiplier",
+        "mutatormutation.mutation.multiplier",
+        "tissue.rows",
+        "tissue.cols",
+        "tissue.wraparound",
+    };
+
+    /** model parameters of older parameter files that are no longer read */
+    static final String[] RETIRED = {
+        "crypt.apoptosis.deadneighbor.supression",
+        "crypt.cancer.threshold",
+        "crypt.transientcompartment.size",
+    };
+
+
+    /**
+     * Compile the given parameters.  Throws IllegalArgumentException naming
+     * the offending key if a model parameter is unknown or of the wrong type.
+     *
+     */
+    static public SimulationConfig compile(SimulationParams $params)
+    {
+        Set<String> known = new HashSet<String>();
+        known.addAll(Arrays.asList(KEYS));
+        known.addAll(Arrays.asList(RETIRED));
+
+        for (Object o : $params._props.keySet())
+        {
+            String key = (String)o;
+            if (isModelKey(key) && !known.contains(key))
+            {
+                throw new IllegalArgumentException("unknown param: " + key);
+            }
+        }
+
+        return new SimulationConfig($params);
+    }
+
+
+    /**
+     * Return true if the given key lies in one of the model namespaces.
+     *
+     */
+    static boolean isModelKey(String $key)
+    {
+        for (String ns : NAMESPACES)
+        {
+            if ($key.startsWith(ns))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    static double readDouble(SimulationParams $params, String $key)
+    {
+        if (!$params.isConfigured($key))
+        {
+            return Double.NaN;
+        }
+
+        try
+        {
+            double d = $params.getDouble($key);
+            if (Double.isNaN(d))
+            {
+                throw new NumberFormatException();
+            }
+            return d;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(
+                "param is not a number: " + $key);
+        }
+    }
+
+
+    static int readInt(SimulationParams $params, String $key)
+    {
+        if (!$params.isConfigured($key))
+        {
+            return MISSING;
+        }
+
+        try
+        {
+            return $params.getInt($key);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(
+                "param is not an integer: " + $key);
+        }
+    }
+
+
+    static boolean readBoolean(SimulationParams $params, String $key)
+    {
+        if (!$params.isConfigured($key))
+        {
+            return false;
+        }
+
+        String val = $params.getString($key).trim();
+        if (!val.equalsIgnoreCase("true") && !val.equalsIgnoreCase("false"))
+        {
+            throw new IllegalArgumentException(
+                "param is not a boolean: " + $key);
+        }
+        return Boolean.valueOf(val).booleanValue();
+    }
+
+
+    /**
+     * Return true if simulation.engine names the given engine.
+     *
+     */
+    static boolean isEngine(SimulationParams $params, String $engine)
+    {
+        return $params.isConfigured("simulation.engine")
+            && $params.getString("simulation.engine").trim().equals($engine);
+    }
+
+
+    /**
+     * Refuse event floors and thinning under simulation.engine=cr-ssa:
+     * composition-rejection has propensities for exponential waits only.
+     *
+     */
+    static void checkCompositionRejection(SimulationParams $params)
+    {
+        if (!isEngine($params, "cr-ssa"))
+        {
+            return;
+        }
+
+        if (readDouble($params, "event.celldivision.floor") > 0.0
+            || readDouble($params, "event.apoptosis.floor") > 0.0
+            || readBoolean($params, "event.asymmetricdivision.thinning"))
+        {
+            throw new IllegalArgumentException(
+                "cr-ssa needs event floors of 0 and no thinning: "
+                + "simulation.engine");
+        }
+    }
+
+
+    /**
+     * Read event.rescale: redraw (the default) or nrm.
+     *
+     */
+    static boolean readRescale(SimulationParams $params)
+    {
+        if (!$params.isConfigured("event.rescale"))
+        {
+            return false;
+        }
+
+        String mode = $params.getString("event.rescale").trim();
+        if (mode.equals("nrm"))
+        {
+            return true;
+        }
+        else if (!mode.equals("redraw"))
+        {
+            throw new IllegalArgumentException("Invalid event.rescale");
+        }
+        return false;
+    }
+
+
+    /**
+     * Read event.leap.epsilon, the largest relative change of a crypt's
+     * population a leap should expect, on (0,1].
+     *
+     */
+    static double readLeapEpsilon(SimulationParams $params)
+    {
+        double epsilon = readDouble($params, "event.leap.epsilon");
+        if (Double.isNaN(epsilon))
+        {
+            return DEFAULT_LEAP_EPSILON;
+        }
+        if (!(epsilon > 0.0 && epsilon <= 1.0))
+        {
+            throw new IllegalArgumentException("Invalid event.leap.epsilon");
+        }
+        return epsilon;
+    }
+
+
+    /**
+     * Read event.leap.margin, the distance in stem cells from the crypt
+     * death and bifurcation thresholds at which a crypt stops leaping.
+     *
+     */
+    static int readLeapMargin(SimulationParams $params)
+    {
+        int margin = readInt($params, "event.leap.margin");
+        if (margin == MISSING)
+        {
+            return DEFAULT_LEAP_MARGIN;
+        }
+        if (margin < 1)
+        {
+            throw new IllegalArgumentException("Invalid event.leap.margin");
+        }
+        return margin;
+    }
+
+
+    /**
+     * Return the factor on the apoptosis rate of a crypt of the given
+     * population without dead neighbors.
+     *
+     */
+    static double apoptosisFactor(int $numCells,
+                                  int $mean,
+                                  int $stdev,
+                                  double $multiplier)
+    {
+        double distanceFromMean  = ($numCells - $mean)/$stdev;
+        if (distanceFromMean <= 0) 
+        {
+            return 1.0;
+        }
+        return Math.pow($multiplier, Math.abs(distanceFromMean));
+    }
+
+
+    /**
+     * Return the factor on the division rate of a crypt of the given
+     * population, before any dead neighbor multiplier.
+     *
+     */
+    static double divisionFactor(int $numCells,
+                                 int $mean,
+                                 int $stdev,
+                                 double $multiplier)
+    {
+        double distanceFromMean  = ($numCells - $mean)/$stdev;
+        if (distanceFromMean >= 0) 
+        {
+            return 1.0;
+        }
+        return Math.pow($multiplier, Math.abs(distanceFromMean));
+    }
+
+
+    static double present(double $value, String $key)
+    {
+        if (Double.isNaN($value))
+        {
+            throw new IllegalArgumentException("no param: " + $key);
+        }
+        return $value;
+    }
+
+
+    static int present(int $value, String $key)
+    {
+        if ($value == MISSING)
+        {
+            throw new IllegalArgumentException("no param: " + $key);
+        }
+        return $value;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    final double _apoptosisRate;
+    final double _divisionRate;
+    final double _mutationRate;
+    final double _mutationRateMax;
+    final double _tsgMutationRate;
+    final double _tsgMutationRateMax;
+    final int _asymmetricRatio;
+    final int _tacSize;
+
+    final int _meanCells;
+    final int _stdevCells;
+    final double _cryptApoptosisMultiplier;
+    final double _cryptDivisionMultiplier;
+    final double _deadNeighborDivisionMultiplier;
+    final double _bifurcationRatio;
+
+    final double _uncontrolledGrowth;
+    final int _tsgThreshold;
+
+    final double _divisionFloor;
+    final double _apoptosisFloor;
+    final boolean _rescale;
+    final boolean _thinning;
+
+    /** crypts advance by tau-leaping (simulation.engine=tau-leap) */
+    final boolean _leaping;
+    final double _leapEpsilon;
+    final int _leapMargin;
+
+    /** check lookup tables against their formulas */
+    final boolean _checkTables;
+
+    /** seed of the run's generator, -1 to seed it from the clock */
+    final long _seed;
+
+    final double _deleteriousApop;
+    final double _deleteriousDiv;
+    final double _beneficialApop;
+    final double _beneficialDiv;
+    final double _mutator;
+
+    final double _beneficialApopMultiplier;
+    final double _beneficialDivMultiplier;
+    final double _deleteriousApopMultiplier;
+    final double _deleteriousDivMultiplier;
+    final double _mutatorMultiplier;
+
+    final int _rows;
+    final int _cols;
+    final boolean _wraparound;
+    final boolean _hasWraparound;
+
+    /** stem cells above which a crypt is cancerous */
+    final long _cancerThreshold;
+
+    /** stem cells at which a crypt with a dead neighbor may bifurcate */
+    final long _bifurcationThreshold;
+
+    /** upper bounds of the mutation types on [0,1), in createRandom order */
+    final double _delApopBound;
+    final double _delDivBound;
+    final double _benApopBound;
+    final double _benDivBound;
+    final double _mutatorBound;
+
+    /** apoptosis factor by stem cell count, null if not configured */
+    final double[] _apoptosisFactors;
+
+    /** division factor by stem cell count, null if not configured */
+    final double[] _divisionFactors;
+
+
+    SimulationConfig(SimulationParams $params)
+    {
+        _apoptosisRate = readDouble($params, "stemcell.apoptosisrate.base");
+        _divisionRate = readDouble($params, "stemcell.divisionrate.base");
+        _mutationRate = readDouble($params, "stemcell.mutationrate.base");
+        _mutationRateMax = readDouble($params, "stemcell.mutationrate.max");
+        _tsgMutationRate =
+            readDouble($params, "stemcell.tsgmutationrate.base");
+        _tsgMutationRateMax =
+            readDouble($params, "stemcell.tsgmutationrate.max");
+        _asymmetricRatio =
+            readInt($params, "stemcell.asymmetricdivision.ratio");
+        _tacSize = readInt($params, "stemcell.tacsize.base");
+
+        _meanCells = readInt($params, "crypt.numcells.mean");
+        _stdevCells = readInt($params, "crypt.numcells.standarddeviation");
+        _cryptApoptosisMultiplier =
+            readDouble($params, "crypt.apoptosis.multiplier");
+        _cryptDivisionMultiplier =
+            readDouble($params, "crypt.division.multiplier");
+        _deadNeighborDivisionMultiplier =
+            readDouble($params, "crypt.division.deadneighbor.multiplier");
+        _bifurcationRatio =
+            readDouble($params, "crypt.bifurcation.threshold.ratio");
+
+        _uncontrolledGrowth =
+            readDouble($params, "cancer.uncontrolledgrowth.threshold");
+        _tsgThreshold = readInt($params, "cancer.tsg.threshold");
+
+        _divisionFloor = readDouble($params, "event.celldivision.floor");
+        _apoptosisFloor = readDouble($params, "event.apoptosis.floor");
+        _rescale = readRescale($params);
+        _thinning = readBoolean($params, "event.asymmetricdivision.thinning");
+        _leaping = isEngine($params, "tau-leap");
+        _leapEpsilon = readLeapEpsilon($params);
+        _leapMargin = readLeapMargin($params);
+        _checkTables = $params.isTrue("simulation.debug.checktables");
+        _seed = Simulation.readSeed($params);
+
+        checkCompositionRejection($params);
+
+        _deleteriousApop =
+            readDouble($params, "mutation.rate.deleterious.apop");
+        _deleteriousDiv = readDouble($params, "mutation.rate.deleterious.div");
+        _beneficialApop = readDouble($params, "mutation.rate.beneficial.apop");
+        _beneficialDiv = readDouble($params, "mutation.rate.beneficial.div");
+        _mutator = readDouble($params, "mutation.rate.mutator");
+
+        _beneficialApopMultiplier =
+            readDouble($params, "beneficialmutation.apoptosis.multiplier");
+        _beneficialDivMultiplier =
+            readDouble($params, "beneficialmutation.division.multiplier");
+        _deleteriousApopMultiplier =
+            readDouble($params, "deleteriousmutation.apoptosis.multiplier");
+        _deleteriousDivMultiplier =
+            readDouble($params, "deleteriousmutation.division.multiplier");
+        _mutatorMultiplier =
+            readDouble($params, "mutatormutation.mutation.multiplier");
+
+        _rows = readInt($params, "tissue.rows");
+        _cols = readInt($params, "tissue.cols");
+        _wraparound = readBoolean($params, "tissue.wraparound");
+        _hasWraparound = $params.isConfigured("tissue.wraparound");
+
+        // the same arithmetic the crypt and crypt change event used to do
+        // on every call
+        double mean = (double)_meanCells;
+        _cancerThreshold = Math.round(mean * _uncontrolledGrowth);
+        _bifurcationThreshold = Math.round(mean * _bifurcationRatio);
+
+        // summed in the order Mutation.createRandom() used to sum them
+        _delApopBound = _deleteriousApop;
+        _delDivBound = _delApopBound + _deleteriousDiv;
+        _benApopBound = _delDivBound + _beneficialApop;
+        _benDivBound = _benApopBound + _beneficialDiv;
+        _mutatorBound = _benDivBound + _mutator;
+        if (_mutatorBound > MAX_MUTATION_TOTAL)
+        {
+            throw new IllegalArgumentException(
+                "mutation proportions sum past 1: mutation.rate");
+        }
+
+        // crypt effects by stem cell count, well past the cancer threshold;
+        // larger crypts compute theirs on demand
+        boolean populated = _meanCells != MISSING && _stdevCells > 0;
+        int size = Math.max(MIN_EFFECT_TABLE, 4 * _meanCells + 1);
+        if (populated && !Double.isNaN(_cryptApoptosisMultiplier))
+        {
+            _apoptosisFactors = new double[size];
+            for (int n=0; n<size; n++)
+            {
+                _apoptosisFactors[n] = apoptosisFactor(
+                    n, _meanCells, _stdevCells, _cryptApoptosisMultiplier);
+            }
+        }
+        else
+        {
+            _apoptosisFactors = null;
+        }
+        if (populated && !Double.isNaN(_cryptDivisionMultiplier))
+        {
+            _divisionFactors = new double[size];
+            for (int n=0; n<size; n++)
+            {
+                _divisionFactors[n] = divisionFactor(
+                    n, _meanCells, _stdevCells, _cryptDivisionMultiplier);
+            }
+        }
+        else
+        {
+            _divisionFactors = null;
+        }
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Stem cells
+    ////////////////////////////////////////////////////////////////////////////
+
+    public double getApoptosisRate()
+    {
+        return present(_apoptosisRate, "stemcell.apoptosisrate.base");
+    }
+
+    public double getDivisionRate()
+    {
+        return present(_divisionRate, "stemcell.divisionrate.base");
+    }
+
+    public double getMutationRate()
+    {
+        return present(_mutationRate, "stemcell.mutationrate.base");
+    }
+
+    public double getMutationRateMax()
+    {
+        return present(_mutationRateMax, "stemcell.mutationrate.max");
+    }
+
+    public double getTSGMutationRate()
+    {
+        return present(_tsgMutationRate, "stemcell.tsgmutationrate.base");
+    }
+
+    public double getTSGMutationRateMax()
+    {
+        return present(_tsgMutationRateMax, "stemcell.tsgmutationrate.max");
+    }
+
+    public int getAsymmetricDivisionRatio()
+    {
+        return present(_asymmetricRatio, "stemcell.asymmetricdivision.ratio");
+    }
+
+    public int getTACSize()
+    {
+        return present(_tacSize, "stemcell.tacsize.base");
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Crypts
+    ////////////////////////////////////////////////////////////////////////////
+
+    public int getMeanStemCells()
+    {
+        return present(_meanCells, "crypt.numcells.mean");
+    }
+
+    public int getStemCellDeviation()
+    {
+        return present(_stdevCells, "crypt.numcells.standarddeviation");
+    }
+
+    public double getCryptApoptosisMultiplier()
+    {
+        return present(_cryptApoptosisMultiplier,
+                       "crypt.apoptosis.multiplier");
+    }
+
+    public double getCryptDivisionMultiplier()
+    {
+        return present(_cryptDivisionMultiplier, "crypt.division.multiplier");
+    }
+
+    public double getDeadNeighborDivisionMultiplier()
+    {
+        return present(_deadNeighborDivisionMultiplier,
+                       "crypt.division.deadneighbor.multiplier");
+    }
+
+    /**
+     * Return the factor a crypt of the given number of stem cells and no
+     * dead neighbors applies to their apoptosis rates:
+     * crypt.apoptosis.multiplier to the power of the whole standard
+     * deviations above the mean, 1 at or below it.
+     *
+     */
+    public double getCryptApoptosisFactor(int $numCells)
+    {
+        if (_apoptosisFactors != null && $numCells < _apoptosisFactors.length)
+        {
+            return _apoptosisFactors[$numCells];
+        }
+        
+        // the multiplier is only needed above the mean
+        int mean = getMeanStemCells();
+        int stdev = getStemCellDeviation();
+        if (($numCells - mean)/stdev <= 0)
+        {
+            return 1.0;
+        }
+        return apoptosisFactor($numCells, mean, stdev, 
+                               getCryptApoptosisMultiplier());
+    }
+
+    /**
+     * Return the factor a crypt of the given number of stem cells applies to
+     * their division rates before any dead neighbor multiplier:
+     * crypt.division.multiplier to the power of the whole standard
+     * deviations below the mean, 1 at or above it.
+     *
+     */
+    public double getCryptDivisionFactor(int $numCells)
+    {
+        if (_divisionFactors != null && $numCells < _divisionFactors.length)
+        {
+            return _divisionFactors[$numCells];
+        }
+        
+        // the multiplier is only needed below the mean
+        int mean = getMeanStemCells();
+        int stdev = getStemCellDeviation();
+        if (($numCells - mean)/stdev >= 0)
+        {
+            return 1.0;
+        }
+        return divisionFactor($numCells, mean, stdev, 
+                              getCryptDivisionMultiplier());
+    }
+
+    /**
+     * Return the number of stem cells at which a crypt with a dead neighbor
+     * bifurcates.
+     *
+     */
+    public long getBifurcationThreshold()
+    {
+        getMeanStemCells();
+        present(_bifurcationRatio, "crypt.bifurcation.threshold.ratio");
+        return _bifurcationThreshold;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Cancer
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the number of stem cells above which a crypt is cancerous.
+     *
+     */
+    public long getCancerThreshold()
+    {
+        getMeanStemCells();
+        present(_uncontrolledGrowth, "cancer.uncontrolledgrowth.threshold");
+        return _cancerThreshold;
+    }
+
+    public int getTSGThreshold()
+    {
+        return present(_tsgThreshold, "cancer.tsg.threshold");
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Events
+    ////////////////////////////////////////////////////////////////////////////
+
+    public double getDivisionFloor()
+    {
+        return present(_divisionFloor, "event.celldivision.floor");
+    }
+
+    public double getApoptosisFloor()
+    {
+        return present(_apoptosisFloor, "event.apoptosis.floor");
+    }
+
+    /**
+     * Return true if pending events are rescaled to their cells' new rates
+     * on a crypt change (event.rescale=nrm) rather than drawn again
+     * (event.rescale=redraw, the default).
+     *
+     */
+    public boolean isRescaling()
+    {
+        return _rescale;
+    }
+
+    /**
+     * Return true if asymmetric divisions that neither mutate nor hit a TSG
+     * are folded into the next one that does
+     * (event.asymmetricdivision.thinning).
+     *
+     */
+    public boolean isThinningAsymmetricDivisions()
+    {
+        return _thinning;
+    }
+
+    /**
+     * Return true if crypts away from their thresholds advance by
+     * tau-leaping rather than by their cells' events
+     * (simulation.engine=tau-leap).
+     *
+     */
+    public boolean isLeaping()
+    {
+        return _leaping;
+    }
+
+    public double getLeapEpsilon()
+    {
+        return _leapEpsilon;
+    }
+
+    public int getLeapMargin()
+    {
+        return _leapMargin;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Mutations
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the upper bounds on [0,1) of the deleterious apoptosis,
+     * deleterious division, beneficial apoptosis, beneficial division and
+     * mutator mutation types, each the sum of its own proportion and those
+     * before it.
+     *
+     */
+    public double getDeleteriousApopBound()
+    {
+        return present(_delApopBound, "mutation.rate.deleterious.apop");
+    }
+
+    public double getDeleteriousDivBound()
+    {
+        return present(_delDivBound, "mutation.rate.deleterious.div");
+    }
+
+    public double getBeneficialApopBound()
+    {
+        return present(_benApopBound, "mutation.rate.beneficial.apop");
+    }
+
+    public double getBeneficialDivBound()
+    {
+        return present(_benDivBound, "mutation.rate.beneficial.div");
+    }
+
+    public double getMutatorBound()
+    {
+        return present(_mutatorBound, "mutation.rate.mutator");
+    }
+
+    public double getBeneficialApopMultiplier()
+    {
+        return present(_beneficialApopMultiplier,
+                       "beneficialmutation.apoptosis.multiplier");
+    }
+
+    public double getBeneficialDivMultiplier()
+    {
+        return present(_beneficialDivMultiplier,
+                       "beneficialmutation.division.multiplier");
+    }
+
+    public double getDeleteriousApopMultiplier()
+    {
+        return present(_deleteriousApopMultiplier,
+                       "deleteriousmutation.apoptosis.multiplier");
+    }
+
+    public double getDeleteriousDivMultiplier()
+    {
+        return present(_deleteriousDivMultiplier,
+                       "deleteriousmutation.division.multiplier");
+    }
+
+    public double getMutatorMultiplier()
+    {
+        return present(_mutatorMultiplier,
+                       "mutatormutation.mutation.multiplier");
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Tissue
+    ////////////////////////////////////////////////////////////////////////////
+
+    public int getRows()
+    {
+        return present(_rows, "tissue.rows");
+    }
+
+    public int getCols()
+    {
+        return present(_cols, "tissue.cols");
+    }
+
+    /**
+     * Return true if lookup tables should check every value they return
+     * against the formula they tabulate (simulation.debug.checktables).
+     *
+     */
+    public boolean isCheckingTables()
+    {
+        return _checkTables;
+    }
+
+    /**
+     * Return the seed of the run's generator (simulation.seed), or -1 if the
+     * generator seeds itself from the clock.
+     *
+     */
+    public long getSeed()
+    {
+        return _seed;
+    }
+
+    public boolean isWraparound()
+    {
+        if (!_hasWraparound)
+        {
+            throw new IllegalArgumentException("no param: tissue.wraparound");
+        }
+        return _wraparound;
+    }
+}
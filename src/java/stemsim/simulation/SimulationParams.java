@@ -27,7 +27,11 @@ public class SimulationParams
         Properties props = new Properties();
         props.load(in);
         
-        return new SimulationParams(props);
+        // fail on bad model parameters now rather than mid-run
+        SimulationParams params = new SimulationParams(props);
+        params.getConfig();
+        
+        return params;
     }
 
     
@@ -47,6 +51,9 @@ public class SimulationParams
     /** A cache for Boolean parameter values */
     Map<String,Boolean> _booleanCache = new HashMap<String,Boolean>();
 
+    /** The compiled model parameters, null until needed or after a change */
+    SimulationConfig _config = null;
+
 
     public SimulationParams()
     {
@@ -67,6 +74,23 @@ public class SimulationParams
         _props.setProperty($key, $value);
         
         _doubleCache.remove($key);
+        _integerCache.remove($key);
+        _booleanCache.remove($key);
+        _config = null;
+    }
+
+    /**
+     * Return the typed snapshot of the model parameters, compiling it if
+     * the parameters changed since it was last compiled.
+     *
+     */
+    public SimulationConfig getConfig()
+    {
+        if (_config == null)
+        {
+            _config = SimulationConfig.compile(this);
+        }
+        return _config;
     }
 
     public boolean isConfigured(String $param)
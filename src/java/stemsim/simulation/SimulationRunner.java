@@ -4,6 +4,9 @@ package stemsim.simulation;
 import java.io.*;
 import java.text.*;
 import java.util.*;
+
+import lib.SplitMix;
+
 import stemsim.event.*;
 import stemsim.object.*;
 
@@ -26,6 +29,26 @@ public class SimulationRunner
     static DateFormat datef = new SimpleDateFormat("MM.dd.yy_HH.mm.ss");
     
     
+    /**
+     * Return the seed of the given run, counted from 0, of a run set with
+     * the given master seed.  The first run takes the master seed itself,
+     * so any run is repeated by a single run with the seed it recorded; the
+     * others take the master seed scrambled with their number by the
+     * SplitMix finalizer, so their streams share nothing visible.
+     *
+     */
+    static public long deriveSeed(long $master, int $run)
+    {
+        if ($run == 0)
+        {
+            return $master;
+        }
+        
+        long z = SplitMix.mix64($master + $run * SplitMix.GOLDEN_GAMMA);
+        return (z >>> 1) % Simulation.SEED_RANGE;
+    }
+    
+    
     /**
      * Main method executable from command line.
      *
@@ -125,11 +148,24 @@ public class SimulationRunner
         simulation.setParams($params);
         simulation.setOutputDirectory(_outputDir);
 
+        // the master seed of the run set, from the clock if not given; the
+        // points of a sweep with a given seed run with the same seeds
+        long master = Simulation.readSeed($params);
+        if (master < 0)
+        {
+            master = System.currentTimeMillis() % Simulation.SEED_RANGE;
+        }
+        String masterSeed = $params.isConfigured("simulation.seed")
+            ? $params.getString("simulation.seed") : "";
+
         // run the simulation with the given parameters a number of times
         // configured in the simulation params
         final int numRuns = $params.getInt("runset.runs");
         for (int i=0; i<numRuns; i++)
         {
+            $params.setProperty("simulation.seed", 
+                                String.valueOf(deriveSeed(master, i)));
+
             String is = String.valueOf(i + 1);
             if (i < 9)
             {
@@ -156,6 +192,7 @@ public class SimulationRunner
             xml.flush();
         }
         
+        $params.setProperty("simulation.seed", masterSeed);
     }
 
     
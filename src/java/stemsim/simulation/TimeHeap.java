@@ -0,0 +1,408 @@
+package stemsim.simulation;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A binary min-heap of int items keyed on (time, sequence), held in parallel
+ * primitive arrays.
+ *
+ * Items are small non-negative ints chosen by the caller, typically slots in
+ * a table of objects.  The heap keeps its own copy of each key, so sifting
+ * never dereferences the objects themselves, and records the heap position
+ * of every item so any item can be removed or re-keyed in O(log n).  Keys
+ * with distinct sequence numbers are totally ordered, which makes the order
+ * of equal times independent of the shape of the heap.
+ *
+ */
+public class TimeHeap
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** Time key at each heap position */
+    double[] _time;
+
+    /** Sequence key at each heap position */
+    long[] _seq;
+
+    /** Item at each heap position */
+    int[] _item;
+
+    /** Heap position of each item, -1 if not in the heap */
+    int[] _pos;
+
+    /** Number of items in the heap */
+    int _size = 0;
+
+
+    /**
+     * Create a heap with room for the given number of items.
+     *
+     */
+    public TimeHeap(int $capacity)
+    {
+        $capacity = Math.max($capacity, 1);
+        _time = new double[$capacity];
+        _seq = new long[$capacity];
+        _item = new int[$capacity];
+        _pos = new int[$capacity];
+        Arrays.fill(_pos, -1);
+    }
+
+
+    /**
+     * Add an item that is not in the heap.
+     *
+     */
+    public void add(int $item, double $time, long $seq)
+    {
+        ensureItem($item);
+        if (_size == _time.length)
+        {
+            grow(_size * 2);
+        }
+        siftUp(_size++, $time, $seq, $item);
+    }
+
+
+    /**
+     * Change the key of an item in the heap.
+     *
+     */
+    public void update(int $item, double $time, long $seq)
+    {
+        int k = _pos[$item];
+        if (before($time, $seq, _time[k], _seq[k]))
+        {
+            siftUp(k, $time, $seq, $item);
+        }
+        else
+        {
+            siftDown(k, $time, $seq, $item);
+        }
+    }
+
+
+    /**
+     * Remove an item from the heap.  Return false if it was not there.
+     *
+     */
+    public boolean remove(int $item)
+    {
+        if (!contains($item))
+        {
+            return false;
+        }
+
+        removeAt(_pos[$item]);
+        return true;
+    }
+
+
+    /**
+     * Remove and return the first item, -1 if the heap is empty.
+     *
+     */
+    public int poll()
+    {
+        if (_size == 0)
+        {
+            return -1;
+        }
+
+        int item = _item[0];
+        removeAt(0);
+        return item;
+    }
+
+
+    /**
+     * Return the first item, -1 if the heap is empty.
+     *
+     */
+    public int peek()
+    {
+        return (_size == 0) ? -1 : _item[0];
+    }
+
+
+    /**
+     * Return the time of the first item, infinity if the heap is empty.
+     *
+     */
+    public double peekTime()
+    {
+        return (_size == 0) ? Double.POSITIVE_INFINITY : _time[0];
+    }
+
+
+    /**
+     * Return true if the item is in the heap.
+     *
+     */
+    public boolean contains(int $item)
+    {
+        return $item >= 0 && $item < _pos.length && _pos[$item] >= 0;
+    }
+
+
+    /**
+     * Return the time key of an item in the heap.
+     *
+     */
+    public double getTime(int $item)
+    {
+        return _time[_pos[$item]];
+    }
+
+
+    /**
+     * Return the sequence key of an item in the heap.
+     *
+     */
+    public long getSequence(int $item)
+    {
+        return _seq[_pos[$item]];
+    }
+
+
+    /**
+     * Return the item at heap position $k, for iterating over the heap.
+     *
+     */
+    public int itemAt(int $k)
+    {
+        return _item[$k];
+    }
+
+
+    /**
+     * Return the number of items in the heap.
+     *
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+
+    /**
+     * Set the key of an item, appending the item if it is not in the heap,
+     * without restoring heap order.  Call heapify() once all keys are set.
+     *
+     */
+    public void set(int $item, double $time, long $seq)
+    {
+        int k = contains($item) ? _pos[$item] : -1;
+        if (k < 0)
+        {
+            ensureItem($item);
+            if (_size == _time.length)
+            {
+                grow(_size * 2);
+            }
+            k = _size++;
+        }
+        place(k, $time, $seq, $item);
+    }
+
+
+    /**
+     * Return true if rebuilding the heap with heapify() is cheaper than
+     * re-keying the given number of items one at a time.
+     *
+     */
+    public boolean cheaperToRebuild(int $updates)
+    {
+        int depth = 32 - Integer.numberOfLeadingZeros(_size + 1);
+        return (long)$updates * depth > 2L * _size;
+    }
+
+
+    /**
+     * Remove the first $n items of the given array from the heap at once and
+     * rebuild the heap in linear time.
+     *
+     */
+    public void removeAll(int[] $items, int $n)
+    {
+        for (int i=0; i<$n; i++)
+        {
+            int k = _pos[$items[i]];
+            if (k >= 0)
+            {
+                _item[k] = -1;
+                _pos[$items[i]] = -1;
+            }
+        }
+
+        int n = 0;
+        for (int k=0; k<_size; k++)
+        {
+            if (_item[k] >= 0)
+            {
+                _time[n] = _time[k];
+                _seq[n] = _seq[k];
+                _item[n] = _item[k];
+                n++;
+            }
+        }
+        _size = n;
+
+        heapify();
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Heap maintenance
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return true if key ($t1, $s1) comes before key ($t2, $s2).
+     *
+     */
+    static boolean before(double $t1, long $s1, double $t2, long $s2)
+    {
+        return $t1 < $t2 || ($t1 == $t2 && $s1 < $s2);
+    }
+
+
+    /**
+     * Restore heap order over the whole array (Floyd).
+     *
+     */
+    public void heapify()
+    {
+        for (int k=0; k<_size; k++)
+        {
+            _pos[_item[k]] = k;
+        }
+        for (int k=(_size >>> 1) - 1; k>=0; k--)
+        {
+            siftDown(k, _time[k], _seq[k], _item[k]);
+        }
+    }
+
+
+    /**
+     * Remove the item at heap position $k.
+     *
+     */
+    void removeAt(int $k)
+    {
+        int removed = _item[$k];
+        int s = --_size;
+        if (s != $k)
+        {
+            double t = _time[s];
+            long q = _seq[s];
+            int item = _item[s];
+            siftDown($k, t, q, item);
+            if (_item[$k] == item)
+            {
+                siftUp($k, t, q, item);
+            }
+        }
+        _pos[removed] = -1;
+    }
+
+
+    /**
+     * Move a key up from position $k until its parent comes before it.
+     *
+     */
+    void siftUp(int $k, double $t, long $s, int $item)
+    {
+        while ($k > 0)
+        {
+            int parent = ($k - 1) >>> 1;
+            if (!before($t, $s, _time[parent], _seq[parent]))
+            {
+                break;
+            }
+            place($k, _time[parent], _seq[parent], _item[parent]);
+            $k = parent;
+        }
+        place($k, $t, $s, $item);
+    }
+
+
+    /**
+     * Move a key down from position $k until its children come after it.
+     *
+     */
+    void siftDown(int $k, double $t, long $s, int $item)
+    {
+        int half = _size >>> 1;
+        while ($k < half)
+        {
+            int child = ($k << 1) + 1;
+            int right = child + 1;
+            if (right < _size
+                && before(_time[right], _seq[right], _time[child], _seq[child]))
+            {
+                child = right;
+            }
+            if (!before(_time[child], _seq[child], $t, $s))
+            {
+                break;
+            }
+            place($k, _time[child], _seq[child], _item[child]);
+            $k = child;
+        }
+        place($k, $t, $s, $item);
+    }
+
+
+    /**
+     * Store a key at heap position $k and record the item's position.
+     *
+     */
+    void place(int $k, double $t, long $s, int $item)
+    {
+        _time[$k] = $t;
+        _seq[$k] = $s;
+        _item[$k] = $item;
+        _pos[$item] = $k;
+    }
+
+
+    /**
+     * Make sure the position table covers the given item.
+     *
+     */
+    void ensureItem(int $item)
+    {
+        if ($item >= _pos.length)
+        {
+            int len = Math.max($item + 1, _pos.length * 2);
+            int[] pos = new int[len];
+            System.arraycopy(_pos, 0, pos, 0, _pos.length);
+            Arrays.fill(pos, _pos.length, len, -1);
+            _pos = pos;
+        }
+    }
+
+
+    /**
+     * Grow the heap arrays.
+     *
+     */
+    void grow(int $capacity)
+    {
+        double[] time = new double[$capacity];
+        System.arraycopy(_time, 0, time, 0, _size);
+        _time = time;
+
+        long[] seq = new long[$capacity];
+        System.arraycopy(_seq, 0, seq, 0, _size);
+        _seq = seq;
+
+        int[] item = new int[$capacity];
+        System.arraycopy(_item, 0, item, 0, _size);
+        _item = item;
+    }
+}
@@ -107,6 +107,9 @@ public class TissueSimulation extends Simulation
         pw.println("<tissuesim>");
         pw.println();
         
+        pw.println("<seed>" + getSeed() + "</seed>");
+        pw.println();
+        
         pw.println("<lastevent>");
         if (getLastEvent() != null)
         {
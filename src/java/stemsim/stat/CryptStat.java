@@ -600,7 +600,7 @@ public class CryptStat extends SimEventListenerAdapter
     }
     
     
-    static List<Double> lifespans(File $file)
+    public static List<Double> lifespans(File $file)
         throws IOException, FileNotFoundException
     {
         List<Double> lives = new ArrayList<Double>();
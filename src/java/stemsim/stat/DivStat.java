@@ -500,7 +500,7 @@ public class DivStat extends SimEventListenerAdapter
     ////////////////////////////////////////////////////////////////////////////
     
     int _symmDivs = 0;
-    int _asymmDivs = 0;
+    double _asymmDivs = 0;
     
     double _sumSymmMutRate = 0.0;
     double _sumAsymmMutRate = 0.0;
@@ -533,9 +533,11 @@ public class DivStat extends SimEventListenerAdapter
     {
         StemCell subject = $event.getSubject();
         
-        _asymmDivs++;
+        // a thinned event stands for the no-op divisions before it too
+        long divs = $event.getDivisions();
+        _asymmDivs += divs;
         
-        _sumAsymmMutRate += subject.getMutationRate();
+        _sumAsymmMutRate += divs * subject.getMutationRate();
     }
     
     
@@ -555,6 +557,33 @@ public class DivStat extends SimEventListenerAdapter
 
         double time = $event.getTime();
         
+        // the divisions thinning and leaping left without an event,
+        // including those of the cells' pending events
+        _symmDivs += sim.getSymmetricDivisions();
+        _sumSymmMutRate += sim.getSymmetricMutationSum();
+        _asymmDivs += sim.getAsymmetricDivisions();
+        _sumAsymmMutRate += sim.getAsymmetricMutationSum();
+        
+        List<Crypt> crypts = new ArrayList<Crypt>();
+        if (sim instanceof TissueSimulation)
+        {
+            crypts.addAll(((TissueSimulation)sim).getTissue().getCrypts());
+        }
+        else if (sim instanceof CryptSimulation)
+        {
+            crypts.add(((CryptSimulation)sim).getCrypt());
+        }
+        for (Crypt crypt : crypts)
+        {
+            for (StemCell cell : crypt.getStemCells())
+            {
+                double divs = 
+                    AsymmetricDivisionEvent.getPassedDivisions(cell, time);
+                _asymmDivs += divs;
+                _sumAsymmMutRate += divs * cell.getMutationRate();
+            }
+        }
+        
         File outfile = null;
         FileWriter fw = null;
         PrintWriter out = null;
@@ -603,7 +632,7 @@ public class DivStat extends SimEventListenerAdapter
             out.print("\t");
             out.print(_symmDivs);
             out.print("\t");
-            out.print(_asymmDivs);
+            out.print(Math.round(_asymmDivs));
             out.print("\t");
             out.print(lform.format(avgSymmMut));
             out.print("\t");
@@ -153,6 +153,19 @@ public class FixationStat extends SimEventListenerAdapter
     }
     
     
+    /**
+     * After a leap, check the crypt for fixation -- its cells may have
+     * mutated without division events.
+     *
+     */
+    public void leap(CryptLeapEvent $event)
+    {
+        Crypt crypt = $event.getSubject();
+        
+        if (isMutator(crypt)) fix(crypt, $event.getTime());
+    }
+    
+    
     /**
      * At the end of the simulation, write the output file.
      *
@@ -113,6 +113,12 @@ public class StemPopStat extends SimEventListenerAdapter
     }
 
     
+    public void leap(CryptLeapEvent $event)
+    {
+        takeMeasurement($event.getSubject(), $event.getTime(), false);
+    }
+
+    
     void takeMeasurement(Crypt $crypt, double $time, boolean $bifurcation)
     {
         if ($crypt == null)
@@ -231,6 +231,15 @@ public class TissuePopStat extends SimEventListenerAdapter
     }
 
     
+    public void leap(CryptLeapEvent $event)
+    {
+        Tissue tissue = $event.getSubject().getTissue();
+        if (tissue == null) return;
+        
+        takeMeasurement(tissue, $event.getTime());
+    }
+
+    
     void takeMeasurement(Tissue $tissue, double $time)
     {
         double lasttime = -_interval;
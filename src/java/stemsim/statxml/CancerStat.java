@@ -480,6 +480,24 @@ public class CancerStat extends GenericStat
     }
         
     
+    /**
+     * Return the times of the runs that developed cancer.
+     *
+     */
+    public List<Double> cancerTimes()
+    {
+        List<Double> times = new ArrayList<Double>();
+        for (RunStats stats : validStats())
+        {
+            if (stats.cancerous)
+            {
+                times.add(stats.time);
+            }
+        }
+        return times;
+    }
+    
+    
     /**
      * Return the mean number of mutations per stem cell averaged across
      * simulation runs.
@@ -0,0 +1,155 @@
+package stemsim.util;
+
+import java.util.*;
+
+
+/**
+ * A set of a few elements kept in an array in the order they were added.
+ * Membership is a linear scan, which for the dozen or so stem cells of a
+ * crypt costs less than hashing; get() reads the elements by position, so
+ * the event loop can walk them without creating an iterator.
+ *
+ */
+public class ArraySet<E> extends AbstractSet<E>
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** the elements, in the order they were added */
+    Object[] _elements = new Object[16];
+
+    /** number of elements */
+    int _size = 0;
+
+
+    /**
+     * Return the element at the given position.
+     *
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int $index)
+    {
+        if ($index >= _size)
+        {
+            throw new IndexOutOfBoundsException(String.valueOf($index));
+        }
+        return (E)_elements[$index];
+    }
+
+
+    public int size()
+    {
+        return _size;
+    }
+
+
+    public boolean contains(Object $o)
+    {
+        return indexOf($o) >= 0;
+    }
+
+
+    public boolean add(E $e)
+    {
+        if (indexOf($e) >= 0)
+        {
+            return false;
+        }
+
+        if (_size == _elements.length)
+        {
+            Object[] elements = new Object[_size * 2];
+            System.arraycopy(_elements, 0, elements, 0, _size);
+            _elements = elements;
+        }
+        _elements[_size++] = $e;
+        return true;
+    }
+
+
+    public boolean remove(Object $o)
+    {
+        int i = indexOf($o);
+        if (i < 0)
+        {
+            return false;
+        }
+
+        removeAt(i);
+        return true;
+    }
+
+
+    public void clear()
+    {
+        Arrays.fill(_elements, 0, _size, null);
+        _size = 0;
+    }
+
+
+    public Iterator<E> iterator()
+    {
+        return new Iterator<E>()
+        {
+            int _next = 0;
+            int _last = -1;
+
+            public boolean hasNext()
+            {
+                return _next < _size;
+            }
+
+            public E next()
+            {
+                if (_next >= _size)
+                {
+                    throw new NoSuchElementException();
+                }
+                _last = _next++;
+                return get(_last);
+            }
+
+            public void remove()
+            {
+                if (_last < 0)
+                {
+                    throw new IllegalStateException();
+                }
+                removeAt(_last);
+                _next = _last;
+                _last = -1;
+            }
+        };
+    }
+
+
+    /**
+     * Return the position of the given element, -1 if it is not held.
+     *
+     */
+    int indexOf(Object $o)
+    {
+        for (int i=0; i<_size; i++)
+        {
+            if (_elements[i] == $o || ($o != null && $o.equals(_elements[i])))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Remove the element at the given position, closing the gap so the
+     * others keep their order.
+     *
+     */
+    void removeAt(int $index)
+    {
+        System.arraycopy(_elements, $index + 1, _elements, $index,
+                         _size - $index - 1);
+        _elements[--_size] = null;
+    }
+}
@@ -0,0 +1,81 @@
+package lib;
+
+
+/**
+ * Measures the draws per second of each generator: plain uniforms, and
+ * exponential waits through Probability as the cell events draw them, by
+ * inversion, by the ziggurat and from buffers.
+ *
+ * usage: RandomSourceBenchmark [draws] [rounds]
+ *
+ * Each round times the given number of draws of each generator in turn;
+ * the first round warms the JIT up and is not reported.  The draws are
+ * summed and the sum printed so that the JIT cannot drop them.
+ *
+ */
+public class RandomSourceBenchmark
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    public static void main(String[] $args) throws Exception
+    {
+        int draws = ($args.length > 0) ? Integer.parseInt($args[0]) : 50000000;
+        int rounds = ($args.length > 1) ? Integer.parseInt($args[1]) : 5;
+
+        String[] names = {
+            "knuth", "xoshiro256", "splitmix",
+            "knuth ziggurat", "xoshiro256 ziggurat",
+            "knuth buffered", "xoshiro256 ziggurat buffered"
+        };
+        RandomSource[] sources = {
+            new KnuthRandom(), new Xoshiro256(), new SplitMix(),
+            new ZigguratSource(new KnuthRandom()),
+            new ZigguratSource(new Xoshiro256()),
+            new BufferedSource(new KnuthRandom(), 256),
+            new BufferedSource(new ZigguratSource(new Xoshiro256()), 256)
+        };
+        double sink = 0.0;
+
+        for (int round=0; round<=rounds; round++)
+        {
+            for (int i=0; i<sources.length; i++)
+            {
+                RandomSource r = sources[i];
+                r.seedRandom(1);
+
+                long t0 = System.nanoTime();
+                for (int j=0; j<draws; j++)
+                {
+                    sink += r.randomDouble();
+                }
+                long t1 = System.nanoTime();
+                for (int j=0; j<draws; j++)
+                {
+                    sink += Probability.RandomFromExponential(1.0, r);
+                }
+                long t2 = System.nanoTime();
+
+                if (round > 0)
+                {
+                    System.out.println(names[i]
+                                       + " uniform " + rate(draws, t1 - t0)
+                                       + " exponential " + rate(draws, t2 - t1)
+                                       + " M draws/s");
+                }
+            }
+        }
+        System.out.println("(sum " + sink + ")");
+    }
+
+
+    /**
+     * Return millions of draws per second, to one decimal.
+     *
+     */
+    static double rate(int $draws, long $nanos)
+    {
+        return Math.round((10.0 * $draws * 1000.0) / $nanos) / 10.0;
+    }
+}
@@ -0,0 +1,376 @@
+package lib;
+
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+/**
+ * Checks the generators against reference streams, and runs each through a
+ * small battery in the spirit of TestU01's: equidistribution of singles,
+ * pairs and triples, serial correlation and the frequency of each bit.
+ * Each statistic is scaled to a z-score and held under 5, so a sound
+ * generator fails by chance about once in a million.  Set the system
+ * property random.smoke.draws to run the battery longer.
+ *
+ */
+public class RandomSourceTest extends TestCase
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** draws per statistic of the battery */
+    static final int DRAWS = Integer.getInteger("random.smoke.draws", 200000);
+
+    /** largest z-score a statistic may reach */
+    static final double Z = 5.0;
+
+
+    /**
+     * Create each generator, seeded with the given seed.
+     *
+     */
+    static RandomSource[] sources(long $seed)
+    {
+        RandomSource[] sources = {
+            new KnuthRandom(), new Xoshiro256(), new SplitMix()
+        };
+        for (int i=0; i<sources.length; i++)
+        {
+            sources[i].seedRandom($seed);
+        }
+        return sources;
+    }
+
+
+    /**
+     * Return the z-score of a chi-square statistic over the given counts,
+     * all expected equal.
+     *
+     */
+    static double chiSquare(long[] $counts, long $total)
+    {
+        double expected = (double)$total / $counts.length;
+        double chi = 0.0;
+        for (int i=0; i<$counts.length; i++)
+        {
+            double d = $counts[i] - expected;
+            chi += (d * d) / expected;
+        }
+        int df = $counts.length - 1;
+        return (chi - df) / Math.sqrt(2.0 * df);
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    public void testReference()
+    {
+        // as java.util.SplittableRandom(42) gives them
+        SplitMix splitmix = new SplitMix();
+        splitmix.seedRandom(42);
+        assertEquals(-4767286540954276203L, splitmix.nextLong());
+        assertEquals(2949826092126892291L, splitmix.nextLong());
+        assertEquals(5139283748462763858L, splitmix.nextLong());
+
+        // as the authors' C code gives them, seeded by SplitMix64 from 42
+        Xoshiro256 xoshiro = new Xoshiro256();
+        xoshiro.seedRandom(42);
+        assertEquals(1546998764402558742L, xoshiro.nextLong());
+        assertEquals(6990951692964543102L, xoshiro.nextLong());
+        assertEquals(-5902157311460992607L, xoshiro.nextLong());
+        xoshiro.jump();
+        assertEquals(262834286681399601L, xoshiro.nextLong());
+        assertEquals(8590228844810902155L, xoshiro.nextLong());
+    }
+
+
+    public void testRepeatable()
+    {
+        RandomSource[] a = sources(12345);
+        RandomSource[] b = sources(12345);
+        RandomSource[] c = sources(12346);
+        for (int i=0; i<a.length; i++)
+        {
+            assertEquals(12345, a[i].getSeed());
+            boolean differs = false;
+            for (int j=0; j<1000; j++)
+            {
+                double x = a[i].randomDouble();
+                assertTrue(x >= 0.0 && x < 1.0);
+                assertEquals(x, b[i].randomDouble());
+                differs |= (x != c[i].randomDouble());
+            }
+            assertTrue(differs);
+        }
+    }
+
+
+    public void testSplit()
+    {
+        SplittableSource[] parents = { new Xoshiro256(), new SplitMix() };
+        for (int i=0; i<parents.length; i++)
+        {
+            SplittableSource parent = parents[i];
+            parent.seedRandom(7);
+            SplittableSource child = parent.split();
+
+            // the two streams go their own ways, uncorrelated
+            int n = DRAWS / 4;
+            double sum = 0.0;
+            int equal = 0;
+            for (int j=0; j<n; j++)
+            {
+                double x = parent.randomDouble();
+                double y = child.randomDouble();
+                if (x == y) equal++;
+                sum += (x - 0.5) * (y - 0.5);
+            }
+            assertEquals(0, equal);
+            assertTrue(Math.abs(sum / n) * Math.sqrt(n) * 12.0 < Z);
+        }
+
+        // a split xoshiro stream is the parent's as it stood
+        Xoshiro256 parent = new Xoshiro256();
+        parent.seedRandom(7);
+        Xoshiro256 copy = new Xoshiro256();
+        copy.seedRandom(7);
+        RandomSource child = parent.split();
+        for (int j=0; j<100; j++)
+        {
+            assertEquals(copy.randomDouble(), child.randomDouble());
+        }
+    }
+
+
+    public void testEquidistribution()
+    {
+        RandomSource[] sources = sources(2718);
+        for (int i=0; i<sources.length; i++)
+        {
+            RandomSource r = sources[i];
+            String name = r.getClass().getName();
+
+            long[] singles = new long[1024];
+            for (int j=0; j<DRAWS; j++)
+            {
+                singles[(int)(r.randomDouble() * 1024)]++;
+            }
+            assertTrue(name, Math.abs(chiSquare(singles, DRAWS)) < Z);
+
+            long[] pairs = new long[32 * 32];
+            for (int j=0; j<DRAWS; j++)
+            {
+                int a = (int)(r.randomDouble() * 32);
+                int b = (int)(r.randomDouble() * 32);
+                pairs[(a * 32) + b]++;
+            }
+            assertTrue(name, Math.abs(chiSquare(pairs, DRAWS)) < Z);
+
+            long[] triples = new long[10 * 10 * 10];
+            for (int j=0; j<DRAWS; j++)
+            {
+                int a = (int)(r.randomDouble() * 10);
+                int b = (int)(r.randomDouble() * 10);
+                int c = (int)(r.randomDouble() * 10);
+                triples[(((a * 10) + b) * 10) + c]++;
+            }
+            assertTrue(name, Math.abs(chiSquare(triples, DRAWS)) < Z);
+        }
+    }
+
+
+    public void testSerialCorrelation()
+    {
+        RandomSource[] sources = sources(31415);
+        for (int i=0; i<sources.length; i++)
+        {
+            RandomSource r = sources[i];
+
+            // lags 1 to 8 -- Knuth's generator has its taps at 24 and 55
+            int lags = 8;
+            double[] last = new double[lags];
+            double[] sums = new double[lags];
+            for (int j=0; j<DRAWS + lags; j++)
+            {
+                double x = r.randomDouble() - 0.5;
+                if (j >= lags)
+                {
+                    for (int k=0; k<lags; k++)
+                    {
+                        sums[k] += x * last[(j - k - 1) % lags];
+                    }
+                }
+                last[j % lags] = x;
+            }
+
+            // each product has a variance of 1/144
+            for (int k=0; k<lags; k++)
+            {
+                double z = (sums[k] / DRAWS) * Math.sqrt(DRAWS) * 12.0;
+                assertTrue(r.getClass().getName() + " lag " + (k + 1),
+                           Math.abs(z) < Z);
+            }
+        }
+    }
+
+
+    public void testExponential()
+    {
+        String[] names = {"inversion", "ziggurat", "buffered ziggurat"};
+        for (int k=0; k<names.length; k++)
+        {
+            RandomSource[] sources = sources(1414);
+            for (int i=0; i<sources.length; i++)
+            {
+                RandomSource r = sources[i];
+                if (k == 1)
+                {
+                    r = new ZigguratSource(r);
+                }
+                else if (k == 2)
+                {
+                    r = new BufferedSource(new ZigguratSource(r), 100);
+                }
+                String name = names[k] + " " + sources[i].getClass().getName();
+
+                // equiprobable bins by the distribution function, the mean
+                // of 1, and the tail past the widest layer at 7.7
+                long[] bins = new long[200];
+                double sum = 0.0;
+                long tail = 0;
+                for (int j=0; j<DRAWS; j++)
+                {
+                    double x = Probability.RandomFromExponential(1.0, r);
+                    assertTrue(name, x >= 0.0);
+                    int b = (int)((1.0 - Math.exp(-x)) * bins.length);
+                    bins[Math.min(b, bins.length - 1)]++;
+                    sum += x;
+                    if (x > 8.0) tail++;
+                }
+                assertTrue(name, Math.abs(chiSquare(bins, DRAWS)) < Z);
+                assertTrue(name, Math.abs((sum / DRAWS) - 1.0)
+                           * Math.sqrt(DRAWS) < Z);
+                double expected = DRAWS * Math.exp(-8.0);
+                assertTrue(name, Math.abs(tail - expected) 
+                           / Math.sqrt(expected) < Z);
+            }
+        }
+
+        // the ziggurat's layers close at 0 with equal areas
+        double last = Probability.ZIG_X[Probability.ZIG_LAYERS - 1];
+        assertEquals(1.0, Math.exp(-last) + (Probability.ZIG_V / last), 1e-9);
+    }
+
+
+    public void testBuffered()
+    {
+        // the buffered stream holds the wrapped source's uniforms in order,
+        // and starts afresh when seeded
+        KnuthRandom plain = new KnuthRandom();
+        plain.seedRandom(99);
+        BufferedSource buffered = new BufferedSource(new KnuthRandom(), 7);
+        buffered.seedRandom(99);
+        for (int j=0; j<100; j++)
+        {
+            assertEquals(plain.randomDouble(), buffered.randomDouble());
+        }
+        buffered.randomDouble();
+        plain.seedRandom(99);
+        buffered.seedRandom(99);
+        assertEquals(plain.randomDouble(), buffered.randomDouble());
+    }
+
+
+    public void testState() throws IOException
+    {
+        RandomSource[] sources = {
+            new KnuthRandom(), new Xoshiro256(), new SplitMix(),
+            new ZigguratSource(new Xoshiro256()),
+            new BufferedSource(new ZigguratSource(new KnuthRandom()), 16)
+        };
+        RandomSource[] restored = {
+            new KnuthRandom(), new Xoshiro256(), new SplitMix(),
+            new ZigguratSource(new Xoshiro256()),
+            new BufferedSource(new ZigguratSource(new KnuthRandom()), 16)
+        };
+        RandomSource[] others = {
+            new Xoshiro256(), new SplitMix(), new KnuthRandom(),
+            new KnuthRandom(), new Xoshiro256()
+        };
+        for (int i=0; i<sources.length; i++)
+        {
+            RandomSource r = sources[i];
+            r.seedRandom(5);
+            for (int j=0; j<1003; j++)
+            {
+                r.randomDouble();
+                r.randomExponential();
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            r.writeState(new DataOutputStream(bytes));
+            if (i == 0)
+            {
+                assertEquals(231, bytes.size());
+            }
+
+            // the restored source goes on as the saved one does
+            RandomSource s = restored[i];
+            s.readState(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(r.getSeed(), s.getSeed());
+            for (int j=0; j<1000; j++)
+            {
+                assertEquals(r.randomDouble(), s.randomDouble());
+                assertEquals(r.randomExponential(), s.randomExponential());
+            }
+
+            // a state of another kind is refused
+            try
+            {
+                others[i].readState(new DataInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray())));
+                fail(r.getClass().getName());
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+
+    public void testBits()
+    {
+        RandomSource[] sources = sources(1618);
+        for (int i=0; i<sources.length; i++)
+        {
+            RandomSource r = sources[i];
+
+            // the top 24 bits of a uniform, which every generator has
+            int bits = 24;
+            long[] ones = new long[bits];
+            for (int j=0; j<DRAWS; j++)
+            {
+                long x = (long)(r.randomDouble() * (1L << bits));
+                for (int b=0; b<bits; b++)
+                {
+                    ones[b] += (x >>> b) & 1L;
+                }
+            }
+
+            for (int b=0; b<bits; b++)
+            {
+                double z = (ones[b] - (DRAWS / 2.0)) / Math.sqrt(DRAWS / 4.0);
+                assertTrue(r.getClass().getName() + " bit " + b,
+                           Math.abs(z) < Z);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package lib;
+
+
+/**
+ * Measures the draws per second of PoissonSampler and BinomialSampler
+ * against Probability.RandomFromPoisson and RandomFromBinomial, over a
+ * range of parameters.
+ *
+ * usage: SamplerBenchmark [draws] [rounds]
+ *
+ * The samplers are timed both with their setup made once and made again
+ * at every draw, as a caller with ever-changing parameters would.  The
+ * first round warms the JIT up and is not reported.
+ *
+ */
+public class SamplerBenchmark
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    public static void main(String[] $args) throws Exception
+    {
+        int draws = ($args.length > 0) ? Integer.parseInt($args[0]) : 2000000;
+        int rounds = ($args.length > 1) ? Integer.parseInt($args[1]) : 3;
+
+        double[] means = {2.0, 20.0, 200.0, 20000.0};
+        long[] ns = {50, 500, 5000, 500000};
+        double p = 0.3;
+
+        RandomSource rand = new Xoshiro256();
+        rand.seedRandom(1);
+        long sink = 0;
+
+        for (int round=0; round<=rounds; round++)
+        {
+            for (int i=0; i<means.length; i++)
+            {
+                double mu = means[i];
+
+                long t0 = System.nanoTime();
+                for (int j=0; j<draws; j++)
+                {
+                    sink += Probability.RandomFromPoisson(mu, rand);
+                }
+                long t1 = System.nanoTime();
+                PoissonSampler sampler = new PoissonSampler(mu);
+                for (int j=0; j<draws; j++)
+                {
+                    sink += sampler.sample(rand);
+                }
+                long t2 = System.nanoTime();
+                for (int j=0; j<draws; j++)
+                {
+                    sink += new PoissonSampler(mu).sample(rand);
+                }
+                long t3 = System.nanoTime();
+
+                if (round > 0)
+                {
+                    System.out.println("Poisson " + mu
+                                       + ": RandomFromPoisson "
+                                       + rate(draws, t1 - t0)
+                                       + " sampler " + rate(draws, t2 - t1)
+                                       + " sampler per draw "
+                                       + rate(draws, t3 - t2)
+                                       + " M draws/s");
+                }
+            }
+
+            for (int i=0; i<ns.length; i++)
+            {
+                long n = ns[i];
+
+                long t0 = System.nanoTime();
+                for (int j=0; j<draws; j++)
+                {
+                    sink += Probability.RandomFromBinomial(n, p, rand);
+                }
+                long t1 = System.nanoTime();
+                BinomialSampler sampler = new BinomialSampler(n, p);
+                for (int j=0; j<draws; j++)
+                {
+                    sink += sampler.sample(rand);
+                }
+                long t2 = System.nanoTime();
+                for (int j=0; j<draws; j++)
+                {
+                    sink += new BinomialSampler(n, p).sample(rand);
+                }
+                long t3 = System.nanoTime();
+
+                if (round > 0)
+                {
+                    System.out.println("binomial " + n + " " + p
+                                       + ": RandomFromBinomial "
+                                       + rate(draws, t1 - t0)
+                                       + " sampler " + rate(draws, t2 - t1)
+                                       + " sampler per draw "
+                                       + rate(draws, t3 - t2)
+                                       + " M draws/s");
+                }
+            }
+        }
+        System.out.println("(sum " + sink + ")");
+    }
+
+
+    /**
+     * Return millions of draws per second, to one decimal.
+     *
+     */
+    static double rate(int $draws, long $nanos)
+    {
+        return Math.round((10.0 * $draws * 1000.0) / $nanos) / 10.0;
+    }
+}
@@ -0,0 +1,189 @@
+package lib;
+
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+/**
+ * Checks the Poisson and binomial samplers against their exact
+ * distributions, on both sides of the switch from inversion to PTRS and
+ * BTPE: a chi-square over the values, tails pooled to at least 20
+ * expected, and the mean and variance, each held to a z-score under 5.
+ *
+ */
+public class SamplerTest extends TestCase
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** draws per distribution */
+    static final int DRAWS = 200000;
+
+    /** largest z-score a statistic may reach */
+    static final double Z = 5.0;
+
+
+    /**
+     * Return the z-score of the chi-square of the counts of each value
+     * against the given probabilities, pooling values of less than 20
+     * expected into their neighbors.
+     *
+     */
+    static double chiSquare(long[] $counts, double[] $probs, long $total)
+    {
+        double chi = 0.0;
+        int df = -1;
+        double expected = 0.0;
+        long observed = 0;
+        for (int i=0; i<$probs.length; i++)
+        {
+            expected += $probs[i] * $total;
+            observed += $counts[i];
+            if (expected >= 20.0 || i == $probs.length - 1)
+            {
+                double d = observed - expected;
+                chi += (d * d) / Math.max(expected, 1e-300);
+                df++;
+                expected = 0.0;
+                observed = 0;
+            }
+        }
+        return (chi - df) / Math.sqrt(2.0 * df);
+    }
+
+
+    /**
+     * Check draws against the given probabilities of 0, 1, ... and the
+     * given mean and variance.
+     *
+     */
+    static void check(String $name, long[] $draws, double[] $probs,
+                      double $mean, double $variance)
+    {
+        long[] counts = new long[$probs.length];
+        double sum = 0.0;
+        double squares = 0.0;
+        for (int j=0; j<$draws.length; j++)
+        {
+            long k = $draws[j];
+            assertTrue($name + " " + k, k >= 0 && k < $probs.length);
+            counts[(int)k]++;
+            sum += k;
+            squares += (double)k * k;
+        }
+        int n = $draws.length;
+        double mean = sum / n;
+        double variance = (squares / n) - (mean * mean);
+
+        assertTrue($name, Math.abs(chiSquare(counts, $probs, n)) < Z);
+        assertTrue($name + " mean " + mean,
+                   Math.abs(mean - $mean) / Math.sqrt($variance / n) < Z);
+        // the variance of a sample variance is near 2 sigma^4 / n for these
+        assertTrue($name + " variance " + variance,
+                   Math.abs(variance - $variance)
+                   / ($variance * Math.sqrt(3.0 / n)) < Z);
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    public void testLogFactorial()
+    {
+        // the table, and the series past it against a sum of logs
+        double sum = 0.0;
+        for (int k=1; k<1000; k++)
+        {
+            sum += Math.log(k);
+            assertEquals(sum, Probability.logFactorial(k), 1e-12 * sum);
+        }
+        assertEquals(0.0, Probability.logFactorial(0));
+    }
+
+
+    public void testPoisson()
+    {
+        double[] means = {0.5, 3.0, 9.99, 10.0, 30.0, 1000.0};
+        RandomSource rand = new Xoshiro256();
+        rand.seedRandom(11);
+        for (int i=0; i<means.length; i++)
+        {
+            double mu = means[i];
+            PoissonSampler sampler = new PoissonSampler(mu);
+
+            int size = (int)(mu + 20.0 * Math.sqrt(mu) + 20.0);
+            double[] probs = new double[size];
+            for (int k=0; k<size; k++)
+            {
+                probs[k] = Math.exp(-mu + (k * Math.log(mu))
+                                    - Probability.logFactorial(k));
+            }
+
+            long[] draws = new long[DRAWS];
+            for (int j=0; j<DRAWS; j++)
+            {
+                draws[j] = sampler.sample(rand);
+            }
+            check("Poisson " + mu, draws, probs, mu, mu);
+        }
+
+        assertEquals(0, new PoissonSampler(0.0).sample(rand));
+
+        // a sampler given a new mean draws as one made for it
+        PoissonSampler reset = new PoissonSampler(3.0);
+        for (int i=0; i<means.length; i++)
+        {
+            reset.setMean(means[i]);
+            PoissonSampler fresh = new PoissonSampler(means[i]);
+            RandomSource a = new Xoshiro256();
+            RandomSource b = new Xoshiro256();
+            a.seedRandom(5);
+            b.seedRandom(5);
+            for (int j=0; j<100; j++)
+            {
+                assertEquals(fresh.sample(a), reset.sample(b));
+            }
+        }
+    }
+
+
+    public void testBinomial()
+    {
+        long[] ns = {10, 100, 50, 1000, 1000, 200, 100000};
+        double[] ps = {0.3, 0.2, 0.5, 0.3, 0.9, 0.5, 0.001};
+        RandomSource rand = new KnuthRandom();
+        rand.seedRandom(13);
+        for (int i=0; i<ns.length; i++)
+        {
+            long n = ns[i];
+            double p = ps[i];
+            BinomialSampler sampler = new BinomialSampler(n, p);
+
+            double[] probs = new double[(int)n + 1];
+            for (int k=0; k<=n; k++)
+            {
+                probs[k] = Math.exp(Probability.logFactorial(n)
+                                    - Probability.logFactorial(k)
+                                    - Probability.logFactorial(n - k)
+                                    + (k * Math.log(p))
+                                    + ((n - k) * Math.log1p(-p)));
+            }
+
+            long[] draws = new long[DRAWS];
+            for (int j=0; j<DRAWS; j++)
+            {
+                draws[j] = sampler.sample(rand);
+            }
+            check("binomial " + n + " " + p, draws, probs,
+                  n * p, n * p * (1.0 - p));
+        }
+
+        assertEquals(0, new BinomialSampler(50, 0.0).sample(rand));
+        assertEquals(50, new BinomialSampler(50, 1.0).sample(rand));
+        assertEquals(0, new BinomialSampler(0, 0.5).sample(rand));
+    }
+}
@@ -244,6 +244,482 @@ public class GeneratorsTest extends TestCase
     
     
     
+    public void testReschedule() throws IOException
+    {
+        // pending events are moved, not replaced
+        SymmetricDivisionEvent symm = SymmetricDivisionEvent.generate(0.0, _cell);
+        assertSame(symm, SymmetricDivisionEvent.generate(1.0, _cell));
+        assertTrue(symm.getTime() >= 1.0);
+        assertTrue(symm.isValid());
+        
+        AsymmetricDivisionEvent asymm = 
+            AsymmetricDivisionEvent.generate(0.0, _cell);
+        assertSame(asymm, AsymmetricDivisionEvent.generate(1.0, _cell));
+        
+        ApoptosisEvent apop = ApoptosisEvent.generate(0.0, _cell);
+        assertSame(apop, ApoptosisEvent.generate(1.0, _cell));
+        assertTrue(_simulation.getEventQueue().contains(apop));
+        
+        // a cleared event goes back to the pool and is handed out again
+        _cell.clearEvents();
+        assertFalse(apop.isValid());
+        assertFalse(_simulation.getEventQueue().contains(apop));
+        ApoptosisEvent next = ApoptosisEvent.generate(2.0, _cell);
+        assertSame(apop, next);
+        assertTrue(next.isValid());
+        assertSame(_cell, next.getSubject());
+        assertTrue(_simulation.getEventQueue().contains(next));
+    }
+    
+    
+    public void testThinning() throws IOException
+    {
+        _params.setProperty("event.asymmetricdivision.thinning", "true");
+        _params.setProperty("stemcell.mutationrate.base", "0.01");
+        _params.setProperty("stemcell.mutationrate.max", "0.01");
+        _params.setProperty("stemcell.tsgmutationrate.base", "0");
+        _params.setProperty("stemcell.tsgmutationrate.max", "0");
+        
+        // no TSG hits -- each event is the next division that mutates, a
+        // mean wait of 1 / (0.05 * 20) after the one before
+        int num = 20000;
+        double divisions = 0.0;
+        double time = 0.0;
+        for (int i=0; i<num; i++)
+        {
+            _cell.resetTrials();
+            AsymmetricDivisionEvent e = 
+                AsymmetricDivisionEvent.generate(0.0, _cell);
+            divisions += e.getDivisions();
+            time += e.getTime();
+        }
+        assertEquals(100.0, divisions / num, 3.0);
+        assertEquals(divisions / num, time / num, 0.5);
+        
+        // the divisions passed by are credited as they come due
+        AsymmetricDivisionEvent e = 
+            AsymmetricDivisionEvent.generate(0.0, _cell);
+        long skipped = e.getDivisions() - 1;
+        assertEquals(0.0, AsymmetricDivisionEvent.getPassedDivisions(_cell, 0.0));
+        assertEquals((double)skipped, 
+                     AsymmetricDivisionEvent.getPassedDivisions(_cell, 1e9));
+        
+        // and hit nothing, the division of the event mutates
+        _cell.skipTrials(skipped);
+        assertTrue(_cell.mutationTrial());
+    }
+    
+    
+    public void testThinningCrypt() throws IOException
+    {
+        _params.setProperty("event.asymmetricdivision.thinning", "true");
+        _params.setProperty("stemcell.mutationrate.base", "0.01");
+        _params.setProperty("stemcell.mutationrate.max", "0.01");
+        _params.setProperty("stemcell.tsgmutationrate.base", "0");
+        _params.setProperty("stemcell.tsgmutationrate.max", "0");
+        
+        // a crypt of its own has no tissue, the simulation is credited
+        CryptSimulation sim = new CryptSimulation();
+        sim.setParams(_params);
+        Crypt crypt = new Crypt(sim, 0);
+        StemCell cell = StemCell.create(crypt);
+        assertNull(crypt.getTissue());
+        
+        double credited = 0.0;
+        for (int i=0; i<100; i++)
+        {
+            AsymmetricDivisionEvent e = 
+                AsymmetricDivisionEvent.generate(0.0, cell);
+            double time = e.getTime() / 2.0;
+            double passed = 
+                AsymmetricDivisionEvent.getPassedDivisions(cell, time);
+            AsymmetricDivisionEvent.interrupt(cell, time);
+            credited += passed;
+            assertEquals(credited, sim.getAsymmetricDivisions(), 1e-9);
+            assertEquals(0.0, 
+                         AsymmetricDivisionEvent.getPassedDivisions(cell, time));
+        }
+        assertTrue(credited > 0.0);
+        assertEquals(credited * 0.01, sim.getAsymmetricMutationSum(), 1e-9);
+    }
+
+
+    public void testThinningTAC() throws Exception
+    {
+        // a thinned event waiting for a TAC hit is drawn again as its crypt
+        // changes size, so the hits come as often as without thinning
+        double[] off = tacHits("queue", false, 40);
+        double[] on = tacHits("queue", true, 40);
+        assertTrue(off[0] > 0.0);
+        double se = Math.sqrt(off[1] * off[1] + on[1] * on[1]);
+        assertEquals(off[0], on[0], 4.0 * se);
+    }
+
+
+    public void testLeapTAC() throws Exception
+    {
+        // the spans of a leap find their TAC hits again as the crypt
+        // changes size, so the hits come as often as from the events
+        double[] queue = tacHits("queue", false, 40);
+        double[] leap = tacHits("tau-leap", false, 40);
+        assertTrue(queue[0] > 0.0);
+        double se = Math.sqrt(queue[1] * queue[1] + leap[1] * leap[1]);
+        assertEquals(queue[0], leap[0], 4.0 * se);
+    }
+    
+    
+    public void testLeapStep()
+    {
+        // 10 cells in balance: the spread bounds the step, 1 / 2
+        assertEquals(0.5, CryptLeapEvent.step(10, 1.0, 1.0, 0.1), 1e-12);
+        
+        // 100 cells growing: the drift bounds it, 10 / 4
+        assertEquals(2.5, CryptLeapEvent.step(100, 4.5, 0.5, 0.1), 1e-12);
+        
+        // nothing happens, nothing bounds it
+        assertEquals(Double.MAX_VALUE, CryptLeapEvent.step(10, 0.0, 0.0, 0.1));
+        
+        // a small crypt may still change by one cell, 1 / 2
+        assertEquals(0.5, CryptLeapEvent.step(5, 1.0, 1.0, 0.1), 1e-12);
+    }
+
+
+    public void testLeapCounts() throws Exception
+    {
+        // without floors, the leap's counts are those of the exact events
+        double[][] queue = counts("queue", 0.0, 0.0, 300);
+        double[][] leap = counts("tau-leap", 0.0, 0.0, 300);
+        assertAgree(queue, leap);
+        assertTrue(leap[0][0] > 0.0);
+        assertTrue(leap[0][1] > 0.0);
+        assertTrue(leap[0][2] > 0.0);
+
+        // nor with them
+        queue = counts("queue", 0.5, 0.5, 300);
+        leap = counts("tau-leap", 0.5, 0.5, 300);
+        assertAgree(queue, leap);
+    }
+
+
+    public void testLeapFloors() throws Exception
+    {
+        // no cell dies within its apoptosis floor, though they divide
+        double[] c = run(cryptParams("tau-leap", 1, 0.0, 50.0, 40.0), null);
+        assertTrue(c[0] > 0.0);
+        assertEquals(0.0, c[2]);
+
+        // nor divides within its division floor, though they die; a crypt
+        // that shrinks out of the leap may divide in the first event past
+        // the end, but no sooner than the floor
+        final double[] first = {Double.MAX_VALUE};
+        Simulation sim = new CryptSimulation();
+        c = run(cryptParams("tau-leap", 1, 30.0, 0.0, 25.0), sim,
+                new SimEventListener()
+                {
+                    public void notify(SimulationEvent $event)
+                    {
+                        if ($event instanceof SymmetricDivisionEvent
+                            || $event instanceof AsymmetricDivisionEvent)
+                        {
+                            first[0] = Math.min(first[0], $event.getTime());
+                        }
+                    }
+                });
+        assertTrue(first[0] >= 30.0);
+        assertEquals(0, sim.getSymmetricDivisions());
+        assertEquals(0.0, sim.getAsymmetricDivisions());
+        assertTrue(c[2] > 0.0);
+    }
+
+
+    public void testLeapExtinction() throws Exception
+    {
+        // a crypt dying out: each death reaches the listeners as an
+        // apoptosis in the crypt, those of the leap among them, and the
+        // leap stops at its margin, so the last comes as an event again
+        int leaped = 0;
+        for (int seed=1; seed<=50; seed++)
+        {
+            SimulationParams params = cryptParams("tau-leap", seed, 0.0, 0.0,
+                                                  1000.0);
+            params.setProperty("stemcell.apoptosisrate.base", "1.0");
+            params.setProperty("crypt.numcells.standarddeviation", "100");
+            params.setProperty("event.leap.epsilon", "1");
+            params.setProperty("event.leap.margin", "1");
+
+            final CryptSimulation sim = new CryptSimulation();
+            final int[] deaths = new int[4];
+            double[] c = run(params, sim, new SimEventListener()
+            {
+                public void notify(SimulationEvent $event)
+                {
+                    if (!($event instanceof ApoptosisEvent))
+                    {
+                        return;
+                    }
+                    Crypt crypt = ((ApoptosisEvent)$event).getCrypt();
+                    assertSame(sim.getCrypt(), crypt);
+                    deaths[0]++;
+                    deaths[1] = crypt.getStemCells().size();
+                    deaths[2] = (sim.getCurrentEvent()
+                                 instanceof CryptLeapEvent) ? 1 : 0;
+                    deaths[3] += deaths[2];
+                }
+            });
+
+            Crypt crypt = sim.getCrypt();
+            assertFalse(crypt.isAlive());
+            assertEquals(0, deaths[1]);
+            assertEquals(10 + (int)c[0], deaths[0]);
+            assertEquals(0, deaths[2]);
+            leaped += deaths[3];
+        }
+        assertTrue(leaped > 0);
+    }
+
+
+    /**
+     * Return the parameters of a small seeded crypt simulation on the given
+     * engine, with the given floors and duration.
+     *
+     */
+    static SimulationParams cryptParams(String $engine,
+                                        long $seed,
+                                        double $divisionFloor,
+                                        double $apoptosisFloor,
+                                        double $duration)
+    {
+        SimulationParams params = new SimulationParams();
+        params.setProperty("simulation.type", "crypt");
+        params.setProperty("simulation.engine", $engine);
+        params.setProperty("simulation.seed", String.valueOf($seed));
+        params.setProperty("simulation.duration", String.valueOf($duration));
+        params.setProperty("simulation.debug.maxevents", "-1");
+        params.setProperty("simulation.debug.echo", "false");
+        params.setProperty("simulation.debug.echo.time", "event");
+        params.setProperty("cryptstat.enabled", "false");
+        params.setProperty("stempopstat.enabled", "false");
+        params.setProperty("tissuepopstat.enabled", "false");
+        params.setProperty("divstat.enabled", "false");
+        params.setProperty("fixationstat.enabled", "false");
+
+        params.setProperty("stemcell.divisionrate.base", "0.05");
+        params.setProperty("stemcell.asymmetricdivision.ratio", "20");
+        params.setProperty("stemcell.apoptosisrate.base", "0.04878");
+        params.setProperty("stemcell.mutationrate.base", "0.0005");
+        params.setProperty("stemcell.mutationrate.max", "0.05");
+        params.setProperty("stemcell.tsgmutationrate.base", "0");
+        params.setProperty("stemcell.tsgmutationrate.max", "0");
+        params.setProperty("stemcell.tacsize.base", "2048");
+        params.setProperty("event.celldivision.floor",
+                           String.valueOf($divisionFloor));
+        params.setProperty("event.apoptosis.floor",
+                           String.valueOf($apoptosisFloor));
+
+        params.setProperty("crypt.numcells.mean", "10");
+        params.setProperty("crypt.numcells.standarddeviation", "2");
+        params.setProperty("crypt.bifurcation.threshold.ratio", "4.0");
+        params.setProperty("crypt.apoptosis.multiplier", "2.0");
+        params.setProperty("crypt.division.multiplier", "2.0");
+        params.setProperty("crypt.division.deadneighbor.multiplier", "1.0");
+        params.setProperty("cancer.uncontrolledgrowth.threshold", "8.0");
+        params.setProperty("cancer.tsg.threshold", "2");
+
+        params.setProperty("beneficialmutation.apoptosis.multiplier", "0.990099");
+        params.setProperty("beneficialmutation.division.multiplier", "1.01");
+        params.setProperty("deleteriousmutation.apoptosis.multiplier", "1.01");
+        params.setProperty("deleteriousmutation.division.multiplier", "0.990099");
+        params.setProperty("mutatormutation.mutation.multiplier", "100.0");
+        params.setProperty("mutation.rate.deleterious.apop", "0.25");
+        params.setProperty("mutation.rate.deleterious.div", "0.25");
+        params.setProperty("mutation.rate.beneficial.apop", "0.20");
+        params.setProperty("mutation.rate.beneficial.div", "0.20");
+        params.setProperty("mutation.rate.mutator", "0.10");
+        return params;
+    }
+
+
+    /**
+     * Run a crypt simulation and return its symmetric divisions,
+     * asymmetric divisions and deaths, as events or as the leap counts
+     * them.
+     *
+     */
+    static double[] run(SimulationParams $params,
+                        Simulation $sim,
+                        final SimEventListener $listener)
+        throws Exception
+    {
+        Simulation sim = ($sim != null) ? $sim : new CryptSimulation();
+        sim.setParams($params);
+
+        final double[] c = new double[3];
+        sim.registerListener(new SimEventListener()
+        {
+            public void notify(SimulationEvent $event)
+            {
+                if ($event instanceof SymmetricDivisionEvent)
+                {
+                    c[0]++;
+                }
+                else if ($event instanceof AsymmetricDivisionEvent)
+                {
+                    c[1] += ((AsymmetricDivisionEvent)$event).getDivisions();
+                }
+                else if ($event instanceof ApoptosisEvent)
+                {
+                    c[2]++;
+                }
+                if ($listener != null)
+                {
+                    $listener.notify($event);
+                }
+            }
+        });
+        sim.run();
+
+        c[0] += sim.getSymmetricDivisions();
+        c[1] += sim.getAsymmetricDivisions();
+        return c;
+    }
+
+
+    static double[] run(SimulationParams $params, Simulation $sim)
+        throws Exception
+    {
+        return run($params, $sim, null);
+    }
+
+
+    /**
+     * Return the means and their standard errors of the counts of the
+     * given number of seeded crypt simulations on the given engine.
+     *
+     */
+    static double[][] counts(String $engine,
+                             double $divisionFloor,
+                             double $apoptosisFloor,
+                             int $runs)
+        throws Exception
+    {
+        double[] sum = new double[3];
+        double[] squares = new double[3];
+        for (int seed=1; seed<=$runs; seed++)
+        {
+            double[] c = run(cryptParams($engine, seed, $divisionFloor,
+                                         $apoptosisFloor, 100.0), null);
+            for (int k=0; k<3; k++)
+            {
+                sum[k] += c[k];
+                squares[k] += c[k] * c[k];
+            }
+        }
+
+        double[][] result = new double[2][3];
+        for (int k=0; k<3; k++)
+        {
+            double mean = sum[k] / $runs;
+            result[0][k] = mean;
+            result[1][k] = Math.sqrt((squares[k] / $runs - mean * mean) / $runs);
+        }
+        return result;
+    }
+
+
+    /**
+     * Return the mean and its standard error of the TAC hits per living
+     * stem cell of the given number of seeded small tissue simulations on
+     * the given engine, with or without thinning.
+     *
+     */
+    static double[] tacHits(String $engine, boolean $thinning, int $runs)
+        throws Exception
+    {
+        double sum = 0.0;
+        double squares = 0.0;
+        for (int seed=1; seed<=$runs; seed++)
+        {
+            SimulationParams params =
+                cryptParams($engine, seed, 0.5, 0.0, 1000.0);
+            params.setProperty("simulation.type", "tissue");
+            params.setProperty("tissue.rows", "3");
+            params.setProperty("tissue.cols", "3");
+            params.setProperty("tissue.wraparound", "false");
+            params.setProperty("stemcell.tsgmutationrate.base", "0.0001");
+            params.setProperty("stemcell.tsgmutationrate.max", "0.0001");
+            params.setProperty("cancer.tsg.threshold", "100");
+            params.setProperty("event.asymmetricdivision.thinning",
+                               String.valueOf($thinning));
+
+            TissueSimulation sim = new TissueSimulation();
+            run(params, sim);
+
+            int cells = 0;
+            int hits = 0;
+            for (Crypt crypt : sim.getTissue().getCrypts())
+            {
+                for (int i=0; i<crypt.getStemCells().size(); i++)
+                {
+                    cells++;
+                    hits += crypt.getStemCell(i).getTSGHitsTAC();
+                }
+            }
+            double x = (cells > 0) ? (double)hits / cells : 0.0;
+            sum += x;
+            squares += x * x;
+        }
+
+        double mean = sum / $runs;
+        return new double[] {
+            mean, Math.sqrt((squares / $runs - mean * mean) / $runs)
+        };
+    }
+
+
+    /**
+     * Assert the mean counts of two engines agree within four standard
+     * errors of their difference.
+     *
+     */
+    static void assertAgree(double[][] $a, double[][] $b)
+    {
+        String[] names = {"symmetric divisions", "asymmetric divisions",
+                          "deaths"};
+        for (int k=0; k<3; k++)
+        {
+            double se = Math.sqrt($a[1][k] * $a[1][k] + $b[1][k] * $b[1][k]);
+            assertEquals(names[k], $a[0][k], $b[0][k], 4.0 * se);
+        }
+    }
+    
+    
+    public void testEventPool() throws IOException
+    {
+        EventPool pool = _simulation.getEventPool();
+        int size = pool.size();
+        
+        // queued events are not taken back
+        AsymmetricDivisionEvent asymm = 
+            AsymmetricDivisionEvent.generate(0.0, _cell);
+        pool.release(asymm);
+        assertEquals(size, pool.size());
+        
+        // released events are taken back once
+        _cell.clearEvents();
+        assertEquals(size + 1, pool.size());
+        pool.release(asymm);
+        assertEquals(size + 1, pool.size());
+        
+        // and come back as new
+        AsymmetricDivisionEvent again = pool.asymmetricDivision(_cell);
+        assertSame(asymm, again);
+        assertEquals(size, pool.size());
+        assertTrue(again.isValid());
+        assertEquals(-1, again.getQueueIndex());
+        assertEquals(0.0, again.getTime());
+    }
+    
+    
     public void testApoptosis() throws IOException
     {
         ApoptosisEvent cde = null;
@@ -279,4 +755,63 @@ public class GeneratorsTest extends TestCase
                         "ApopFloor.txt");
 	}
 
+    
+    
+    public void testRescale() throws IOException
+    {
+        // waits still ahead after a rate change are exponential at the new
+        // rate, with no new draw
+        int num = 20000;
+        double now = 5.0;
+        double rate = _cell.getApoptosisRate() * 2.0;
+        double[] waits = new double[num];
+        int n = 0;
+        while (n < num)
+        {
+            ApoptosisEvent e = ApoptosisEvent.generate(0.0, _cell);
+            assertEquals(_cell.getApoptosisRate(), e.getRate());
+            if (e.getTime() <= now)
+            {
+                continue;
+            }
+            
+            assertTrue(SimulationEvent.canRescale(_simulation, e));
+            double t = e.getTime();
+            SimulationEvent.rescale(_simulation, e, now, 0.0, rate);
+            assertEquals(now + (t - now) / 2.0, e.getTime(), 1e-9);
+            assertEquals(rate, e.getRate());
+            assertTrue(_simulation.getEventQueue().contains(e));
+            waits[n++] = e.getTime() - now;
+        }
+        testExponential(rate, 0.0, waits, "ApopRescale.txt");
+    }
+
+
+    public void testRescaleEdges()
+    {
+        EventQueue queue = _simulation.getEventQueue();
+
+        // a rate of 0 parks an event at +infinity, even one whose wait has
+        // run out
+        SymmetricDivisionEvent e = SymmetricDivisionEvent.generate(0.0, _cell);
+        double t = e.getTime();
+        SimulationEvent.rescale(_simulation, e, t, 0.0, 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, e.getTime());
+        assertEquals(0.0, e.getRate());
+        assertTrue(queue.contains(e));
+        assertFalse(SimulationEvent.canRescale(_simulation, e));
+
+        // at a rate above 0 an event whose wait is over stays where it is
+        e = SymmetricDivisionEvent.generate(0.0, _cell);
+        t = e.getTime();
+        SimulationEvent.rescale(_simulation, e, t, 0.0, 0.5);
+        assertEquals(t, e.getTime());
+        assertEquals(0.5, e.getRate());
+
+        // a parked event is drawn afresh at the next rate
+        SimulationEvent.rescale(_simulation, e, t, 0.0, 0.0);
+        e = SymmetricDivisionEvent.generate(1.0, _cell, true);
+        assertTrue(e.getTime() > 1.0 && e.getTime() < Double.POSITIVE_INFINITY);
+    }
+
 }
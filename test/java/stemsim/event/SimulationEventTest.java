@@ -74,6 +74,25 @@ public class SimulationEventTest extends TestCase
         assertEquals(13.5, e.getTime());
         assertEquals(13.0, e._clocked);
         assertEquals(3.0/3.5, e._pctComplete);
+
+        // an original event with no wait is complete
+        org.setTime(10.0);
+        org._clocked = 10.0;
+        e.setTime(14.0);
+        e._clocked = 12.0;
+        SimulationEvent.scale(org, e);
+        assertEquals(10.0, e.getTime());
+        assertEquals(10.0, e._clocked);
+        assertEquals(1.0, e._pctComplete);
+
+        // as is a new event left with no wait
+        org.setTime(20.0);
+        org._clocked = 10.0;
+        e.setTime(10.0);
+        e._clocked = 10.0;
+        SimulationEvent.scale(org, e);
+        assertEquals(10.0, e.getTime());
+        assertEquals(1.0, e._pctComplete);
     }
 
     
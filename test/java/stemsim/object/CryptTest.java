@@ -153,6 +153,74 @@ public class CryptTest extends TestCase
 	}
     
     
+    public void testEffectKey() throws IOException
+    {
+        List<Crypt> crypts = _simulation.getTissue().getRow(0);
+        Crypt c0 = crypts.get(0);
+        Crypt c1 = crypts.get(1);
+        
+        // at the mean
+        int key = c0.getEffectKey();
+        assertEquals(0, key);
+        assertEquals(Crypt.NO_EFFECT_KEY, c0.getScheduledEffectKey());
+        
+        // one above the mean is one band up and above homeostatic
+        StemCell c = StemCell.create(c0);
+        assertEquals((1 << 2) | Crypt.EFFECT_ABOVE_HOMEOSTATIC, 
+                     c0.getEffectKey());
+        c.kill();
+        c0.remove(c);
+        assertEquals(key, c0.getEffectKey());
+        
+        // dead neighbor
+        List<StemCell> cells = new LinkedList<StemCell>();
+        cells.addAll(c1.getStemCells());
+        for (StemCell cell : cells)
+        {
+            cell.kill();
+            c1.remove(cell);
+        }
+        assertEquals(Crypt.EFFECT_DEAD_NEIGHBOR, c0.getEffectKey());
+    }
+    
+    
+    public void testUnchangedRates() throws IOException
+    {
+        _params.setProperty("event.rescale", "nrm");
+        Crypt c0 = _simulation.getTissue().getRow(0).get(0);
+        
+        CryptChangeEvent.run(c0, 0.0);
+        assertEquals(c0.getEffectKey(), c0.getScheduledEffectKey());
+        
+        // rates unchanged -- every pending event stays where it is
+        Map<StemCell,Double> times = new HashMap<StemCell,Double>();
+        for (StemCell cell : c0.getStemCells())
+        {
+            times.put(cell, cell.getDivisionEvent().getTime());
+        }
+        long seq = c0.getStemCells().iterator().next()
+            .getDivisionEvent().getSequence();
+        CryptChangeEvent.run(c0, 1.0);
+        for (StemCell cell : c0.getStemCells())
+        {
+            assertEquals(times.get(cell), cell.getDivisionEvent().getTime());
+        }
+        assertEquals(seq, c0.getStemCells().iterator().next()
+                     .getDivisionEvent().getSequence());
+        
+        // a new cell changes the band, so every division is rescaled
+        StemCell.create(c0);
+        CryptChangeEvent.run(c0, 1.0);
+        for (StemCell cell : c0.getStemCells())
+        {
+            assertTrue(_simulation.getEventQueue()
+                       .contains(cell.getDivisionEvent()));
+            assertEquals(cell.getDivisionRate(), 
+                         cell.getDivisionEvent().getRate());
+        }
+    }
+    
+    
     public void testCryptBifurcation() throws IOException
     {
         Crypt c0 = Crypt.create(_simulation, 2, 1);
@@ -202,4 +270,58 @@ public class CryptTest extends TestCase
         
 	}
     
+    
+    public void testLiveness() throws IOException
+    {
+        Tissue tissue = _simulation.getTissue();
+        List<Crypt> crypts = tissue.getRow(0);
+        Crypt c0 = crypts.get(0);
+        Crypt c1 = crypts.get(1);
+        
+        assertEquals(2, tissue.getLivingCount());
+        assertEquals(2, c0.getLivingCount());
+        assertEquals(0, c1.getDeadNeighborCount());
+        
+        // a killed cell no longer counts, even before it is removed
+        List<StemCell> cells = new LinkedList<StemCell>();
+        cells.addAll(c0.getStemCells());
+        assertSame(cells.get(0), c0.getStemCell(0));
+        assertSame(cells.get(1), c0.getStemCell(1));
+        cells.get(0).kill();
+        assertEquals(1, c0.getLivingCount());
+        c0.remove(cells.get(0));
+        assertEquals(1, c0.getLivingCount());
+        assertSame(cells.get(1), c0.getStemCell(0));
+        assertTrue(c0.isAlive());
+        
+        // crypt death
+        cells.get(1).kill();
+        assertFalse(c0.isAlive());
+        assertEquals(1, tissue.getLivingCount());
+        assertEquals(1, c1.getDeadNeighborCount());
+        assertTrue(c1.hasDeadNeighbor());
+        c0.remove(cells.get(1));
+        assertEquals(1, c1.getDeadNeighborCount());
+        
+        // and rebirth
+        StemCell.create(c0);
+        assertTrue(c0.isAlive());
+        assertEquals(2, tissue.getLivingCount());
+        assertEquals(0, c1.getDeadNeighborCount());
+        
+        // the whole tissue
+        cells = new LinkedList<StemCell>();
+        cells.addAll(c0.getStemCells());
+        cells.addAll(c1.getStemCells());
+        for (StemCell cell : cells)
+        {
+            cell.kill();
+            cell.getCrypt().remove(cell);
+        }
+        assertEquals(0, tissue.getLivingCount());
+        assertFalse(tissue.isAlive());
+        assertFalse(_simulation.canContinue());
+        assertEquals(1, c0.getDeadNeighborCount());
+    }
+    
 }
\ No newline at end of file
@@ -118,7 +118,8 @@ public class StemCellTest extends TestCase
         r = s.correctDivEvents();
         assertTrue(r);
         assertEquals(atime, adiv.getTime());
-        assertEquals(sdiv.getTime(), atime + floor);
+        assertTrue(sdiv.getTime() - atime >= floor);
+        assertEquals(atime + floor, sdiv.getTime(), 4 * Math.ulp(atime + floor));
     }
     
 
@@ -201,5 +202,184 @@ public class StemCellTest extends TestCase
         assertEquals(0.05, s.getMutationRate());
         
 	}
+    
+    
+    public void testCryptRates()
+    {
+        List<Crypt> crypts = _simulation.getTissue().getRow(0);
+        Crypt c0 = crypts.get(0);
+        Crypt c1 = crypts.get(1);
+        StemCell s = c0.getStemCells().iterator().next();
+        
+        // at the mean
+        assertEquals(0.05, s.getFeedbackApoptosisRate());
+        assertEquals(0.05, s.getDivisionRate());
+        
+        // one above the mean doubles feedback apoptosis
+        StemCell t = StemCell.create(c0);
+        assertEquals(0.1, s.getFeedbackApoptosisRate());
+        
+        t.kill();
+        c0.remove(t);
+        assertEquals(0.05, s.getFeedbackApoptosisRate());
+        
+        // a dead neighbor applies the dead neighbor division multiplier
+        _params.setProperty("crypt.division.deadneighbor.multiplier", "3");
+        assertEquals(0.05, s.getDivisionRate());
+        
+        List<StemCell> cells = new LinkedList<StemCell>();
+        cells.addAll(c1.getStemCells());
+        for (StemCell cell : cells)
+        {
+            cell.kill();
+            c1.remove(cell);
+        }
+        assertEquals(0.15, s.getDivisionRate(), 1e-12);
+        
+        // the intrinsic rates stay put
+        assertEquals(0.05, s.getApoptosisRate());
+        assertEquals(1.0, s.getAsymmetricDivisionRate());
+    }
+    
+    
+    public void testDivisionTrials()
+    {
+        _params.setProperty("stemcell.tsgmutationrate.base", "0.1");
+        _params.setProperty("stemcell.tsgmutationrate.max", "1");
+        
+        StemCell s = _simulation.getTissue().getRow(0).get(0)
+            .getStemCells().iterator().next();
+        
+        // the countdowns hit as often as the coin flips would
+        int n = 20000;
+        int hits = 0;
+        int tacHits = 0;
+        for (int i=0; i<n; i++)
+        {
+            if (s.tsgTrial()) hits++;
+            if (s.tacTrial()) tacHits++;
+        }
+        assertEquals(0.1, hits / (double)n, 0.01);
+        
+        // 100 transient cells per stem cell
+        double ptac = 1 - Math.pow(0.9, 100);
+        assertEquals(ptac, tacHits / (double)n, 0.01);
+        
+        // a new rate takes effect at once
+        _params.setProperty("stemcell.tsgmutationrate.base", "0");
+        for (int i=0; i<n; i++)
+        {
+            assertFalse(s.tsgTrial());
+            assertFalse(s.tacTrial());
+        }
+    }
+    
+    
+    public void testMutationSampler() throws Exception
+    {
+        _params.setProperty("mutation.rate.deleterious.apop", "0.25");
+        _params.setProperty("mutation.rate.deleterious.div", "0.25");
+        _params.setProperty("mutation.rate.beneficial.apop", "0.125");
+        _params.setProperty("mutation.rate.beneficial.div", "0.125");
+        _params.setProperty("mutation.rate.mutator", "0.125");
+        
+        MutationSampler sampler = _simulation.getMutationSampler();
+        assertSame(sampler, _simulation.getMutationSampler());
+        assertEquals(MutationSampler.DELETERIOUS_APOP, sampler.sample(0.0));
+        assertEquals(MutationSampler.DELETERIOUS_DIV, sampler.sample(0.25));
+        assertEquals(MutationSampler.BENEFICIAL_APOP, sampler.sample(0.5));
+        assertEquals(MutationSampler.BENEFICIAL_DIV, sampler.sample(0.7));
+        assertEquals(MutationSampler.MUTATOR, sampler.sample(0.8));
+        assertEquals(MutationSampler.NONE, sampler.sample(0.875));
+        
+        // a class of our own takes the rest
+        Mutation own = new Mutation(_simulation)
+        {
+            public double divisionEffect(double $rate) 
+            {
+                return $rate * 3;
+            }
+        };
+        try
+        {
+            sampler.register(own, 0.25);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertEquals(MutationSampler.BUILTIN, sampler.size());
+        }
+        int code = sampler.register(own, 0.125);
+        assertEquals(MutationSampler.BUILTIN, code);
+        assertEquals(code, sampler.sample(0.875));
+        
+        StemCell s = _simulation.getTissue().getRow(0).get(0)
+            .getStemCells().iterator().next();
+        s.addMutation(MutationSampler.BENEFICIAL_DIV);
+        assertEquals(0.1, s.getDivisionRate());
+        s.addMutation(code);
+        assertEquals(0.3, s.getDivisionRate(), 1e-12);
+        assertTrue(s.getMutations().contains(own));
+        
+        s.addMutation(MutationSampler.NONE);
+        assertEquals(0.3, s.getDivisionRate(), 1e-12);
+        
+        // a daughter takes the mutations over but does not share them
+        StemCell d = (StemCell)s.clone();
+        assertTrue(d.getMutations().contains(own));
+        d.addMutation(code);
+        assertEquals(0.9, d.getDivisionRate(), 1e-12);
+        assertEquals(0.3, s.getDivisionRate(), 1e-12);
+        d.addMutation(MutationSampler.BENEFICIAL_DIV);
+        assertEquals(1.8, d.getDivisionRate(), 1e-12);
+        assertEquals(0.3, s.getDivisionRate(), 1e-12);
+        s.addMutation(MutationSampler.BENEFICIAL_DIV);
+        assertEquals(0.6, s.getDivisionRate(), 1e-12);
+        assertEquals(1.8, d.getDivisionRate(), 1e-12);
+        
+        // a change of params rebuilds the sampler, keeping our class
+        _params.setProperty("mutation.rate.mutator", "0");
+        MutationSampler rebuilt = _simulation.getMutationSampler();
+        assertNotSame(sampler, rebuilt);
+        assertEquals(MutationSampler.BUILTIN + 1, rebuilt.size());
+        assertSame(own, rebuilt.getMutation(code));
+        assertEquals(MutationSampler.BENEFICIAL_DIV, rebuilt.sample(0.7));
+        assertEquals(code, rebuilt.sample(0.75));
+        assertEquals(MutationSampler.NONE, rebuilt.sample(0.875));
+    }
+    
+    
+    public void testTACTable()
+    {
+        _params.setProperty("simulation.debug.checktables", "true");
+        
+        TACProbabilityTable table = _simulation.getTACTable();
+        assertSame(table, _simulation.getTACTable());
+        assertEquals(100.0, table.getTransientCells(1));
+        assertEquals(33.0, table.getTransientCells(3));
+        
+        // the same values as the formula, a row per rate
+        assertEquals(1 - Math.pow(0.9, 100), table.getProbability(0.1, 1));
+        assertEquals(1 - Math.pow(0.9, 33), table.getProbability(0.1, 3));
+        assertEquals(1 - Math.pow(0.9, 33), table.getProbability(0.1, 3));
+        assertEquals(1 - Math.pow(0.99, 2), table.getProbability(0.01, 50));
+        assertEquals(2, table.getRates());
+        
+        // a bad entry is caught in check mode
+        table._probs[0][3] = 0.5;
+        try
+        {
+            table.getProbability(0.1, 3);
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+        }
+        
+        // a change to the params builds a new table
+        _params.setProperty("stemcell.tacsize.base", "10");
+        assertNotSame(table, _simulation.getTACTable());
+        assertEquals(5.0, _simulation.getTACTable().getTransientCells(2));
+    }
 
 }
@@ -0,0 +1,122 @@
+package stemsim.simulation;
+
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+
+import stemsim.event.*;
+
+
+/**
+ * Measures the bytes allocated by the simulation loop per million events,
+ * and fails if they pass a limit.
+ *
+ * usage: AllocationBenchmark [param.file] [warmup events] [measured events]
+ *                            [limit]
+ *
+ * The events default to 1M of warmup and 3M measured, the limit to
+ * LIMIT bytes per million events.  The events themselves come from the
+ * EventPool; what the loop still allocates is the daughter cell of each
+ * symmetric division, so the bytes per division are printed as well.
+ *
+ * The simulation runs with the statistical calculators and debug echo off,
+ * so that only the event machinery is measured, and without TSG hits so
+ * that cancer does not cut the run short.  Allocation is read from the
+ * thread allocation counter of the HotSpot ThreadMXBean.
+ *
+ */
+public class AllocationBenchmark
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** default limit on the bytes allocated per million events */
+    static final long LIMIT = 20000000L;
+
+
+    public static void main(String[] $args) throws Exception
+    {
+        File paramFile = new File(($args.length > 0) ? $args[0] : "run.props");
+        final long warmup = ($args.length > 1)
+            ? Long.parseLong($args[1]) : 1000000L;
+        final long measured = ($args.length > 2)
+            ? Long.parseLong($args[2]) : 3000000L;
+        long limit = ($args.length > 3) ? Long.parseLong($args[3]) : LIMIT;
+
+        SimulationParams params = SimulationParams.load(paramFile);
+        params.setProperty("simulation.debug.echo", "false");
+        params.setProperty("simulation.debug.maxevents", "-1");
+        params.setProperty("simulation.duration", "-1");
+        params.setProperty("cryptstat.enabled", "false");
+        params.setProperty("stempopstat.enabled", "false");
+        params.setProperty("tissuepopstat.enabled", "false");
+        params.setProperty("divstat.enabled", "false");
+        params.setProperty("fixationstat.enabled", "false");
+        params.setProperty("stemcell.tsgmutationrate.base", "0");
+
+        final com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long[] counts = new long[4];
+
+        Simulation sim = params.getString("simulation.type").equals("crypt")
+            ? new CryptSimulation() : new TissueSimulation();
+        sim.setParams(params);
+        sim.registerListener(new SimEventListener()
+        {
+            public void notify(SimulationEvent $event)
+            {
+                long n = ++counts[0];
+                if (n > warmup && $event instanceof SymmetricDivisionEvent)
+                {
+                    counts[3]++;
+                }
+                if (n == warmup)
+                {
+                    counts[1] = mx.getThreadAllocatedBytes(thread);
+                }
+                else if (n == warmup + measured)
+                {
+                    counts[2] = mx.getThreadAllocatedBytes(thread);
+                    throw new Finished();
+                }
+            }
+        });
+
+        try
+        {
+            sim.run();
+            System.out.println("simulation ended after " + counts[0]
+                               + " events, before the measurement finished");
+            return;
+        }
+        catch (Finished e)
+        {
+        }
+
+        long bytes = counts[2] - counts[1];
+        double perMillion = bytes * (1000000.0 / measured);
+        System.out.println("events measured:          " + measured);
+        System.out.println("symmetric divisions:      " + counts[3]);
+        System.out.println("bytes per million events: " + (long)perMillion);
+        System.out.println("bytes per division:       " 
+                           + bytes / Math.max(1, counts[3]));
+        if (perMillion > limit)
+        {
+            System.out.println("FAILED: more than " + limit 
+                               + " bytes per million events");
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Thrown from the listener to stop the simulation once measured.
+     *
+     */
+    static class Finished extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+    }
+}
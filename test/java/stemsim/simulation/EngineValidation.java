@@ -0,0 +1,258 @@
+package stemsim.simulation;
+
+
+import java.io.*;
+import java.util.*;
+
+import stemsim.object.Crypt;
+import stemsim.stat.CryptStat;
+import stemsim.statxml.CancerStat;
+
+
+/**
+ * Compares the queue, cr-ssa and tau-leap engines on the distributions
+ * CryptStat reports -- crypt lifespans -- on the time to cancer, and on the
+ * TSG knockouts in the transient cells.
+ *
+ * usage: EngineValidation [param.file] [runs] [seed] [param=value ...]
+ *
+ * Each engine runs the same number of simulations, seeded seed, seed + 1
+ * and so on, with CryptStat the only statistical calculator and debug echo
+ * off, in a directory of each engine's own.  The lifespans are those
+ * CryptStat writes to its cryptstat.txt.  Each run's XML is written there
+ * as SimulationRunner writes it, and CancerStat compiles the directory:
+ * the ratios of cancerous and of surviving tissues and the times to cancer
+ * are its own.  The knockouts are the TAC hits per living stem cell at the
+ * end of each run.  For each measure the means and the two-sample
+ * Kolmogorov-Smirnov statistic are printed, with its asymptotic p-value,
+ * of each engine against the queue engine.
+ *
+ * The cr-ssa engine refuses non-zero event floors and thinning; with
+ * event.celldivision.floor and event.apoptosis.floor at 0 all three engines
+ * should agree within noise.
+ *
+ */
+public class EngineValidation
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    static final String[] ENGINES = {"queue", "cr-ssa", "tau-leap"};
+
+
+    public static void main(String[] $args) throws Exception
+    {
+        File paramFile = new File(($args.length > 0) ? $args[0] : "run.props");
+        int runs = ($args.length > 1) ? Integer.parseInt($args[1]) : 20;
+        long seed = ($args.length > 2) ? Long.parseLong($args[2]) : 1L;
+
+        List<List<Double>> lifespans = new ArrayList<List<Double>>();
+        List<List<Double>> cancers = new ArrayList<List<Double>>();
+        List<List<Double>> knockouts = new ArrayList<List<Double>>();
+        double[] cancerous = new double[ENGINES.length];
+        double[] surviving = new double[ENGINES.length];
+
+        for (int i=0; i<ENGINES.length; i++)
+        {
+            File dir = File.createTempFile("engine-" + ENGINES[i], "");
+            dir.delete();
+            dir.mkdir();
+
+            List<Double> hits = new ArrayList<Double>();
+            knockouts.add(hits);
+            int done = 0;
+            for (int r=0; r<runs; r++)
+            {
+                SimulationParams params = SimulationParams.load(paramFile);
+                for (int a=3; a<$args.length; a++)
+                {
+                    String[] kv = $args[a].split("=", 2);
+                    params.setProperty(kv[0], kv[1]);
+                }
+                params.setProperty("simulation.engine", ENGINES[i]);
+                params.setProperty("simulation.seed", 
+                                   String.valueOf(seed + r));
+
+                try
+                {
+                    hits.add(run(params, 
+                                 new File(dir, "run_" + (r + 1) + ".xml")));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    System.out.println(ENGINES[i] + ": " + e.getMessage());
+                    break;
+                }
+                done++;
+            }
+
+            File spans = new File(dir, "cryptstat.txt");
+            lifespans.add(spans.exists()
+                          ? CryptStat.lifespans(spans)
+                          : new ArrayList<Double>());
+
+            if (done == 0)
+            {
+                cancers.add(new ArrayList<Double>());
+                cancerous[i] = Double.NaN;
+                surviving[i] = Double.NaN;
+                continue;
+            }
+
+            CancerStat stat = new CancerStat(dir);
+            stat.compile();
+            cancers.add(stat.cancerTimes());
+            cancerous[i] = stat.percentCancer();
+            surviving[i] = stat.percentSurviving();
+        }
+
+        report("crypt lifespan", lifespans);
+        report("time to cancer", cancers);
+        report("TAC hits per cell", knockouts);
+        for (int i=0; i<ENGINES.length; i++)
+        {
+            System.out.println(ENGINES[i] + " cancerous: " + cancerous[i]
+                               + " surviving: " + surviving[i]);
+        }
+    }
+
+
+    /**
+     * Run a simulation with CryptStat writing to the directory of the given
+     * file, and write the run's XML to the file.  Returns the TAC hits per
+     * living stem cell at the end, 0 if none lives.
+     *
+     */
+    static double run(SimulationParams $params, File $xmlFile)
+        throws Exception
+    {
+        $params.setProperty("simulation.debug.echo", "false");
+        $params.setProperty("simulation.debug.maxevents", "-1");
+        $params.setProperty("cryptstat.enabled", "true");
+        $params.setProperty("stempopstat.enabled", "false");
+        $params.setProperty("tissuepopstat.enabled", "false");
+        $params.setProperty("divstat.enabled", "false");
+        $params.setProperty("fixationstat.enabled", "false");
+
+        TissueSimulation sim = new TissueSimulation();
+        sim.setParams($params);
+        sim.setOutputDirectory($xmlFile.getParentFile());
+        sim.run();
+
+        PrintWriter xml = new PrintWriter(new FileWriter($xmlFile));
+        xml.println("<simulation>");
+        xml.println();
+        xml.println($params.toXML());
+        xml.println();
+        xml.println(sim.toXML());
+        xml.println("</simulation>");
+        xml.close();
+
+        int cells = 0;
+        int hits = 0;
+        for (Crypt crypt : sim.getTissue().getCrypts())
+        {
+            for (int i=0; i<crypt.getStemCells().size(); i++)
+            {
+                cells++;
+                hits += crypt.getStemCell(i).getTSGHitsTAC();
+            }
+        }
+        return (cells > 0) ? (double)hits / cells : 0.0;
+    }
+
+
+    /**
+     * Print the means of a measure under each engine and the two-sample
+     * Kolmogorov-Smirnov statistic of each against the first.
+     *
+     */
+    static void report(String $label, List<List<Double>> $samples)
+    {
+        System.out.println($label);
+        for (int i=0; i<ENGINES.length; i++)
+        {
+            List<Double> s = $samples.get(i);
+            double sum = 0.0;
+            for (double x : s) sum += x;
+            System.out.println("  " + ENGINES[i] + ": n=" + s.size()
+                               + " mean=" + (sum / Math.max(1, s.size())));
+        }
+
+        double[] a = sorted($samples.get(0));
+        for (int i=1; i<ENGINES.length; i++)
+        {
+            double[] b = sorted($samples.get(i));
+            if (a.length == 0 || b.length == 0)
+            {
+                System.out.println("  KS " + ENGINES[i] + ": too few values");
+                continue;
+            }
+
+            double d = ks(a, b);
+            double ne = Math.sqrt((a.length * (double)b.length)
+                                  / (a.length + b.length));
+            System.out.println("  KS " + ENGINES[i] + " D=" + d
+                               + " p=" + ksProbability(ne * d));
+        }
+    }
+
+
+    static double[] sorted(List<Double> $values)
+    {
+        double[] v = new double[$values.size()];
+        for (int i=0; i<v.length; i++)
+        {
+            v[i] = $values.get(i);
+        }
+        Arrays.sort(v);
+        return v;
+    }
+
+
+    /**
+     * Return the largest distance between the empirical distribution
+     * functions of two sorted samples.
+     *
+     */
+    static double ks(double[] $a, double[] $b)
+    {
+        int i = 0;
+        int j = 0;
+        double d = 0.0;
+        while (i < $a.length && j < $b.length)
+        {
+            double x = Math.min($a[i], $b[j]);
+            while (i < $a.length && $a[i] <= x) i++;
+            while (j < $b.length && $b[j] <= x) j++;
+            d = Math.max(d, Math.abs(i / (double)$a.length
+                                     - j / (double)$b.length));
+        }
+        return d;
+    }
+
+
+    /**
+     * Return the asymptotic probability of a Kolmogorov-Smirnov statistic
+     * of at least the given scaled value under the null hypothesis.
+     *
+     */
+    static double ksProbability(double $lambda)
+    {
+        // the series converges too slowly to be of use near 0
+        if ($lambda < 0.2)
+        {
+            return 1.0;
+        }
+        
+        double sum = 0.0;
+        for (int k=1; k<=100; k++)
+        {
+            double term = Math.exp(-2.0 * k * k * $lambda * $lambda);
+            sum += ((k % 2 == 1) ? 2.0 : -2.0) * term;
+            if (term < 1e-12) break;
+        }
+        return Math.max(0.0, Math.min(1.0, sum));
+    }
+}
@@ -14,11 +14,58 @@ import stemsim.event.*;
 
 public class EventQueueTest extends TestCase 
 {
+    ////////////////////////////////////////////////////////////////////////////
+    // Class Level
+    ////////////////////////////////////////////////////////////////////////////
+    
+    /** the event queue implementations */
+    static final String[] IMPLS = 
+        {"heap", "indexedheap", "calendar", "ladder", "hierarchical"};
+    
+    
+    /**
+     * Create an event queue of each implementation.
+     *
+     */
+    static EventQueue[] queues()
+    {
+        EventQueue[] queues = new EventQueue[IMPLS.length];
+        for (int i=0; i<IMPLS.length; i++)
+        {
+            SimulationParams params = new SimulationParams();
+            params.setProperty("simulation.eventqueue.impl", IMPLS[i]);
+            queues[i] = EventQueueFactory.create(params, random(1));
+        }
+        return queues;
+    }
+    
+    
+    /**
+     * Create a generator seeded with the given seed.
+     *
+     */
+    static lib.RandomSource random(long $seed)
+    {
+        lib.RandomSource random = new lib.KnuthRandom();
+        random.seedRandom($seed);
+        return random;
+    }
+    
+    
     ////////////////////////////////////////////////////////////////////////////
     // Object Level
     ////////////////////////////////////////////////////////////////////////////
     
     public void testRemove() throws Exception
+    {
+        for (EventQueue q : queues())
+        {
+            doTestRemove(q);
+        }
+    }
+    
+    
+    void doTestRemove(EventQueue q) throws Exception
     {
         SimulationEvent e1 = new DummyEvent();
         e1.setTime(1.0);
@@ -26,7 +73,6 @@ public class EventQueueTest extends TestCase
         SimulationEvent e2 = new DummyEvent();
         e2.setTime(1.0);
         
-        EventQueue q = new EventQueue();
         assertEquals(0, q.size());
 
         q.offer(e1);
@@ -71,6 +117,733 @@ public class EventQueueTest extends TestCase
     }
 
     
+    public void testRemoveArbitrary() throws Exception
+    {
+        for (EventQueue q : queues())
+        {
+            doTestRemoveArbitrary(q);
+        }
+    }
+    
+    
+    void doTestRemoveArbitrary(EventQueue q) throws Exception
+    {
+        java.util.Random rnd = new java.util.Random(1);
+        SimulationEvent[] events = new SimulationEvent[500];
+        for (int i=0; i<events.length; i++)
+        {
+            events[i] = new DummyEvent();
+            events[i].setTime(rnd.nextDouble() * 100.0);
+            q.offer(events[i]);
+        }
+        assertEquals(events.length, q.size());
+        
+        // remove every third event
+        int removed = 0;
+        for (int i=0; i<events.length; i+=3)
+        {
+            assertTrue(q.remove(events[i]));
+            assertFalse(q.contains(events[i]));
+            assertFalse(q.remove(events[i]));
+            removed++;
+        }
+        assertEquals(events.length - removed, q.size());
+        
+        // what's left comes out in time order
+        double last = -1.0;
+        int polled = 0;
+        SimulationEvent e = null;
+        while ((e = q.poll()) != null)
+        {
+            assertTrue(e.getTime() >= last);
+            assertFalse(q.contains(e));
+            last = e.getTime();
+            polled++;
+        }
+        assertEquals(events.length - removed, polled);
+    }
+    
+    
+    public void testInterleaved() throws Exception
+    {
+        for (EventQueue q : queues())
+        {
+            // hold model: each event polled schedules a later one, with
+            // some removals along the way
+            java.util.Random rnd = new java.util.Random(3);
+            java.util.List<SimulationEvent> queued =
+                new java.util.ArrayList<SimulationEvent>();
+            for (int i=0; i<200; i++)
+            {
+                SimulationEvent e = new DummyEvent();
+                e.setTime(rnd.nextDouble() * 10.0);
+                q.offer(e);
+                queued.add(e);
+            }
+            
+            double now = 0.0;
+            for (int i=0; i<20000; i++)
+            {
+                SimulationEvent e = q.poll();
+                assertNotNull(e);
+                assertTrue(e.getTime() >= now);
+                queued.remove(e);
+                now = e.getTime();
+                
+                e = new DummyEvent();
+                e.setTime(now + 1.0 + rnd.nextDouble() * 10.0);
+                q.offer(e);
+                queued.add(e);
+                
+                if (rnd.nextDouble() < 0.3)
+                {
+                    SimulationEvent r = queued.remove(rnd.nextInt(queued.size()));
+                    assertTrue(q.contains(r));
+                    assertTrue(q.remove(r));
+                    
+                    r = new DummyEvent();
+                    r.setTime(now + rnd.nextDouble());
+                    q.offer(r);
+                    queued.add(r);
+                }
+                assertEquals(queued.size(), q.size());
+            }
+        }
+    }
+
+    
+    public void testReoffer() throws Exception
+    {
+        for (EventQueue q : queues())
+        {
+            doTestReoffer(q);
+        }
+    }
+    
+    
+    void doTestReoffer(EventQueue q) throws Exception
+    {
+        SimulationEvent e1 = new DummyEvent();
+        e1.setTime(1.0);
+        
+        SimulationEvent e2 = new DummyEvent();
+        e2.setTime(2.0);
+        
+        q.offer(e1);
+        q.offer(e2);
+        
+        // offering a queued event again moves it rather than duplicating it
+        e1.setTime(3.0);
+        q.offer(e1);
+        assertEquals(2, q.size());
+        assertEquals(e2, q.poll());
+        assertEquals(e1, q.poll());
+        assertNull(q.poll());
+    }
+
+    
+    public void testLazyDeletion() throws Exception
+    {
+        SimulationParams params = new SimulationParams();
+        params.setProperty("simulation.eventqueue.deletion", "lazy");
+        IndexedHeapEventQueue q =
+            (IndexedHeapEventQueue)EventQueueFactory.create(params, random(1));
+        assertTrue(q.isLazy());
+        
+        SimulationEvent e1 = new DummyEvent();
+        e1.setTime(1.0);
+        SimulationEvent e2 = new DummyEvent();
+        e2.setTime(2.0);
+        q.offer(e1);
+        q.offer(e2);
+        
+        // invalid events stay in the heap as tombstones
+        e1.invalidate();
+        assertTrue(q.remove(e1));
+        assertFalse(q.remove(e1));
+        assertEquals(1, q.size());
+        assertEquals(1, q.getTombstones());
+        assertFalse(q.toString().contains(e1.toString()));
+        
+        // and are dropped when they surface
+        assertEquals(e2, q.peek());
+        assertEquals(0, q.getTombstones());
+        assertEquals(e2, q.poll());
+        assertNull(q.poll());
+        
+        // valid events are always removed at once
+        SimulationEvent e3 = new DummyEvent();
+        e3.setTime(3.0);
+        q.offer(e3);
+        assertTrue(q.remove(e3));
+        assertEquals(0, q.size());
+        assertEquals(0, q.getTombstones());
+    }
+
+    
+    public void testLazyCompaction() throws Exception
+    {
+        SimulationParams params = new SimulationParams();
+        params.setProperty("simulation.eventqueue.deletion", "lazy");
+        params.setProperty("simulation.eventqueue.compaction.ratio", "0.25");
+        IndexedHeapEventQueue q =
+            (IndexedHeapEventQueue)EventQueueFactory.create(params, random(1));
+        
+        java.util.Random rnd = new java.util.Random(2);
+        SimulationEvent[] events = new SimulationEvent[1000];
+        for (int i=0; i<events.length; i++)
+        {
+            events[i] = new DummyEvent();
+            events[i].setTime(rnd.nextDouble() * 100.0);
+            q.offer(events[i]);
+        }
+        
+        // invalidate every other event; the heap must never hold more than
+        // a quarter tombstones
+        int removed = 0;
+        for (int i=0; i<events.length; i+=2)
+        {
+            events[i].invalidate();
+            assertTrue(q.remove(events[i]));
+            removed++;
+            assertTrue(q.getTombstones() <= (q.size() + q.getTombstones()) / 4 + 1);
+        }
+        assertEquals(events.length - removed, q.size());
+        
+        // only valid events come out, in time order
+        double last = -1.0;
+        int polled = 0;
+        SimulationEvent e = null;
+        while ((e = q.poll()) != null)
+        {
+            assertTrue(e.isValid());
+            assertTrue(e.getTime() >= last);
+            last = e.getTime();
+            polled++;
+        }
+        assertEquals(events.length - removed, polled);
+        assertEquals(0, q.getTombstones());
+    }
+
+    
+    public void testCreateInvalid() throws Exception
+    {
+        SimulationParams params = new SimulationParams();
+        params.setProperty("simulation.eventqueue.deletion", "sometimes");
+        try
+        {
+            EventQueueFactory.create(params, random(1));
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        
+        // lazy deletion is only supported by the indexed heap
+        params.setProperty("simulation.eventqueue.deletion", "lazy");
+        params.setProperty("simulation.eventqueue.impl", "calendar");
+        try
+        {
+            EventQueueFactory.create(params, random(1));
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        
+        params.setProperty("simulation.eventqueue.deletion", "eager");
+        params.setProperty("simulation.eventqueue.impl", "splay");
+        try
+        {
+            EventQueueFactory.create(params, random(1));
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        
+        params = new SimulationParams();
+        params.setProperty("simulation.engine", "gillespie");
+        try
+        {
+            EventQueueFactory.create(params, random(1));
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    
+    public void testCalendarParked() throws Exception
+    {
+        // events parked at infinity leave the day width to the finite ones
+        CalendarEventQueue q = new CalendarEventQueue();
+        for (int i=0; i<40; i++)
+        {
+            SimulationEvent e = new DummyEvent();
+            e.setTime((i < 5) ? i : Double.POSITIVE_INFINITY);
+            q.offer(e);
+        }
+        assertEquals(1.0, q._width / 3.0, 1e-12);
+        for (int i=0; i<200; i++)
+        {
+            SimulationEvent e = new DummyEvent();
+            e.setTime(10.0 + i * 0.1);
+            q.offer(e);
+        }
+        assertFalse(Double.isInfinite(q._width));
+        assertTrue(q._width > 0.0);
+
+        double last = Double.NEGATIVE_INFINITY;
+        for (int i=0; i<240; i++)
+        {
+            SimulationEvent e = q.poll();
+            assertTrue(e.getTime() >= last);
+            last = e.getTime();
+        }
+        assertEquals(Double.POSITIVE_INFINITY, last);
+        assertNull(q.poll());
+    }
+
+
+    public void testReschedule() throws Exception
+    {
+        for (EventQueue q : queues())
+        {
+            SimulationEvent e1 = new DummyEvent();
+            e1.setTime(1.0);
+            SimulationEvent e2 = new DummyEvent();
+            e2.setTime(2.0);
+            SimulationEvent e3 = new DummyEvent();
+            e3.setTime(3.0);
+            q.offer(e1);
+            q.offer(e2);
+            q.offer(e3);
+            
+            // increase key
+            q.reschedule(e1, 2.5);
+            assertEquals(3, q.size());
+            assertEquals(2.5, e1.getTime());
+            assertEquals(e2, q.peek());
+            
+            // decrease key
+            q.reschedule(e3, 0.5);
+            assertEquals(3, q.size());
+            assertEquals(e3, q.poll());
+            
+            // an event that is not queued is queued
+            q.reschedule(e3, 2.0);
+            assertEquals(3, q.size());
+            
+            // equal times come out in the order they were last scheduled
+            assertEquals(e2, q.poll());
+            assertEquals(e3, q.poll());
+            assertEquals(e1, q.poll());
+            assertNull(q.poll());
+        }
+    }
+
+    
+    public void testTieOrder() throws Exception
+    {
+        // only a handful of distinct times, so nearly every event ties --
+        // all back ends must agree, first offered first out
+        java.util.List<Integer> expected = null;
+        for (EventQueue q : queues())
+        {
+            java.util.Random rnd = new java.util.Random(4);
+            SimulationEvent[] events = new SimulationEvent[300];
+            for (int i=0; i<events.length; i++)
+            {
+                events[i] = new DummyEvent();
+                events[i].setTime(rnd.nextInt(5));
+                q.offer(events[i]);
+            }
+            for (int i=0; i<100; i++)
+            {
+                SimulationEvent e = events[rnd.nextInt(events.length)];
+                if (rnd.nextBoolean())
+                {
+                    q.remove(e);
+                }
+                e.setTime(rnd.nextInt(5));
+                q.offer(e);
+            }
+            
+            java.util.Map<SimulationEvent,Integer> index =
+                new java.util.IdentityHashMap<SimulationEvent,Integer>();
+            for (int i=0; i<events.length; i++)
+            {
+                index.put(events[i], i);
+            }
+            
+            java.util.List<Integer> polled = new java.util.ArrayList<Integer>();
+            SimulationEvent last = null;
+            SimulationEvent e = null;
+            while ((e = q.poll()) != null)
+            {
+                if (last != null && last.getTime() == e.getTime())
+                {
+                    assertTrue(last.getSequence() < e.getSequence());
+                }
+                polled.add(index.get(e));
+                last = e;
+            }
+            assertEquals(events.length, polled.size());
+            
+            if (expected == null)
+            {
+                expected = polled;
+            }
+            else
+            {
+                assertEquals(expected, polled);
+            }
+        }
+    }
+
+    
+    public void testBatch() throws Exception
+    {
+        // a batch comes out in the same order as the same updates applied
+        // one at a time, on every back end, for small and large batches
+        for (int updates : new int[] {5, 500})
+        {
+            for (EventQueue q : queues())
+            {
+                assertEquals(doTestBatch(q, updates, false),
+                             doTestBatch(q, updates, true));
+            }
+        }
+    }
+    
+    
+    java.util.List<Integer> doTestBatch(EventQueue q, 
+                                        int $updates, 
+                                        boolean $batch)
+    {
+        java.util.Random rnd = new java.util.Random(8);
+        SimulationEvent[] events = new SimulationEvent[200];
+        for (int i=0; i<events.length; i++)
+        {
+            events[i] = new DummyEvent();
+            events[i].setTime(rnd.nextInt(50));
+            q.offer(events[i]);
+        }
+        
+        if ($batch) q.beginBatch();
+        for (int i=0; i<$updates; i++)
+        {
+            SimulationEvent e = events[rnd.nextInt(events.length)];
+            int op = rnd.nextInt(3);
+            if (op == 0)
+            {
+                q.remove(e);
+            }
+            else if (op == 1)
+            {
+                q.reschedule(e, rnd.nextInt(50));
+            }
+            else
+            {
+                if ($batch) q.beginBatch();
+                e.setTime(rnd.nextInt(50));
+                q.offer(e);
+                if ($batch) q.commitBatch();
+            }
+            assertTrue(op == 0 ? !q.contains(e) : q.contains(e));
+        }
+        int size = q.size();
+        if ($batch) q.commitBatch();
+        assertEquals(size, q.size());
+        
+        java.util.Map<SimulationEvent,Integer> index =
+            new java.util.IdentityHashMap<SimulationEvent,Integer>();
+        for (int i=0; i<events.length; i++)
+        {
+            index.put(events[i], i);
+        }
+        java.util.List<Integer> polled = new java.util.ArrayList<Integer>();
+        SimulationEvent e = null;
+        while ((e = q.poll()) != null)
+        {
+            polled.add(index.get(e));
+        }
+        assertEquals(size, polled.size());
+        return polled;
+    }
+    
+    
+    public void testHierarchicalGroups() throws Exception
+    {
+        HierarchicalEventQueue q = new HierarchicalEventQueue();
+        stemsim.object.Crypt[] crypts = new stemsim.object.Crypt[3];
+        for (int i=0; i<crypts.length; i++)
+        {
+            crypts[i] = new stemsim.object.Crypt(null, 0);
+        }
+        
+        CryptEvent[] events = new CryptEvent[30];
+        for (int i=0; i<events.length; i++)
+        {
+            events[i] = new CryptEvent(crypts[i % crypts.length]);
+            events[i].setTime(events.length - i);
+            q.offer(events[i]);
+        }
+        assertEquals(1 + crypts.length, q.getGroups());
+        assertEquals(events.length, q.size());
+        
+        // an event whose cell changed crypts moves with it
+        events[0]._crypt = crypts[1];
+        q.reschedule(events[0], 0.5);
+        assertEquals(1 + crypts.length, q.getGroups());
+        assertEquals(events.length, q.size());
+        assertSame(events[0], q.peek());
+        
+        // earliest first across all crypts
+        double last = 0.0;
+        SimulationEvent e = null;
+        while ((e = q.poll()) != null)
+        {
+            assertTrue(e.getTime() >= last);
+            last = e.getTime();
+        }
+        assertEquals(0, q.size());
+    }
+    
+    
+    public void testCompositionRejection() throws Exception
+    {
+        CompositionRejectionEventQueue q = 
+            new CompositionRejectionEventQueue(random(1));
+        
+        // rates a group apart and within one group
+        double[] rates = {1.0, 2.0, 5.0, 6.0};
+        SimulationEvent[] events = new SimulationEvent[rates.length];
+        for (int i=0; i<events.length; i++)
+        {
+            events[i] = new DummyEvent();
+            events[i].setRate(rates[i]);
+            q.offer(events[i]);
+            assertTrue(q.contains(events[i]));
+            assertEquals(Double.POSITIVE_INFINITY, events[i].getTime());
+        }
+        assertEquals(3, q.getGroups());
+        
+        // an event of no rate comes out at its time
+        SimulationEvent timed = new DummyEvent();
+        timed.setTime(500.0);
+        q.offer(timed);
+        assertEquals(events.length + 1, q.size());
+        
+        // each reaction is chosen by its share of the total rate of 14,
+        // and the clock moves on by 1/14 on average
+        int n = 20000;
+        int[] counts = new int[events.length];
+        double last = 0.0;
+        boolean sawTimed = false;
+        for (int i=0; i<n; i++)
+        {
+            SimulationEvent e = q.poll();
+            assertTrue(e.getTime() >= last);
+            last = e.getTime();
+            if (e == timed)
+            {
+                sawTimed = true;
+                assertEquals(500.0, e.getTime());
+                continue;
+            }
+            
+            for (int j=0; j<events.length; j++)
+            {
+                if (e == events[j]) counts[j]++;
+            }
+            assertFalse(q.contains(e));
+            q.offer(e);
+        }
+        assertTrue(sawTimed);
+        assertEquals(n / 14.0, q.getClock(), 0.05 * n / 14.0);
+        for (int j=0; j<events.length; j++)
+        {
+            assertEquals(rates[j] / 14.0, counts[j] / (double)n, 0.015);
+        }
+        
+        // a new rate moves a reaction to its group
+        events[0].setRate(6.0);
+        q.reschedule(events[0], 1.0);
+        assertEquals(2, q.getGroups());
+        assertTrue(q.remove(events[1]));
+        assertFalse(q.remove(events[1]));
+        assertEquals(events.length - 1, q.size());
+    }
+    
+    
+    public void testSeededTraces() throws Exception
+    {
+        long[] trace = trace("indexedheap");
+        assertTrue(trace.length > 1000);
+        for (int i=0; i<IMPLS.length; i++)
+        {
+            long[] t = trace(IMPLS[i]);
+            assertEquals(IMPLS[i], trace.length, t.length);
+            for (int j=0; j<t.length; j++)
+            {
+                assertEquals(IMPLS[i] + " event " + j, trace[j], t[j]);
+            }
+        }
+    }
+    
+    
+    public void testRunSeeds() throws Exception
+    {
+        // the first run of a set takes the master seed, the others seeds
+        // of their own in the generator's range
+        assertEquals(12345L, SimulationRunner.deriveSeed(12345L, 0));
+        java.util.Set<Long> seeds = new java.util.HashSet<Long>();
+        for (int i=0; i<1000; i++)
+        {
+            long seed = SimulationRunner.deriveSeed(12345L, i);
+            assertTrue(seed >= 0 && seed < Simulation.SEED_RANGE);
+            seeds.add(seed);
+        }
+        assertEquals(1000, seeds.size());
+        assertEquals(SimulationRunner.deriveSeed(12345L, 7),
+                     SimulationRunner.deriveSeed(12345L, 7));
+        
+        // a simulation seeded again repeats its run
+        long[] a = trace("indexedheap");
+        long[] b = trace("indexedheap");
+        assertEquals(a.length, b.length);
+        for (int j=0; j<a.length; j++)
+        {
+            assertEquals("event " + j, a[j], b[j]);
+        }
+    }
+    
+    
+    public void testLazyTrace() throws Exception
+    {
+        // tombstones go back to the event pool and are revived in place,
+        // so a lazy queue runs the same events with no more allocated
+        Simulation eager = new TissueSimulation();
+        long[] a = trace(traceParams("indexedheap"), eager);
+        SimulationParams params = traceParams("indexedheap");
+        params.setProperty("simulation.eventqueue.deletion", "lazy");
+        Simulation lazy = new TissueSimulation();
+        long[] b = trace(params, lazy);
+        assertEquals(a.length, b.length);
+        for (int j=0; j<a.length; j++)
+        {
+            assertEquals("event " + j, a[j], b[j]);
+        }
+        assertTrue(eager.getEventPool().getCreated() + " < "
+                   + lazy.getEventPool().getCreated(),
+                   lazy.getEventPool().getCreated()
+                   <= eager.getEventPool().getCreated() + 10);
+    }
+    
+    
+    /**
+     * Run a small seeded tissue simulation on the given event queue and
+     * return the time and type of each event the listeners saw.
+     *
+     */
+    long[] trace(String $impl) throws Exception
+    {
+        return trace(traceParams($impl), new TissueSimulation());
+    }
+    
+    
+    /**
+     * Return the params of the small seeded tissue simulation of trace().
+     *
+     */
+    SimulationParams traceParams(String $impl)
+    {
+        SimulationParams params = new SimulationParams();
+        params.setProperty("simulation.type", "tissue");
+        params.setProperty("simulation.duration", "500");
+        params.setProperty("simulation.debug.maxevents", "-1");
+        params.setProperty("simulation.debug.echo", "false");
+        params.setProperty("simulation.debug.echo.time", "event");
+        params.setProperty("simulation.eventqueue.impl", $impl);
+        params.setProperty("cryptstat.enabled", "false");
+        params.setProperty("stempopstat.enabled", "false");
+        params.setProperty("tissuepopstat.enabled", "false");
+        params.setProperty("divstat.enabled", "false");
+        params.setProperty("fixationstat.enabled", "false");
+
+        params.setProperty("tissue.rows", "3");
+        params.setProperty("tissue.cols", "3");
+        params.setProperty("tissue.wraparound", "false");
+
+        params.setProperty("stemcell.divisionrate.base", "0.05");
+        params.setProperty("stemcell.asymmetricdivision.ratio", "20");
+        params.setProperty("stemcell.apoptosisrate.base", "0.04878");
+        params.setProperty("stemcell.mutationrate.base", "0.0005");
+        params.setProperty("stemcell.mutationrate.max", "0.05");
+        params.setProperty("stemcell.tsgmutationrate.base", "0.0000005");
+        params.setProperty("stemcell.tsgmutationrate.max", "0.00005");
+        params.setProperty("stemcell.tacsize.base", "2048");
+        params.setProperty("event.celldivision.floor", "0.5");
+        params.setProperty("event.apoptosis.floor", "0.0");
+
+        params.setProperty("crypt.numcells.mean", "10");
+        params.setProperty("crypt.numcells.standarddeviation", "2");
+        params.setProperty("crypt.bifurcation.threshold.ratio", "2.0");
+        params.setProperty("crypt.apoptosis.multiplier", "2.0");
+        params.setProperty("crypt.division.multiplier", "2.0");
+        params.setProperty("crypt.division.deadneighbor.multiplier", "1.0");
+        params.setProperty("cancer.uncontrolledgrowth.threshold", "4.0");
+        params.setProperty("cancer.tsg.threshold", "2");
+
+        params.setProperty("beneficialmutation.apoptosis.multiplier", "0.990099");
+        params.setProperty("beneficialmutation.division.multiplier", "1.01");
+        params.setProperty("deleteriousmutation.apoptosis.multiplier", "1.01");
+        params.setProperty("deleteriousmutation.division.multiplier", "0.990099");
+        params.setProperty("mutatormutation.mutation.multiplier", "100.0");
+        params.setProperty("mutation.rate.deleterious.apop", "0.25");
+        params.setProperty("mutation.rate.deleterious.div", "0.25");
+        params.setProperty("mutation.rate.beneficial.apop", "0.20");
+        params.setProperty("mutation.rate.beneficial.div", "0.20");
+        params.setProperty("mutation.rate.mutator", "0.10");
+
+        params.setProperty("simulation.seed", "42");
+        return params;
+    }
+    
+    
+    /**
+     * Run the given simulation with the given params and return the time
+     * and type of each event the listeners saw.
+     *
+     */
+    long[] trace(SimulationParams $params, Simulation $sim) throws Exception
+    {
+        Simulation sim = $sim;
+        sim.setParams($params);
+        
+        final java.util.List<Long> trace = new java.util.ArrayList<Long>();
+        sim.registerListener(new SimEventListener()
+        {
+            public void notify(SimulationEvent $event)
+            {
+                trace.add(Double.doubleToLongBits($event.getTime())
+                          ^ $event.getClass().getName().hashCode());
+            }
+        });
+        sim.run();
+        
+        long[] result = new long[trace.size()];
+        for (int i=0; i<result.length; i++)
+        {
+            result[i] = trace.get(i);
+        }
+        return result;
+    }
+
+    
     class DummyEvent extends SimulationEvent
     {
         public void unfold()
@@ -78,4 +851,20 @@ public class EventQueueTest extends TestCase
         }
     }
 
+    
+    class CryptEvent extends DummyEvent
+    {
+        stemsim.object.Crypt _crypt;
+        
+        CryptEvent(stemsim.object.Crypt $crypt)
+        {
+            _crypt = $crypt;
+        }
+        
+        public stemsim.object.Crypt getLocalCrypt()
+        {
+            return _crypt;
+        }
+    }
+
 }
\ No newline at end of file
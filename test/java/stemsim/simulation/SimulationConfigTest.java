@@ -0,0 +1,231 @@
+package stemsim.simulation;
+
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+public class SimulationConfigTest extends TestCase
+{
+    ////////////////////////////////////////////////////////////////////////////
+    // Instance Level
+    ////////////////////////////////////////////////////////////////////////////
+
+    SimulationParams _params = null;
+
+
+    public void setUp()
+    {
+        _params = new SimulationParams();
+        _params.setProperty("crypt.numcells.mean", "10");
+        _params.setProperty("crypt.bifurcation.threshold.ratio", "1.75");
+        _params.setProperty("cancer.uncontrolledgrowth.threshold", "1.5");
+        _params.setProperty("mutation.rate.deleterious.apop", "0.1");
+        _params.setProperty("mutation.rate.deleterious.div", "0.2");
+        _params.setProperty("mutation.rate.beneficial.apop", "0.3");
+        _params.setProperty("mutation.rate.beneficial.div", "0.1");
+        _params.setProperty("mutation.rate.mutator", "0.05");
+        _params.setProperty("event.celldivision.floor", "0.25");
+        _params.setProperty("simulation.duration", "100");
+    }
+
+
+    public void testDerived()
+    {
+        SimulationConfig config = _params.getConfig();
+
+        assertEquals(10, config.getMeanStemCells());
+        assertEquals(15, config.getCancerThreshold());
+        assertEquals(18, config.getBifurcationThreshold());
+
+        double sum = 0.1;
+        assertEquals(sum, config.getDeleteriousApopBound());
+        sum += 0.2;
+        assertEquals(sum, config.getDeleteriousDivBound());
+        sum += 0.3;
+        assertEquals(sum, config.getBeneficialApopBound());
+        sum += 0.1;
+        assertEquals(sum, config.getBeneficialDivBound());
+        sum += 0.05;
+        assertEquals(sum, config.getMutatorBound());
+
+        assertFalse(config.isRescaling());
+    }
+
+
+    public void testEffectFactors()
+    {
+        _params.setProperty("crypt.numcells.standarddeviation", "2");
+        _params.setProperty("crypt.apoptosis.multiplier", "1.5");
+        _params.setProperty("crypt.division.multiplier", "3");
+        SimulationConfig config = _params.getConfig();
+
+        // whole standard deviations from the mean of 10
+        assertEquals(1.0, config.getCryptApoptosisFactor(11));
+        assertEquals(1.5, config.getCryptApoptosisFactor(12));
+        assertEquals(Math.pow(1.5, 5), config.getCryptApoptosisFactor(20));
+        assertEquals(1.0, config.getCryptDivisionFactor(9));
+        assertEquals(3.0, config.getCryptDivisionFactor(8));
+        assertEquals(27.0, config.getCryptDivisionFactor(4));
+        assertEquals(1.0, config.getCryptDivisionFactor(20));
+
+        // past the table
+        int n = SimulationConfig.MIN_EFFECT_TABLE + 10;
+        assertEquals(Math.pow(1.5, (n - 10)/2), 
+                     config.getCryptApoptosisFactor(n));
+        assertEquals(1.0, config.getCryptDivisionFactor(n));
+    }
+
+
+    public void testRecompile()
+    {
+        SimulationConfig config = _params.getConfig();
+        assertSame(config, _params.getConfig());
+        assertEquals(0.25, config.getDivisionFloor());
+
+        // a change to the params is seen by the next snapshot
+        _params.setProperty("event.celldivision.floor", "0.5");
+        assertNotSame(config, _params.getConfig());
+        assertEquals(0.5, _params.getConfig().getDivisionFloor());
+        assertEquals(0.25, config.getDivisionFloor());
+    }
+
+
+    public void testMissing()
+    {
+        SimulationConfig config = _params.getConfig();
+        try
+        {
+            config.getApoptosisRate();
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+
+        _params.setProperty("stemcell.apoptosisrate.base", "0.01");
+        assertEquals(0.01, _params.getConfig().getApoptosisRate());
+    }
+
+
+    public void testInvalid()
+    {
+        // non-model keys are none of the snapshot's business
+        _params.setProperty("simulation.whatever", "x");
+        _params.getConfig();
+
+        // retired keys of older parameter files are accepted
+        _params.setProperty("crypt.cancer.threshold", "2");
+        _params.getConfig();
+
+        String[][] invalid = {
+            {"crypt.numcells.mean", "10.5"},
+            {"stemcell.divisionrate.base", "fast"},
+            {"tissue.wraparound", "yes"},
+            {"event.rescale", "sometimes"},
+            {"event.leap.epsilon", "0"},
+            {"event.leap.margin", "0"},
+            {"crypt.numcells.maen", "10"},
+            {"simulation.seed", "1000000000"},
+            {"simulation.seed", "12x"},
+            {"simulation.engine", "cr-ssa"},
+        };
+        for (int i=0; i<invalid.length; i++)
+        {
+            setUp();
+            _params.setProperty(invalid[i][0], invalid[i][1]);
+            try
+            {
+                _params.getConfig();
+                fail(invalid[i][0]);
+            }
+            catch (IllegalArgumentException e)
+            {
+                assertTrue(e.getMessage().endsWith(invalid[i][0]));
+            }
+        }
+
+        // cr-ssa takes exponential waits only
+        setUp();
+        _params.setProperty("simulation.engine", "cr-ssa");
+        _params.setProperty("event.celldivision.floor", "0");
+        _params.getConfig();
+        _params.setProperty("event.asymmetricdivision.thinning", "true");
+        try
+        {
+            _params.getConfig();
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().endsWith("simulation.engine"));
+        }
+
+        // and so does the queue factory
+        try
+        {
+            EventQueueFactory.create(_params, EventQueueTest.random(1));
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().endsWith("simulation.engine"));
+        }
+    }
+
+
+    public void testMutationTotal()
+    {
+        _params.setProperty("mutation.rate.deleterious.apop", "0.25");
+        _params.setProperty("mutation.rate.deleterious.div", "0.25");
+        _params.setProperty("mutation.rate.beneficial.apop", "0.2");
+        _params.setProperty("mutation.rate.beneficial.div", "0.2");
+        _params.setProperty("mutation.rate.mutator", "0.1");
+        assertEquals(1.0, _params.getConfig().getMutatorBound(), 1e-12);
+
+        _params.setProperty("mutation.rate.mutator", "0.2");
+        try
+        {
+            _params.getConfig();
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().endsWith("mutation.rate"));
+        }
+    }
+
+
+    public void testSeed()
+    {
+        assertEquals(-1, Simulation.readSeed(_params));
+        _params.setProperty("simulation.seed", " ");
+        assertEquals(-1, Simulation.readSeed(_params));
+        _params.setProperty("simulation.seed", "-5");
+        assertEquals(-5, Simulation.readSeed(_params));
+        _params.setProperty("simulation.seed", "999999999");
+        assertEquals(999999999, Simulation.readSeed(_params));
+        assertEquals(999999999, _params.getConfig().getSeed());
+
+        // a seed the generator refuses fails before it is seeded
+        _params.setProperty("simulation.seed", "1000000000");
+        Simulation sim = new CryptSimulation();
+        sim.setParams(_params);
+        try
+        {
+            sim.run();
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().endsWith("simulation.seed"));
+        }
+        catch (Exception e)
+        {
+            fail(e.toString());
+        }
+    }
+}